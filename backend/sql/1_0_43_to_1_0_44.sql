@@ -0,0 +1,12 @@
+CREATE TABLE public.hot_pair (
+    id bigint NOT NULL,
+    src character varying(255) NOT NULL,
+    dst character varying(255) NOT NULL,
+    requests bigint NOT NULL,
+    last_requested timestamp without time zone NOT NULL
+);
+
+ALTER TABLE public.hot_pair OWNER TO oscars;
+
+ALTER TABLE ONLY public.hot_pair
+    ADD CONSTRAINT hot_pair_pkey PRIMARY KEY (id);
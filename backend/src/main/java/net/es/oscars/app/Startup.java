@@ -9,6 +9,7 @@ import net.es.oscars.app.util.GitRepositoryState;
 import net.es.oscars.app.util.GitRepositoryStatePopulator;
 import net.es.oscars.ext.SlackConnector;
 import net.es.oscars.pss.svc.PssHealthChecker;
+import net.es.oscars.resv.svc.ReservationLedger;
 import net.es.oscars.security.db.UserPopulator;
 import net.es.oscars.topo.beans.TopoException;
 import net.es.oscars.topo.pop.ConsistencyException;
@@ -73,7 +74,8 @@ public class Startup {
                    DbAccess dbAccess,
                    UIPopulator uiPopulator,
                    PssHealthChecker pssHealthChecker,
-                   GitRepositoryStatePopulator gitRepositoryStatePopulator) {
+                   GitRepositoryStatePopulator gitRepositoryStatePopulator,
+                   ReservationLedger reservationLedger) {
         this.startupProperties = startupProperties;
         this.topoPopulator = topoPopulator;
         this.slackConnector = slackConnector;
@@ -88,6 +90,7 @@ public class Startup {
         components.add(this.slackConnector);
         components.add(this.gitRepositoryStatePopulator);
         components.add(this.pssHealthChecker);
+        components.add(reservationLedger);
     }
 
     public void onStart() throws IOException, ConsistencyException, TopoException {
@@ -10,7 +10,6 @@ import java.util.concurrent.locks.ReentrantLock;
 @Slf4j
 @Data
 public class DbAccess {
-    private ReentrantLock connLock = new ReentrantLock();
     private ReentrantLock topoLock = new ReentrantLock();
 
 }
@@ -0,0 +1,98 @@
+package net.es.oscars.app.util;
+
+import com.google.common.util.concurrent.Striped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Striped locks over named resources (connection ids, device and port URNs, etc.), so
+ * that changes to reservations that share no resources don't wait for each other.
+ * <p>
+ * Locks for several resources are always taken in the same order, so two callers
+ * locking overlapping sets can't deadlock. Distinct resources may share a stripe; that
+ * only costs some parallelism.
+ */
+@Slf4j
+@Component
+public class ResourceLocks {
+    // VPLS loopback addresses come from one global range
+    public static final String VPLS_LOOPBACKS = "vpls-loopbacks";
+
+    @Value("${resv.lock-stripes:1024}")
+    private Integer stripes;
+
+    private Striped<Lock> locks;
+
+    @PostConstruct
+    public void init() {
+        locks = Striped.lock(stripes);
+    }
+
+    /**
+     * Waits for and takes the locks for all the resources.
+     *
+     * @return the locks taken, to pass to unlock()
+     */
+    public List<Lock> lock(Collection<String> resources) {
+        List<Lock> result = new ArrayList<>();
+        for (Lock lock : locks.bulkGet(resources)) {
+            if (!result.contains(lock)) {
+                lock.lock();
+                result.add(lock);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Takes the locks for all the resources if none of them is taken by another thread.
+     *
+     * @return the locks taken, or null if nothing was locked
+     */
+    public List<Lock> tryLock(Collection<String> resources) {
+        List<Lock> result = new ArrayList<>();
+        for (Lock lock : locks.bulkGet(resources)) {
+            if (!result.contains(lock)) {
+                if (!lock.tryLock()) {
+                    this.unlock(result);
+                    return null;
+                }
+                result.add(lock);
+            }
+        }
+        return result;
+    }
+
+    public void unlock(List<Lock> taken) {
+        for (int i = taken.size() - 1; i >= 0; i--) {
+            taken.get(i).unlock();
+        }
+    }
+
+    /**
+     * Unlocks once the current transaction has committed or rolled back, so that nobody
+     * else can read the resources before the changes made under the locks are visible;
+     * unlocks right away if there is no transaction.
+     */
+    public void unlockAfterTransaction(List<Lock> taken) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.unlock(taken);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(taken);
+            }
+        });
+    }
+}
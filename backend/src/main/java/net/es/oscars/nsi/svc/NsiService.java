@@ -25,6 +25,7 @@ import net.es.oscars.nsi.db.NsiMappingRepository;
 import net.es.oscars.nsi.db.NsiRequesterNSARepository;
 import net.es.oscars.nsi.ent.NsiMapping;
 import net.es.oscars.nsi.ent.NsiRequesterNSA;
+import net.es.oscars.pce.PceCaller;
 import net.es.oscars.pce.PceService;
 import net.es.oscars.pss.svc.PSSQueuer;
 import net.es.oscars.resv.db.ConnectionRepository;
@@ -798,7 +799,7 @@ public class NsiService {
                     .zaBw(mbps)
                     .include(include)
                     .build();
-            PceResponse response = pceService.calculatePaths(request);
+            PceResponse response = pceService.calculatePaths(request, PceCaller.NSI);
             if (response.getFits() != null) {
                 List<String> ero = new ArrayList<>();
                 for (EroHop hop : response.getFits().getAzEro()) {
@@ -882,7 +883,8 @@ public class NsiService {
         }
 
 
-        Map<String, PortBwVlan> available = resvService.available(interval, null);
+        Map<String, PortBwVlan> available = resvService.available(interval, null,
+                Arrays.asList(a_urn.getUrn(), z_urn.getUrn()));
         PortBwVlan aAvail = available.get(a_urn.getUrn());
         PortBwVlan zAvail = available.get(z_urn.getUrn());
 
@@ -1,22 +1,23 @@
 package net.es.oscars.pce;
 
-import com.google.common.collect.Ordering;
-import com.google.common.collect.Sets;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.exc.PCEException;
 import net.es.oscars.resv.ent.EroHop;
 import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.topo.beans.CompactTopo;
 import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoSnapshot;
 import net.es.oscars.topo.beans.TopoUrn;
-import net.es.oscars.topo.ent.Version;
-import net.es.oscars.topo.enums.UrnType;
+import net.es.oscars.topo.svc.TopoMetricsService;
 import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.PceExplanation;
 import net.es.oscars.web.beans.PcePath;
+import net.es.oscars.web.beans.PcePhase;
 import net.es.oscars.web.beans.PceResponse;
-import org.apache.commons.lang3.tuple.Pair;
+import net.es.oscars.web.beans.PceUpdate;
+import net.es.oscars.web.beans.PceUpdateType;
+import org.jgrapht.Graph;
 import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.AllDirectedPaths;
-import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -40,262 +41,291 @@ public class AllPathsPCE {
     @Value("${pce.short-path-detour:15}")
     private Integer shortPathDetour;
 
+    @Value("${pce.engine:ALL_PATHS}")
+    private PceEngine engine;
 
-    private Map<Pair<TopoUrn, TopoUrn>, List<GraphPath<TopoUrn, TopoAdjcy>>> pathsCache = new HashMap<>();
-    private Version cacheTopoVersion = null;
+    @Value("${pce.k-shortest-max-paths:1000}")
+    private Integer kShortestMaxPaths;
 
-    @Autowired
-    private DijkstraPCE dijkstraPCE;
-
-
-    private List<GraphPath<TopoUrn, TopoAdjcy>> cachedPaths
-            (TopoUrn src, TopoUrn dst, AllDirectedPaths<TopoUrn, TopoAdjcy> ap, Integer maxLength){
-        List<GraphPath<TopoUrn, TopoAdjcy>> paths;
-
-
-        boolean versionChanged = false;
-        Version current = topoService.getCurrent();
 
-        if (this.cacheTopoVersion == null) {
-            versionChanged = true;
-        } else if (!this.cacheTopoVersion.getId().equals(current.getId())) {
-            versionChanged = true;
-        }
-        Pair<TopoUrn, TopoUrn> srcdst = Pair.of(src, dst);
-        boolean inCache = pathsCache.containsKey(srcdst);
-
-        boolean mustCalculate = false;
-        if (versionChanged) {
-            mustCalculate = true;
-        } else if (!inCache) {
-            mustCalculate = true;
-        }
-        if (mustCalculate) {
-            Instant ps = Instant.now();
-            paths = ap.getAllPaths(src, dst, true, maxLength);
-            Instant pe = Instant.now();
-            log.info(paths.size() + " distinct paths found between " + src.getUrn() +
-                    " and " + dst.getUrn() + " found in time " + Duration.between(ps, pe));
-            this.cacheTopoVersion = current;
-            pathsCache.put(srcdst, paths);
+    @Autowired
+    private PathCache pathCache;
 
-        } else {
-            paths = pathsCache.get(srcdst);
-        }
+    @Autowired
+    private TopoMetricsService topoMetricsService;
 
+    @Autowired
+    private DijkstraPCE dijkstraPCE;
 
-        return paths;
+    @Autowired
+    private PceStats pceStats;
 
+    public PceResponse calculatePaths(VlanPipe requestPipe,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw,
+                                      List<String> include,
+                                      Set<String> exclude) throws PCEException {
+        return this.calculatePaths(requestPipe, availIngressBw, availEgressBw, include, exclude, PceBudget.unlimited());
     }
 
+    /**
+     * As above, but stops evaluating paths once the budget runs out and returns the best
+     * ones found so far, marked partial. The budget is spent within whichever engine
+     * would run without it, so it never changes how paths are found or what gets cached.
+     */
     public PceResponse calculatePaths(VlanPipe requestPipe,
                                       Map<String, Integer> availIngressBw,
                                       Map<String, Integer> availEgressBw,
                                       List<String> include,
-                                      Set<String> exclude) throws PCEException {
+                                      Set<String> exclude,
+                                      PceBudget budget) throws PCEException {
+        return this.calculatePaths(requestPipe, availIngressBw, availEgressBw, include, exclude, budget, PceListener.NONE);
+    }
 
+    /**
+     * As above, and tells the listener about the shortest and least-hops paths as soon as
+     * they are known, then about every improvement to the widest and fitting paths.
+     */
+    public PceResponse calculatePaths(VlanPipe requestPipe,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw,
+                                      List<String> include,
+                                      Set<String> exclude,
+                                      PceBudget budget,
+                                      PceListener listener) throws PCEException {
+        budget.start();
+        PceTrace trace = new PceTrace();
 
-        Map<String, TopoUrn> baseline = topoService.getTopoUrnMap();
+        TopoSnapshot snapshot = PceLibrary.snapshot(topoService);
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
 
-        List<TopoAdjcy> topoAdjcies = topoService.getTopoAdjcies();
         // two kinds of costing; one by hop count, one by metric
+        Map<TopoAdjcy, Double> metricCosts = snapshot.getMetricCosts();
+        Graph<TopoUrn, TopoAdjcy> byMetricGraph = snapshot.getByMetricGraph();
 
-        Map<TopoAdjcy, Double> hopCosts = new HashMap<>();
-        Map<TopoAdjcy, Double> metricCosts = new HashMap<>();
-
-        for (TopoAdjcy adjcy : topoAdjcies) {
-            hopCosts.put(adjcy, 1D);
+        TopoUrn src = PceLibrary.deviceUrn(baseline, requestPipe.getA().getDeviceUrn());
+        TopoUrn dst = PceLibrary.deviceUrn(baseline, requestPipe.getZ().getDeviceUrn());
+        trace.mark(PcePhase.SNAPSHOT);
 
-            double cost = 0;
-            for (Long metric : adjcy.getMetrics().values()) {
-                if (metric > cost) {
-                    cost = metric.doubleValue();
+        // first, get the shortest path (by metric)
+        PcePath shortest = dijkstraPCE.shortestPath(snapshot, src, dst);
+        // then the one with the fewest hops
+        PcePath leastHops = dijkstraPCE.leastHopsPath(snapshot, src, dst);
+        BandwidthContext bandwidths = BandwidthContext.of(snapshot, availIngressBw, availEgressBw);
+        bandwidths.pathBandwidths(shortest);
+        bandwidths.pathBandwidths(leastHops);
+        listener.update(PceUpdate.builder().type(PceUpdateType.SHORTEST).evaluated(0).path(shortest).build());
+        listener.update(PceUpdate.builder().type(PceUpdateType.LEAST_HOPS).evaluated(0).path(leastHops).build());
+
+        int maxLength = this.maxLength(snapshot, shortest);
+        trace.setShortestLength(shortest.getAzEro().size());
+        trace.setMaxLength(maxLength);
+        trace.setLongPath(this.isLongPath(snapshot, shortest));
+        trace.mark(PcePhase.SHORTEST_PATHS);
+
+        PathEvaluation evaluation = new PathEvaluation(requestPipe.getAzBandwidth(), requestPipe.getZaBandwidth(), listener);
+
+        // constraints are pushed into the search: excluded URNs are masked out of the graph,
+        // and the path is searched segment by segment between the include waypoints
+        CompactTopo topo = snapshot.getCompact();
+        boolean[] masked = new boolean[topo.getVertexCount()];
+        if (exclude != null) {
+            for (String urn : exclude) {
+                int v = topo.indexOf(urn);
+                if (v >= 0) {
+                    masked[v] = true;
                 }
             }
-            metricCosts.put(adjcy, cost);
-        }
-
-
-        TopoUrn src = topoService.getTopoUrnMap().get(requestPipe.getA().getDeviceUrn());
-        TopoUrn dst = topoService.getTopoUrnMap().get(requestPipe.getZ().getDeviceUrn());
-
-        if (src == null) {
-            throw new PCEException(requestPipe.getA().getDeviceUrn() + " not found in topology");
         }
-        if (!src.getUrnType().equals(UrnType.DEVICE)) {
-            throw new PCEException(requestPipe.getA().getDeviceUrn() + " must point to a DEVICE but is " + src.getUrnType());
+        List<Integer> waypoints = new ArrayList<>();
+        waypoints.add(topo.indexOf(src.getUrn()));
+        if (include != null) {
+            for (String urn : include) {
+                int v = topo.indexOf(urn);
+                if (v < 0) {
+                    throw new PCEException(urn + " not found in topology");
+                }
+                // every path starts at A and ends at Z anyway
+                if (!urn.equals(src.getUrn()) && !urn.equals(dst.getUrn())) {
+                    waypoints.add(v);
+                }
+            }
         }
+        waypoints.add(topo.indexOf(dst.getUrn()));
+        boolean constrained = waypoints.size() > 2 || (exclude != null && !exclude.isEmpty());
+        trace.mark(PcePhase.CONSTRAINTS);
 
-        if (dst == null) {
-            throw new PCEException(requestPipe.getZ().getDeviceUrn() + " not found in topology");
+        Instant es = Instant.now();
+        int enumerated = 0;
+        if (waypoints.stream().anyMatch(v -> masked[v])) {
+            log.info("an endpoint or include waypoint is excluded; no paths possible");
+        } else if (constrained) {
+            int[] wp = waypoints.stream().mapToInt(Integer::intValue).toArray();
+            List<int[]> paths = CompactPaths.allPaths(topo, wp, maxLength, masked, budget, trace);
+            enumerated = paths.size();
+            trace.setEnumerated(enumerated);
+            trace.mark(PcePhase.ENUMERATION);
+            for (int[] path : paths) {
+                PcePath pcePath = CompactPaths.toPcePath(topo, wp[0], path, topo.getMetrics());
+                bandwidths.pathBandwidths(pcePath);
+                evaluation.consider(pcePath);
+            }
+            log.info(paths.size() + " paths found by search between " + src.getUrn() + " and " + dst.getUrn());
+        } else if (engine.equals(PceEngine.K_SHORTEST)) {
+            KShortestPathIterator<TopoUrn, TopoAdjcy> paths =
+                    new KShortestPathIterator<>(byMetricGraph, src, dst, maxLength, kShortestMaxPaths);
+
+            // no path can be wider than what the ports at either end have available
+            Integer azBound = Math.min(
+                    maxAvailable(endpointPorts(byMetricGraph, src, true), availEgressBw),
+                    maxAvailable(endpointPorts(byMetricGraph, dst, false), availIngressBw));
+            Integer zaBound = Math.min(
+                    maxAvailable(endpointPorts(byMetricGraph, src, true), availIngressBw),
+                    maxAvailable(endpointPorts(byMetricGraph, dst, false), availEgressBw));
+
+            // paths are found one at a time, so the two phases take turns
+            while (paths.hasNext() && !evaluation.isSettled(azBound, zaBound) && budget.spend()) {
+                GraphPath<TopoUrn, TopoAdjcy> path = paths.next();
+                trace.mark(PcePhase.ENUMERATION);
+                this.evaluate(path, evaluation, bandwidths, metricCosts);
+                trace.mark(PcePhase.EVALUATION);
+            }
+            enumerated = paths.getReturned();
+            trace.setEnumerated(enumerated);
+            log.info("k-shortest: returned " + paths.getReturned() + " paths between " + src.getUrn() +
+                    " and " + dst.getUrn() + ", settled: " + evaluation.isSettled(azBound, zaBound));
+        } else {
+            trace.setCacheHit(pathCache.cached(snapshot, src, dst, maxLength) != null);
+            List<GraphPath<TopoUrn, TopoAdjcy>> paths = pathCache.paths(snapshot, src, dst, maxLength);
+            enumerated = paths.size();
+            trace.setEnumerated(enumerated);
+            trace.mark(PcePhase.ENUMERATION);
+            for (GraphPath<TopoUrn, TopoAdjcy> path : paths) {
+                if (!budget.spend()) {
+                    break;
+                }
+                this.evaluate(path, evaluation, bandwidths, metricCosts);
+            }
         }
-        if (!dst.getUrnType().equals(UrnType.DEVICE)) {
-            throw new PCEException(requestPipe.getZ().getDeviceUrn() + " must point to a DEVICE but is " + dst.getUrnType());
+        // cut short: the unconstrained shortest and least-hops paths are candidates too,
+        // unless there are none
+        if (budget.isExhausted() && !constrained) {
+            if (!shortest.getAzEro().isEmpty()) {
+                evaluation.consider(shortest);
+            }
+            if (!leastHops.getAzEro().isEmpty()) {
+                evaluation.consider(leastHops);
+            }
         }
+        trace.mark(PcePhase.EVALUATION);
+        Instant ee = Instant.now();
+        log.info("widest paths found in time " + Duration.between(es, ee) +
+                (budget.isExhausted() ? ", budget exhausted after " + evaluation.getEvaluated() + " paths" : ""));
+        PceExplanation explanation = trace.explain(evaluation);
+        pceStats.record(explanation);
+        log.debug("explanation: " + explanation);
 
-        // first, get the shortest path (by metric)
-
-        DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> byMetricGraph = PceLibrary.makeGraph(topoAdjcies, metricCosts);
-        DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> byHopsGraph = PceLibrary.makeGraph(topoAdjcies, hopCosts);
-
-
-        PcePath shortest = dijkstraPCE.shortestPath(byMetricGraph, src, dst);
-        // first, get the shortest path (by metric)
-        PcePath leastHops = dijkstraPCE.shortestPath(byHopsGraph, src, dst);
-        PceLibrary.pathBandwidths(shortest, baseline, availIngressBw, availEgressBw);
-        PceLibrary.pathBandwidths(leastHops, baseline, availIngressBw, availEgressBw);
+        return PceResponse.builder()
+                .widestAZ(evaluation.getWidestAZ())
+                .widestZA(evaluation.getWidestZA())
+                .widestSum(evaluation.getWidestSum())
+                .shortest(shortest)
+                .leastHops(leastHops)
+                .fits(evaluation.getFits())
+                .evaluated(enumerated)
+                .considered(evaluation.getEvaluated())
+                .partial(budget.isExhausted())
+                .explanation(explanation)
+                .build();
+    }
 
+    /**
+     * @return the enumeration length limit for paths between src and dst
+     */
+    public int maxLength(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst) throws PCEException {
+        PcePath shortest = dijkstraPCE.shortestPath(snapshot, src, dst);
+        // DijkstraPCE returns an empty path when there is none
+        if (shortest.getAzEro().isEmpty()) {
+            throw new PCEException("no path between " + src.getUrn() + " and " + dst.getUrn());
+        }
+        return this.maxLength(snapshot, shortest);
+    }
 
+    private int maxLength(TopoSnapshot snapshot, PcePath shortest) {
         Integer shortestPathLength = shortest.getAzEro().size();
 
         // dynamic detour: if it's a long path, use a different detour size
         // this is to reduce response time with very long paths
         int maxLength = shortestPathLength + shortPathDetour;
 
-        if (PceLibrary.diameter == null) {
-            // cache graph diameter
-            PceLibrary.calculateDiameter(topoAdjcies, hopCosts);
-        }
-
-        Double lengthRatio = shortestPathLength / PceLibrary.diameter;
-
-        if (lengthRatio > longPathRatio) {
+        if (this.isLongPath(snapshot, shortest)) {
             maxLength = shortestPathLength + longPathDetour;
             log.info("long path; using long path max-length (" + maxLength + ")");
         } else {
             log.info("short path; using short path max-length (" + maxLength + ")");
 
         }
+        return maxLength;
+    }
 
-        AllDirectedPaths<TopoUrn, TopoAdjcy> ap = new AllDirectedPaths<>(byMetricGraph);
-
-        List<GraphPath<TopoUrn, TopoAdjcy>> paths = this.cachedPaths(src, dst, ap, maxLength);
-
-
-        PcePath widestAZ = null;
-        PcePath widestSum = null;
-        PcePath widestZA = null;
-        PcePath fits = null;
-
-        Instant es = Instant.now();
-        for (GraphPath<TopoUrn, TopoAdjcy> path : paths) {
-            List<EroHop> azEro = PceLibrary.toEro(path);
-            if (azEro == null) {
-                continue;
-            }
-            List<String> hopUrnList = new ArrayList<>();
-            Set<String> hopUrnSet = new HashSet<>();
-
-            List<EroHop> zaEro = new ArrayList<>();
-            for (EroHop hop : azEro) {
-                zaEro.add(EroHop.builder().urn(hop.getUrn()).build());
-                hopUrnList.add(hop.getUrn());
-                hopUrnSet.add(hop.getUrn());
-            }
-
-            boolean excludedOk = true;
-
-            if (exclude != null) {
-                Set<String> mustBeExcluded = Sets.intersection(exclude, hopUrnSet);
-                if (!mustBeExcluded.isEmpty()) {
-                    excludedOk = false;
-                }
-            }
-
-            boolean includedOk = true;
+    private boolean isLongPath(TopoSnapshot snapshot, PcePath shortest) {
+        // computed in the background when the topology was loaded
+        double diameter = topoMetricsService.metrics(snapshot).getDiameter();
+        double lengthRatio = shortest.getAzEro().size() / diameter;
+        return lengthRatio > longPathRatio;
+    }
 
-            if (include != null) {
-                List<Integer> indices = new ArrayList<>();
-                for (String urn : include) {
-                    indices.add(hopUrnList.indexOf(urn));
-                }
-                boolean sorted = Ordering.natural().isOrdered(indices);
-                if (!sorted) {
-                    includedOk = false;
-                }
-            }
+    private void evaluate(GraphPath<TopoUrn, TopoAdjcy> path,
+                          PathEvaluation evaluation,
+                          BandwidthContext bandwidths,
+                          Map<TopoAdjcy, Double> metricCosts) throws PCEException {
+        List<EroHop> azEro = PceLibrary.toEro(path);
+        if (azEro == null) {
+            return;
+        }
 
-            if (!includedOk || !excludedOk) {
-                continue;
-            }
+        List<EroHop> zaEro = new ArrayList<>();
+        for (EroHop hop : azEro) {
+            zaEro.add(EroHop.builder().urn(hop.getUrn()).build());
+        }
 
+        Collections.reverse(zaEro);
 
-            Collections.reverse(zaEro);
+        PcePath pcePath = PcePath.builder()
+                .azEro(azEro)
+                .zaEro(zaEro)
+                .build();
 
-            PcePath pcePath = PcePath.builder()
-                    .azEro(azEro)
-                    .zaEro(zaEro)
-                    .build();
+        bandwidths.pathBandwidths(pcePath);
 
-            PceLibrary.pathBandwidths(pcePath, baseline, availIngressBw, availEgressBw);
+        PceLibrary.pathCost(pcePath, path, metricCosts);
 
-            PceLibrary.pathCost(pcePath, path, metricCosts);
+        evaluation.consider(pcePath);
+    }
 
-            // path that fits:
-            if (pcePath.getAzAvailable() >= requestPipe.getAzBandwidth()
-                    && pcePath.getZaAvailable() >= requestPipe.getZaBandwidth()) {
-                // accept first path that matches; otherwise prefer the least-cost one
-                if (fits == null) {
-                    fits = pcePath;
-                } else {
-                    fits = preferredOf(fits, pcePath);
-                }
+    private List<TopoUrn> endpointPorts(Graph<TopoUrn, TopoAdjcy> graph, TopoUrn device, boolean outgoing) {
+        List<TopoUrn> ports = new ArrayList<>();
+        if (outgoing) {
+            for (TopoAdjcy adjcy : graph.outgoingEdgesOf(device)) {
+                ports.add(graph.getEdgeTarget(adjcy));
             }
-
-            // first path is best by default
-            if (widestAZ == null) {
-                widestAZ = pcePath;
-                widestSum = pcePath;
-                widestZA = pcePath;
-            } else {
-
-                // to get the widest paths, check for larger bandwidth.
-                // if bandwidth is equal, then lowest cost; if equal, least hops.
-                if (widestAZ.getAzAvailable() < pcePath.getAzAvailable()) {
-                    widestAZ = pcePath;
-                } else if (widestAZ.getAzAvailable().equals(pcePath.getAzAvailable())) {
-                    widestAZ = preferredOf(widestAZ, pcePath);
-                }
-                if (widestZA.getZaAvailable() < pcePath.getZaAvailable()) {
-                    widestZA = pcePath;
-                } else if (widestZA.getZaAvailable().equals(pcePath.getZaAvailable())) {
-                    widestZA = preferredOf(widestZA, pcePath);
-                }
-
-                Integer prevSum = widestSum.getAzAvailable() + widestSum.getZaAvailable();
-                Integer newSum = pcePath.getAzAvailable() + pcePath.getZaAvailable();
-                if (prevSum < newSum) {
-                    widestSum = pcePath;
-                } else if (prevSum.equals(newSum)) {
-                    widestSum = preferredOf(widestSum, pcePath);
-                }
+        } else {
+            for (TopoAdjcy adjcy : graph.incomingEdgesOf(device)) {
+                ports.add(graph.getEdgeSource(adjcy));
             }
-
         }
-        Instant ee = Instant.now();
-        log.info("widest paths found in time " + Duration.between(es, ee));
-
-        return PceResponse.builder()
-                .widestAZ(widestAZ)
-                .widestZA(widestZA)
-                .widestSum(widestSum)
-                .shortest(shortest)
-                .leastHops(leastHops)
-                .fits(fits)
-                .evaluated(paths.size())
-                .build();
+        return ports;
     }
 
-
-    private PcePath preferredOf(PcePath a, PcePath b) {
-        if (a.getCost() < b.getCost()) {
-            return a;
-        } else if (a.getCost() == b.getCost()) {
-            if (a.getAzEro().size() < b.getAzEro().size()) {
-                return a;
+    private Integer maxAvailable(List<TopoUrn> ports, Map<String, Integer> availBw) {
+        Integer result = 0;
+        for (TopoUrn port : ports) {
+            Integer avail = availBw.get(port.getUrn());
+            if (avail != null && avail > result) {
+                result = avail;
             }
         }
-        return b;
+        return result;
     }
 
 }
@@ -0,0 +1,224 @@
+package net.es.oscars.pce;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.topo.beans.CompactTopo;
+import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.PceExplanation;
+import net.es.oscars.web.beans.PcePath;
+import net.es.oscars.web.beans.PcePhase;
+import net.es.oscars.web.beans.PceResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Finds the widest and fitting paths with direct graph searches instead of enumerating paths:
+ * <ul>
+ * <li>widest AZ / ZA: a max-bottleneck search finds the best achievable bandwidth, then
+ * the least-cost path among the links that offer at least that much is picked</li>
+ * <li>fits: the graph is pruned by the requested bandwidth, then least-cost path</li>
+ * <li>widest sum: for each distinct AZ capacity, the widest ZA path among the links that
+ * offer at least that much AZ bandwidth; the best sum wins</li>
+ * </ul>
+ * Capacities are directional, see CompactPaths.capacities(). All searches run on the
+ * snapshot's CompactTopo; only the final candidates are turned into EROs.
+ * <p>
+ * Budgets, explanations and stats work as in AllPathsPCE: each candidate path spends
+ * one path of the budget, and the widest sum searches stop once the time runs out.
+ * There is no enumeration, so the explanation has no length limit or cache lookup;
+ * the ENUMERATION phase is the time spent in the graph searches.
+ */
+@Slf4j
+@Component
+public class BandwidthAwarePCE {
+    @Autowired
+    private TopoService topoService;
+
+    @Autowired
+    private DijkstraPCE dijkstraPCE;
+
+    @Autowired
+    private PceStats pceStats;
+
+    public PceResponse calculatePaths(VlanPipe requestPipe,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw,
+                                      Set<String> exclude) throws PCEException {
+        return this.calculatePaths(requestPipe, availIngressBw, availEgressBw, exclude, PceBudget.unlimited());
+    }
+
+    /**
+     * As above, but stops once the budget runs out and returns the best paths found so
+     * far, marked partial.
+     */
+    public PceResponse calculatePaths(VlanPipe requestPipe,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw,
+                                      Set<String> exclude,
+                                      PceBudget budget) throws PCEException {
+        budget.start();
+        PceTrace trace = new PceTrace();
+
+        TopoSnapshot snapshot = PceLibrary.snapshot(topoService);
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+
+        TopoUrn src = PceLibrary.deviceUrn(baseline, requestPipe.getA().getDeviceUrn());
+        TopoUrn dst = PceLibrary.deviceUrn(baseline, requestPipe.getZ().getDeviceUrn());
+        trace.mark(PcePhase.SNAPSHOT);
+
+        CompactTopo topo = snapshot.getCompact();
+        int s = topo.indexOf(src.getUrn());
+        int d = topo.indexOf(dst.getUrn());
+        double[] metrics = topo.getMetrics();
+        int[] ingress = topo.perVertex(availIngressBw);
+        int[] egress = topo.perVertex(availEgressBw);
+        int[] azCapacity = CompactPaths.capacities(topo, ingress, egress, true);
+        int[] zaCapacity = CompactPaths.capacities(topo, ingress, egress, false);
+
+        PcePath shortest = dijkstraPCE.shortestPath(snapshot, src, dst);
+        PcePath leastHops = dijkstraPCE.leastHopsPath(snapshot, src, dst);
+        BandwidthContext bandwidths = BandwidthContext.of(snapshot, availIngressBw, availEgressBw);
+        bandwidths.pathBandwidths(shortest);
+        bandwidths.pathBandwidths(leastHops);
+        trace.setShortestLength(shortest.getAzEro().size());
+        trace.mark(PcePhase.SHORTEST_PATHS);
+
+        boolean[] excluded = new boolean[topo.getVertexCount()];
+        if (exclude != null) {
+            for (String urn : exclude) {
+                int v = topo.indexOf(urn);
+                if (v >= 0) {
+                    excluded[v] = true;
+                }
+            }
+        }
+        trace.mark(PcePhase.CONSTRAINTS);
+
+        Instant es = Instant.now();
+        List<int[]> candidates = new ArrayList<>();
+
+        // widest in each direction
+        int widestAZ = CompactPaths.widest(topo, s, d, azCapacity, excluded, null);
+        if (widestAZ >= 0) {
+            candidates.add(CompactPaths.shortestPath(topo, s, d, metrics, excluded,
+                    below(azCapacity, widestAZ, null, 0)));
+        }
+        int widestZA = CompactPaths.widest(topo, s, d, zaCapacity, excluded, null);
+        if (widestZA >= 0) {
+            candidates.add(CompactPaths.shortestPath(topo, s, d, metrics, excluded,
+                    below(zaCapacity, widestZA, null, 0)));
+        }
+
+        // cheapest among the links that can carry the requested bandwidth
+        Integer azBw = requestPipe.getAzBandwidth();
+        Integer zaBw = requestPipe.getZaBandwidth();
+        boolean[] pruned = below(azCapacity, azBw, zaCapacity, zaBw);
+        boolean[] kept = new boolean[topo.getEdgeCount()];
+        for (TopoAdjcy adjcy : PruningLibrary.pruneAdjacencies(snapshot.getTopoAdjcies(), azBw, zaBw, availIngressBw, availEgressBw)) {
+            kept[topo.edgeOf(adjcy)] = true;
+        }
+        for (int e = 0; e < pruned.length; e++) {
+            pruned[e] = pruned[e] || !kept[e];
+        }
+        candidates.add(CompactPaths.shortestPath(topo, s, d, metrics, excluded, pruned));
+
+        // widest sum: the best path has some AZ bottleneck t; try every distinct t, widest first
+        if (widestAZ >= 0 && widestZA >= 0) {
+            TreeSet<Integer> thresholds = new TreeSet<>(Comparator.reverseOrder());
+            for (int capacity : azCapacity) {
+                if (capacity < Integer.MAX_VALUE && capacity <= widestAZ) {
+                    thresholds.add(capacity);
+                }
+            }
+            long bestSum = -1;
+            List<int[]> best = new ArrayList<>();
+            for (Integer t : thresholds) {
+                if ((long) t + widestZA < bestSum || budget.expired()) {
+                    break;
+                }
+                int za = CompactPaths.widest(topo, s, d, zaCapacity, excluded, below(azCapacity, t, null, 0));
+                if (za < 0) {
+                    continue;
+                }
+                long sum = (long) t + za;
+                if (sum > bestSum) {
+                    bestSum = sum;
+                    best.clear();
+                }
+                if (sum == bestSum) {
+                    best.add(new int[]{t, za});
+                }
+            }
+            for (int[] tz : best) {
+                candidates.add(CompactPaths.shortestPath(topo, s, d, metrics, excluded,
+                        below(azCapacity, tz[0], zaCapacity, tz[1])));
+            }
+        }
+
+        candidates.removeIf(Objects::isNull);
+        trace.setEnumerated(candidates.size());
+        trace.mark(PcePhase.ENUMERATION);
+
+        PathEvaluation evaluation = new PathEvaluation(azBw, zaBw);
+        for (int[] path : candidates) {
+            if (!budget.spend()) {
+                break;
+            }
+            PcePath pcePath = CompactPaths.toPcePath(topo, s, path, metrics);
+            if (pcePath != null) {
+                bandwidths.pathBandwidths(pcePath);
+                evaluation.consider(pcePath);
+            }
+        }
+        // cut short: the shortest and least-hops paths are candidates too, unless there are none
+        if (budget.isExhausted()) {
+            if (!shortest.getAzEro().isEmpty()) {
+                evaluation.consider(shortest);
+            }
+            if (!leastHops.getAzEro().isEmpty()) {
+                evaluation.consider(leastHops);
+            }
+        }
+        trace.mark(PcePhase.EVALUATION);
+        Instant ee = Instant.now();
+        log.info("bandwidth-aware paths found in time " + Duration.between(es, ee) +
+                (budget.isExhausted() ? ", budget exhausted after " + evaluation.getEvaluated() + " paths" : ""));
+        PceExplanation explanation = trace.explain(evaluation);
+        pceStats.record(explanation);
+        log.debug("explanation: " + explanation);
+
+        return PceResponse.builder()
+                .widestAZ(evaluation.getWidestAZ())
+                .widestZA(evaluation.getWidestZA())
+                .widestSum(evaluation.getWidestSum())
+                .shortest(shortest)
+                .leastHops(leastHops)
+                .fits(evaluation.getFits())
+                .evaluated(candidates.size())
+                .considered(evaluation.getEvaluated())
+                .partial(budget.isExhausted())
+                .explanation(explanation)
+                .build();
+    }
+
+    /**
+     * @return an edge mask of every edge offering less than the first minimum in the first
+     * capacity array, or (when given) less than the second minimum in the second one
+     */
+    private boolean[] below(int[] capacity, int minimum, int[] otherCapacity, int otherMinimum) {
+        boolean[] mask = new boolean[capacity.length];
+        for (int e = 0; e < capacity.length; e++) {
+            mask[e] = capacity[e] < minimum || (otherCapacity != null && otherCapacity[e] < otherMinimum);
+        }
+        return mask;
+    }
+
+}
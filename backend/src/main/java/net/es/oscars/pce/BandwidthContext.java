@@ -0,0 +1,42 @@
+package net.es.oscars.pce;
+
+import lombok.Getter;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.web.beans.PcePath;
+
+import java.util.Map;
+
+/**
+ * The bandwidth figures one PCE request needs: baseline (reservable) bandwidth per port,
+ * which only changes with the topology version and comes precomputed with the snapshot,
+ * and the bandwidth available over the requested interval.
+ * <p>
+ * Build it once per request; pathBandwidths() then costs O(hops) per path.
+ */
+@Getter
+public class BandwidthContext {
+    private final Map<String, Integer> baselineIngressBw;
+    private final Map<String, Integer> baselineEgressBw;
+    private final Map<String, Integer> availIngressBw;
+    private final Map<String, Integer> availEgressBw;
+
+    private BandwidthContext(TopoSnapshot snapshot,
+                             Map<String, Integer> availIngressBw,
+                             Map<String, Integer> availEgressBw) {
+        this.baselineIngressBw = snapshot.getBaselineIngressBw();
+        this.baselineEgressBw = snapshot.getBaselineEgressBw();
+        this.availIngressBw = availIngressBw;
+        this.availEgressBw = availEgressBw;
+    }
+
+    public static BandwidthContext of(TopoSnapshot snapshot,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw) {
+        return new BandwidthContext(snapshot, availIngressBw, availEgressBw);
+    }
+
+    public void pathBandwidths(PcePath pcePath) throws PCEException {
+        PceLibrary.pathBandwidths(pcePath, baselineIngressBw, baselineEgressBw, availIngressBw, availEgressBw);
+    }
+}
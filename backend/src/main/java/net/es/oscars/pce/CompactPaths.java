@@ -0,0 +1,503 @@
+package net.es.oscars.pce;
+
+import net.es.oscars.resv.ent.EroHop;
+import net.es.oscars.topo.beans.CompactTopo;
+import net.es.oscars.topo.beans.VertexHeap;
+import net.es.oscars.web.beans.PcePath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Path searches over a CompactTopo. Paths are int arrays of edge indices, from the
+ * source vertex onwards; they are only turned into EroHop lists by toPcePath().
+ * <p>
+ * Vertex and edge masks may be null, meaning nothing is masked.
+ */
+public class CompactPaths {
+
+    /**
+     * Dijkstra; with null weights every edge costs 1 (least hops).
+     * <p>
+     * Ties are broken canonically: each vertex is reached over its lowest-indexed edge
+     * among those on a least-cost path, so the result does not depend on search order.
+     *
+     * @return the least-cost path from src to dst, or null if there is none
+     */
+    public static int[] shortestPath(CompactTopo topo, int src, int dst, double[] weights,
+                                     boolean[] vertexMask, boolean[] edgeMask) {
+        return search(topo, src, dst, weights, vertexMask, edgeMask, null);
+    }
+
+    /**
+     * A* with ALT (landmark and triangle inequality) lower bounds: for a landmark L,
+     * d(v, dst) >= d(L, dst) - d(L, v). Each row of landmarkDistances holds the distances
+     * from one landmark to every vertex, under the same weights as the search.
+     * <p>
+     * Returns exactly the path shortestPath() would, while settling fewer vertices.
+     */
+    public static int[] goalDirectedPath(CompactTopo topo, int src, int dst, double[] weights,
+                                         double[][] landmarkDistances) {
+        return search(topo, src, dst, weights, null, null, landmarkDistances);
+    }
+
+    /*
+     * The heap is ordered by estimate, then by distance so far. With a consistent estimate
+     * this settles every predecessor on a least-cost path before the vertex it leads to,
+     * so the lowest edge index among them can be picked before the vertex is settled.
+     */
+    private static int[] search(CompactTopo topo, int src, int dst, double[] weights,
+                                boolean[] vertexMask, boolean[] edgeMask, double[][] landmarks) {
+        if (src < 0 || dst < 0 || masked(vertexMask, src) || masked(vertexMask, dst)) {
+            return null;
+        }
+        int[] offsets = topo.getOffsets();
+        int[] targets = topo.getTargets();
+
+        double[] dist = new double[topo.getVertexCount()];
+        int[] via = new int[topo.getVertexCount()];
+        boolean[] settled = new boolean[topo.getVertexCount()];
+        double[] estimates = landmarks == null ? null : new double[topo.getVertexCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(via, -1);
+        if (estimates != null) {
+            Arrays.fill(estimates, Double.NaN);
+        }
+
+        VertexHeap heap = new VertexHeap(topo.getVertexCount());
+        dist[src] = 0;
+        heap.push(estimate(landmarks, estimates, src, dst), 0, src);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            if (settled[u]) {
+                continue;
+            }
+            settled[u] = true;
+            if (u == dst) {
+                break;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targets[e];
+                if (settled[w] || masked(edgeMask, e) || masked(vertexMask, w)) {
+                    continue;
+                }
+                double d = dist[u] + (weights == null ? 1 : weights[e]);
+                if (d < dist[w]) {
+                    double h = estimate(landmarks, estimates, w, dst);
+                    if (h == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    dist[w] = d;
+                    via[w] = e;
+                    heap.push(d + h, d, w);
+                } else if (d == dist[w] && e < via[w]) {
+                    via[w] = e;
+                }
+            }
+        }
+        if (!settled[dst] || src == dst) {
+            return null;
+        }
+        return trace(topo, src, dst, via);
+    }
+
+    /**
+     * ALT lower bound on the distance from v to dst; 0 without landmarks. Infinite when
+     * some landmark reaches v but not dst, i.e. dst is unreachable from v.
+     */
+    private static double estimate(double[][] landmarks, double[] estimates, int v, int dst) {
+        if (landmarks == null) {
+            return 0;
+        }
+        if (Double.isNaN(estimates[v])) {
+            double bound = 0;
+            for (double[] row : landmarks) {
+                if (row[v] < Double.POSITIVE_INFINITY) {
+                    bound = Math.max(bound, row[dst] - row[v]);
+                }
+            }
+            estimates[v] = bound;
+        }
+        return estimates[v];
+    }
+
+    /**
+     * Dijkstra from a set of source devices at once, stopping at the first target device
+     * reached. The search only follows device, port, port, device sequences, so the result
+     * always converts to a valid ERO even where a port is adjacent to several others.
+     *
+     * @return the path to the nearest target, starting at one of the sources, or null if
+     * no target can be reached
+     */
+    public static int[] nearestTarget(CompactTopo topo, boolean[] sources, boolean[] targets, double[] weights,
+                                      boolean[] vertexMask, boolean[] edgeMask) {
+        int[] offsets = topo.getOffsets();
+        int[] targetVertices = topo.getTargets();
+        boolean[] devices = topo.getDevices();
+        boolean[] internal = topo.getInternal();
+
+        // a port is searched twice: reached from its device (must leave over a link), and
+        // reached over a link (must go on to its device); state = 2 * vertex + overLink
+        int states = 2 * topo.getVertexCount();
+        double[] dist = new double[states];
+        int[] via = new int[states];
+        boolean[] settled = new boolean[states];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(via, -1);
+
+        VertexHeap heap = new VertexHeap(states);
+        for (int v = 0; v < sources.length; v++) {
+            if (sources[v] && devices[v] && !masked(vertexMask, v)) {
+                dist[2 * v] = 0;
+                heap.push(0, 0, 2 * v);
+            }
+        }
+        int found = -1;
+        while (!heap.isEmpty()) {
+            int state = heap.pop();
+            if (settled[state]) {
+                continue;
+            }
+            settled[state] = true;
+            int u = state / 2;
+            boolean overLink = state % 2 == 1;
+            if (devices[u] && targets[u] && !sources[u]) {
+                found = state;
+                break;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targetVertices[e];
+                if (masked(edgeMask, e) || masked(vertexMask, w)) {
+                    continue;
+                }
+                // devices leave over internal edges; ports alternate
+                if (!devices[u] && (internal[e] != overLink)) {
+                    continue;
+                }
+                int next = 2 * w + (internal[e] ? 0 : 1);
+                double d = dist[state] + (weights == null ? 1 : weights[e]);
+                if (!settled[next] && d < dist[next]) {
+                    dist[next] = d;
+                    via[next] = e;
+                    heap.push(d, d, next);
+                }
+            }
+        }
+        if (found < 0) {
+            return null;
+        }
+
+        int[] sourceVertices = topo.getSources();
+        List<Integer> path = new ArrayList<>();
+        int state = found;
+        while (via[state] >= 0) {
+            int e = via[state];
+            path.add(e);
+            int from = sourceVertices[e];
+            // a port left towards its device had been reached over a link
+            state = 2 * from + (!devices[from] && internal[e] ? 1 : 0);
+        }
+        int[] result = new int[path.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = path.get(result.length - 1 - i);
+        }
+        return result;
+    }
+
+    /**
+     * Max-bottleneck search (Dijkstra with min-of-capacities labels).
+     *
+     * @return the largest capacity any path from src to dst offers, or -1 if unreachable
+     */
+    public static int widest(CompactTopo topo, int src, int dst, int[] capacity,
+                             boolean[] vertexMask, boolean[] edgeMask) {
+        if (src < 0 || dst < 0 || masked(vertexMask, src) || masked(vertexMask, dst)) {
+            return -1;
+        }
+        int[] offsets = topo.getOffsets();
+        int[] targets = topo.getTargets();
+
+        int[] width = new int[topo.getVertexCount()];
+        boolean[] settled = new boolean[topo.getVertexCount()];
+        Arrays.fill(width, -1);
+
+        VertexHeap heap = new VertexHeap(topo.getVertexCount());
+        width[src] = Integer.MAX_VALUE;
+        heap.push(-(double) Integer.MAX_VALUE, 0, src);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            if (settled[u]) {
+                continue;
+            }
+            settled[u] = true;
+            if (u == dst) {
+                return width[u];
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targets[e];
+                if (settled[w] || masked(edgeMask, e) || masked(vertexMask, w)) {
+                    continue;
+                }
+                int candidate = Math.min(width[u], capacity[e]);
+                if (candidate > width[w]) {
+                    width[w] = candidate;
+                    heap.push(-(double) candidate, 0, w);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Every loopless path from the first waypoint to the last that passes through the
+     * others in order, has at most maxEdges edges and alternates device, port, port, device.
+     * <p>
+     * Depth-first, one segment after the other; a branch is cut as soon as the hops it
+     * still needs to the next waypoint, plus the least hops over the segments after it,
+     * would take it over maxEdges. Masked vertices are never entered, and waypoints are
+     * only entered in their turn.
+     * <p>
+     * Each path found is spent from the budget; the search stops when the budget runs out.
+     * Branches cut by the mask or by a waypoint out of turn are counted in the trace.
+     *
+     * @return the paths, in no particular order; empty if there are none
+     */
+    public static List<int[]> allPaths(CompactTopo topo, int[] waypoints, int maxEdges, boolean[] vertexMask,
+                                       PceBudget budget, PceTrace trace) {
+        int n = topo.getVertexCount();
+        int last = waypoints.length - 1;
+        int[] waypointIndex = new int[n];
+        Arrays.fill(waypointIndex, -1);
+        for (int i = 0; i <= last; i++) {
+            if (waypointIndex[waypoints[i]] >= 0) {
+                return new ArrayList<>();
+            }
+            waypointIndex[waypoints[i]] = i;
+        }
+
+        // hops to each waypoint, and least hops from each waypoint to the end
+        int[][] hopsTo = new int[waypoints.length][];
+        int[] leastAfter = new int[waypoints.length];
+        for (int i = last; i > 0; i--) {
+            hopsTo[i] = hopsTo(topo, waypoints[i], vertexMask);
+            int hops = hopsTo[i][waypoints[i - 1]];
+            if (hops == Integer.MAX_VALUE) {
+                return new ArrayList<>();
+            }
+            leastAfter[i - 1] = leastAfter[i] + hops;
+        }
+
+        List<int[]> result = new ArrayList<>();
+        if (leastAfter[0] > maxEdges) {
+            return result;
+        }
+        PathEnumeration enumeration = new PathEnumeration(topo, waypoints, waypointIndex, hopsTo, leastAfter,
+                maxEdges, vertexMask, budget, trace, result);
+        enumeration.onPath[waypoints[0]] = true;
+        enumeration.visit(waypoints[0], 1, 0);
+        return result;
+    }
+
+    /**
+     * Breadth-first over the reversed edges.
+     *
+     * @return the least number of hops from each vertex to dst, Integer.MAX_VALUE where unreachable
+     */
+    private static int[] hopsTo(CompactTopo topo, int dst, boolean[] vertexMask) {
+        int n = topo.getVertexCount();
+        int[] sources = topo.getSources();
+        int[] targets = topo.getTargets();
+
+        // incoming edges, grouped by target
+        int[] inOffsets = new int[n + 1];
+        for (int target : targets) {
+            inOffsets[target + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inEdges = new int[targets.length];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int e = 0; e < targets.length; e++) {
+            inEdges[fill[targets[e]]++] = e;
+        }
+
+        int[] hops = new int[n];
+        Arrays.fill(hops, Integer.MAX_VALUE);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        hops[dst] = 0;
+        queue[tail++] = dst;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = inOffsets[v]; i < inOffsets[v + 1]; i++) {
+                int u = sources[inEdges[i]];
+                if (hops[u] == Integer.MAX_VALUE && !masked(vertexMask, u)) {
+                    hops[u] = hops[v] + 1;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return hops;
+    }
+
+    private static class PathEnumeration {
+        private final int[] offsets;
+        private final int[] targets;
+        private final boolean[] devices;
+        private final int[] waypoints;
+        private final int[] waypointIndex;
+        private final int[][] hopsTo;
+        private final int[] leastAfter;
+        private final int maxEdges;
+        private final boolean[] vertexMask;
+        private final PceBudget budget;
+        private final PceTrace trace;
+        private final List<int[]> result;
+
+        private final boolean[] onPath;
+        private final int[] edges;
+        private int visits = 0;
+        private boolean stopped = false;
+
+        private PathEnumeration(CompactTopo topo, int[] waypoints, int[] waypointIndex, int[][] hopsTo,
+                                int[] leastAfter, int maxEdges, boolean[] vertexMask, PceBudget budget,
+                                PceTrace trace, List<int[]> result) {
+            this.offsets = topo.getOffsets();
+            this.targets = topo.getTargets();
+            this.devices = topo.getDevices();
+            this.waypoints = waypoints;
+            this.waypointIndex = waypointIndex;
+            this.hopsTo = hopsTo;
+            this.leastAfter = leastAfter;
+            this.maxEdges = maxEdges;
+            this.vertexMask = vertexMask;
+            this.budget = budget;
+            this.trace = trace;
+            this.result = result;
+            this.onPath = new boolean[topo.getVertexCount()];
+            this.edges = new int[maxEdges];
+        }
+
+        // v is on the path after depth edges; next is the index of the waypoint to reach next
+        private void visit(int v, int next, int depth) {
+            // looking at the clock is not free, so only every so often
+            if (stopped || (++visits % 1024 == 0 && budget.expired())) {
+                stopped = true;
+                return;
+            }
+            if (v == waypoints[next]) {
+                if (next == waypoints.length - 1) {
+                    if (budget.spend()) {
+                        result.add(Arrays.copyOf(edges, depth));
+                    } else {
+                        stopped = true;
+                    }
+                    return;
+                }
+                next++;
+            }
+            boolean deviceNext = (depth + 1) % 3 == 0;
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (onPath[w] || devices[w] != deviceNext) {
+                    continue;
+                }
+                if (masked(vertexMask, w) || (waypointIndex[w] >= 0 && waypointIndex[w] != next)) {
+                    trace.pruned();
+                    continue;
+                }
+                int hops = hopsTo[next][w];
+                if (hops == Integer.MAX_VALUE || depth + 1 + hops + leastAfter[next] > maxEdges) {
+                    continue;
+                }
+                edges[depth] = e;
+                onPath[w] = true;
+                visit(w, next, depth + 1);
+                onPath[w] = false;
+            }
+        }
+    }
+
+    /**
+     * Per-edge capacity in one direction, given per-vertex available bandwidth.
+     * An edge a-z carries A-Z traffic with min(egress a, ingress z); for the Z-A
+     * direction the traffic flows the other way, so it is min(egress z, ingress a).
+     * Internal device-port edges are unlimited.
+     */
+    public static int[] capacities(CompactTopo topo, int[] ingress, int[] egress, boolean azDirection) {
+        int[] sources = topo.getSources();
+        int[] targets = topo.getTargets();
+        boolean[] internal = topo.getInternal();
+        int[] result = new int[topo.getEdgeCount()];
+        for (int e = 0; e < result.length; e++) {
+            if (internal[e]) {
+                result[e] = Integer.MAX_VALUE;
+            } else if (azDirection) {
+                result[e] = Math.min(egress[sources[e]], ingress[targets[e]]);
+            } else {
+                result[e] = Math.min(egress[targets[e]], ingress[sources[e]]);
+            }
+        }
+        return result;
+    }
+
+    public static double cost(int[] path, double[] weights) {
+        double cost = 0;
+        for (int e : path) {
+            cost += weights == null ? 1 : weights[e];
+        }
+        return cost;
+    }
+
+    /**
+     * Builds a PcePath with EROs in both directions and the cost of the path; bandwidths
+     * are left unset. Returns null if the path does not alternate device, port, port, device.
+     */
+    public static PcePath toPcePath(CompactTopo topo, int src, int[] path, double[] weights) {
+        boolean[] devices = topo.getDevices();
+        String[] urns = topo.getUrns();
+        int[] targets = topo.getTargets();
+
+        List<EroHop> azEro = new ArrayList<>();
+        List<EroHop> zaEro = new ArrayList<>();
+        int v = src;
+        for (int i = 0; i <= path.length; i++) {
+            if (i > 0) {
+                v = targets[path[i - 1]];
+            }
+            if (devices[v] != (i % 3 == 0)) {
+                return null;
+            }
+            azEro.add(EroHop.builder().urn(urns[v]).build());
+            zaEro.add(EroHop.builder().urn(urns[v]).build());
+        }
+        Collections.reverse(zaEro);
+        return PcePath.builder()
+                .azEro(azEro)
+                .zaEro(zaEro)
+                .cost(cost(path, weights))
+                .build();
+    }
+
+    private static int[] trace(CompactTopo topo, int src, int dst, int[] via) {
+        int[] sources = topo.getSources();
+        int length = 0;
+        for (int v = dst; v != src; v = sources[via[v]]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = dst; v != src; v = sources[via[v]]) {
+            path[--length] = via[v];
+        }
+        return path;
+    }
+
+    private static boolean masked(boolean[] mask, int i) {
+        return mask != null && mask[i];
+    }
+
+}
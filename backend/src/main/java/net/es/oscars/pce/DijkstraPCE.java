@@ -1,16 +1,22 @@
 package net.es.oscars.pce;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.resv.ent.EroHop;
 import net.es.oscars.resv.enums.EroDirection;
+import net.es.oscars.topo.beans.CompactTopo;
 import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoMetrics;
+import net.es.oscars.topo.beans.TopoSnapshot;
 import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.svc.TopoMetricsService;
 import net.es.oscars.web.beans.PcePath;
 import org.jgrapht.GraphPath;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.alg.spanning.KruskalMinimumSpanningTree;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -21,26 +27,128 @@ public class DijkstraPCE {
     @Autowired
     FloydWarshall floydWarshall;
 
-    public PcePath shortestPath(DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> graph , TopoUrn src, TopoUrn dst) {
+    @Autowired
+    private TopoMetricsService topoMetricsService;
 
-        DijkstraShortestPath<TopoUrn, TopoAdjcy> alg = new DijkstraShortestPath<>(graph);
-        GraphPath<TopoUrn, TopoAdjcy> path = alg.getPath(src, dst);
-        double w = alg.getPathWeight(src,dst);
-        log.info("shortest path cost: "+w);
-        List<EroHop> azEro = PceLibrary.toEro(path);
-        List<EroHop> zaEro = new ArrayList<>();
-        for (EroHop hop : azEro) {
-            zaEro.add(EroHop.builder().urn(hop.getUrn()).build());
+    @Value("${pce.shortest-path-algorithm:DIJKSTRA}")
+    private ShortestPathAlgorithm algorithm;
+
+    @Value("${pce.alt-landmarks:8}")
+    private Integer landmarkCount;
+
+    private volatile Landmarks landmarks = null;
+
+    /**
+     * @return the least-cost path by metric; with empty EROs and infinite cost if there is none
+     */
+    public PcePath shortestPath(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst) {
+        return this.shortestPath(snapshot, src, dst, algorithm);
+    }
+
+    public PcePath shortestPath(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst, ShortestPathAlgorithm algorithm) {
+        CompactTopo topo = snapshot.getCompact();
+        double[][] rows = null;
+        if (algorithm.equals(ShortestPathAlgorithm.ALT)) {
+            rows = this.landmarks(snapshot).getMetricDistances();
         }
+        return this.search(topo, src, dst, topo.getMetrics(), rows);
+    }
 
-        Collections.reverse(zaEro);
+    /**
+     * @return the path with the fewest hops; its cost is the hop count
+     */
+    public PcePath leastHopsPath(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst) {
+        return this.leastHopsPath(snapshot, src, dst, algorithm);
+    }
 
-        return PcePath.builder()
-                .azEro(azEro)
-                .zaEro(zaEro)
-                .cost(w)
-                .build();
+    public PcePath leastHopsPath(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst, ShortestPathAlgorithm algorithm) {
+        double[][] rows = null;
+        if (algorithm.equals(ShortestPathAlgorithm.ALT)) {
+            rows = this.landmarks(snapshot).getHops();
+        }
+        return this.search(snapshot.getCompact(), src, dst, null, rows);
+    }
 
+    private PcePath search(CompactTopo topo, TopoUrn src, TopoUrn dst, double[] weights, double[][] landmarkRows) {
+        int s = topo.indexOf(src.getUrn());
+        int d = topo.indexOf(dst.getUrn());
+        int[] path;
+        if (landmarkRows == null) {
+            path = CompactPaths.shortestPath(topo, s, d, weights, null, null);
+        } else {
+            path = CompactPaths.goalDirectedPath(topo, s, d, weights, landmarkRows);
+        }
+        PcePath result = null;
+        if (path != null) {
+            result = CompactPaths.toPcePath(topo, s, path, weights);
+        }
+        if (result == null) {
+            result = PcePath.builder()
+                    .azEro(new ArrayList<>())
+                    .zaEro(new ArrayList<>())
+                    .cost(Double.POSITIVE_INFINITY)
+                    .build();
+        }
+        log.info("shortest path cost: " + result.getCost());
+        return result;
+    }
+
+    /**
+     * Landmarks for the snapshot's version, picked once per version.
+     */
+    private Landmarks landmarks(TopoSnapshot snapshot) {
+        Landmarks current = this.landmarks;
+        if (current == null || !current.getVersion().equals(snapshot.getVersion().getId())) {
+            current = new Landmarks(topoMetricsService.metrics(snapshot), landmarkCount);
+            this.landmarks = current;
+        }
+        return current;
+    }
+
+    /**
+     * Devices spread across the topology by farthest-point selection: each landmark is
+     * the device farthest (by hops) from all landmarks picked before it. Far-apart
+     * landmarks give the tightest lower bounds.
+     */
+    @Getter
+    private static class Landmarks {
+        private final Long version;
+        private final double[][] hops;
+        private final double[][] metricDistances;
+
+        Landmarks(TopoMetrics metrics, int count) {
+            this.version = metrics.getVersion().getId();
+            CompactTopo topo = metrics.getCompact();
+            boolean[] devices = topo.getDevices();
+
+            double[] nearest = new double[topo.getVertexCount()];
+            Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+            List<Integer> picked = new ArrayList<>();
+            while (picked.size() < count) {
+                int next = -1;
+                for (int v = 0; v < nearest.length; v++) {
+                    if (devices[v] && !picked.contains(v) && (next < 0 || nearest[v] > nearest[next])) {
+                        next = v;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                picked.add(next);
+                for (int v = 0; v < nearest.length; v++) {
+                    if (devices[v]) {
+                        nearest[v] = Math.min(nearest[v], metrics.getHops()[next][v]);
+                    }
+                }
+            }
+
+            hops = new double[picked.size()][];
+            metricDistances = new double[picked.size()][];
+            for (int i = 0; i < picked.size(); i++) {
+                hops[i] = metrics.getHops()[picked.get(i)];
+                metricDistances[i] = metrics.getMetricDistances()[picked.get(i)];
+            }
+        }
     }
 
     @Deprecated
@@ -0,0 +1,279 @@
+package net.es.oscars.pce;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.topo.beans.CompactTopo;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.PcePath;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Finds a primary and a protect path with the least total metric cost such that the
+ * two are link- or node-disjoint and both can carry the requested bandwidth.
+ * <p>
+ * This is Suurballe's problem, solved as a min-cost flow of two units with successive
+ * shortest paths over the residual graph (the second search may use negative residual
+ * arcs, like Bhandari's variant). The flow network is laid out so that every path
+ * through it alternates device, port, port, device:
+ * <ul>
+ * <li>each port is split into an egress node (entered from its device, left over a link)
+ * and an ingress node (entered over a link, left to its device)</li>
+ * <li>each port-to-port link is a node with capacity 1, so the two paths can't share
+ * it even in opposite directions</li>
+ * <li>for node-disjoint pairs, every device other than the endpoints has capacity 1</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class DisjointPCE {
+    @Autowired
+    private TopoService topoService;
+
+    /**
+     * @return the primary and protect paths, in that order, or an empty list if the
+     * topology has no disjoint pair able to carry the requested bandwidth
+     */
+    public List<PcePath> calculatePair(VlanPipe requestPipe,
+                                       Map<String, Integer> availIngressBw,
+                                       Map<String, Integer> availEgressBw,
+                                       Disjointness disjointness,
+                                       Set<String> exclude) throws PCEException {
+
+        TopoSnapshot snapshot = PceLibrary.snapshot(topoService);
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        TopoUrn src = PceLibrary.deviceUrn(baseline, requestPipe.getA().getDeviceUrn());
+        TopoUrn dst = PceLibrary.deviceUrn(baseline, requestPipe.getZ().getDeviceUrn());
+
+        CompactTopo topo = snapshot.getCompact();
+        int s = topo.indexOf(src.getUrn());
+        int d = topo.indexOf(dst.getUrn());
+
+        int[] ingress = topo.perVertex(availIngressBw);
+        int[] egress = topo.perVertex(availEgressBw);
+        int[] azCapacity = CompactPaths.capacities(topo, ingress, egress, true);
+        int[] zaCapacity = CompactPaths.capacities(topo, ingress, egress, false);
+        boolean[] usable = new boolean[topo.getEdgeCount()];
+        for (int e = 0; e < usable.length; e++) {
+            usable[e] = azCapacity[e] >= requestPipe.getAzBandwidth() && zaCapacity[e] >= requestPipe.getZaBandwidth();
+        }
+        boolean[] excluded = new boolean[topo.getVertexCount()];
+        if (exclude != null) {
+            for (String urn : exclude) {
+                int v = topo.indexOf(urn);
+                if (v >= 0 && v != s && v != d) {
+                    excluded[v] = true;
+                }
+            }
+        }
+
+        Instant start = Instant.now();
+        FlowNetwork network = new FlowNetwork(topo, s, d, usable, excluded, disjointness);
+        List<int[]> paths = network.twoPaths();
+        log.info(disjointness + "-disjoint pair between " + src.getUrn() + " and " + dst.getUrn() +
+                (paths.isEmpty() ? " not found" : " found") + " in time " + Duration.between(start, Instant.now()));
+
+        BandwidthContext bandwidths = BandwidthContext.of(snapshot, availIngressBw, availEgressBw);
+        List<PcePath> result = new ArrayList<>();
+        for (int[] path : paths) {
+            PcePath pcePath = CompactPaths.toPcePath(topo, s, path, topo.getMetrics());
+            bandwidths.pathBandwidths(pcePath);
+            result.add(pcePath);
+        }
+        // cheaper one first
+        result.sort(Comparator.comparingDouble(PcePath::getCost));
+        return result;
+    }
+
+    /**
+     * Residual graph with unit capacities. Arcs are stored in pairs: arc i and its
+     * reverse i ^ 1; each forward arc remembers the compact edge it stands for, or -1.
+     */
+    private static class FlowNetwork {
+        private final int nodeCount;
+        private final int source;
+        private final int sink;
+
+        private int[] heads = new int[64];
+        private int[] nexts = new int[64];
+        private int[] tails = new int[64];
+        private int[] capacity = new int[64];
+        private double[] cost = new double[64];
+        private int[] edge = new int[64];
+        private int arcCount = 0;
+        private final int[] first;
+
+        FlowNetwork(CompactTopo topo, int s, int d, boolean[] usable, boolean[] excluded, Disjointness disjointness) {
+            int n = topo.getVertexCount();
+            boolean[] devices = topo.getDevices();
+            int[] sources = topo.getSources();
+            int[] targets = topo.getTargets();
+            boolean[] internal = topo.getInternal();
+            double[] metrics = topo.getMetrics();
+
+            // node numbering: vertex v is node v (a device's in-node, a port's ingress node);
+            // n + v is a device's out-node or a port's egress node; link nodes come after
+            Map<Long, Integer> links = new HashMap<>();
+            for (int e = 0; e < topo.getEdgeCount(); e++) {
+                if (!internal[e]) {
+                    links.putIfAbsent(linkKey(sources[e], targets[e]), links.size());
+                }
+            }
+            nodeCount = 2 * n + 2 * links.size();
+            first = new int[nodeCount];
+            Arrays.fill(first, -1);
+            source = n + s;
+            sink = d;
+
+            for (int v = 0; v < n; v++) {
+                if (devices[v] && !excluded[v]) {
+                    boolean endpoint = v == s || v == d;
+                    int deviceCapacity = disjointness.equals(Disjointness.NODE) && !endpoint ? 1 : 2;
+                    this.addArc(v, n + v, deviceCapacity, 0, -1);
+                }
+            }
+            for (Map.Entry<Long, Integer> link : links.entrySet()) {
+                int linkIn = 2 * n + 2 * link.getValue();
+                this.addArc(linkIn, linkIn + 1, 1, 0, -1);
+            }
+            for (int e = 0; e < topo.getEdgeCount(); e++) {
+                int a = sources[e];
+                int z = targets[e];
+                if (!usable[e] || excluded[a] || excluded[z]) {
+                    continue;
+                }
+                if (internal[e] && devices[a]) {
+                    // device out-node to port egress node
+                    this.addArc(n + a, n + z, 1, metrics[e], e);
+                } else if (internal[e]) {
+                    // port ingress node to device in-node
+                    this.addArc(a, z, 1, metrics[e], e);
+                } else {
+                    // port egress node through the link to the other port's ingress node
+                    int linkIn = 2 * n + 2 * links.get(linkKey(a, z));
+                    this.addArc(n + a, linkIn, 1, metrics[e], e);
+                    this.addArc(linkIn + 1, z, 1, 0, -1);
+                }
+            }
+        }
+
+        private static long linkKey(int a, int z) {
+            return ((long) Math.min(a, z) << 32) | Math.max(a, z);
+        }
+
+        private void addArc(int from, int to, int cap, double arcCost, int compactEdge) {
+            if (arcCount + 2 > heads.length) {
+                int size = heads.length * 2;
+                heads = Arrays.copyOf(heads, size);
+                nexts = Arrays.copyOf(nexts, size);
+                tails = Arrays.copyOf(tails, size);
+                capacity = Arrays.copyOf(capacity, size);
+                cost = Arrays.copyOf(cost, size);
+                edge = Arrays.copyOf(edge, size);
+            }
+            this.link(from, to, cap, arcCost, compactEdge);
+            this.link(to, from, 0, -arcCost, -1);
+        }
+
+        private void link(int from, int to, int cap, double arcCost, int compactEdge) {
+            int i = arcCount++;
+            tails[i] = from;
+            heads[i] = to;
+            capacity[i] = cap;
+            cost[i] = arcCost;
+            edge[i] = compactEdge;
+            nexts[i] = first[from];
+            first[from] = i;
+        }
+
+        /**
+         * Pushes two units of flow along successive least-cost augmenting paths, then
+         * splits the flow into two paths of compact edges.
+         */
+        List<int[]> twoPaths() {
+            for (int unit = 0; unit < 2; unit++) {
+                int[] via = this.leastCostAugmentingPath();
+                if (via == null) {
+                    return new ArrayList<>();
+                }
+                for (int v = sink; v != source; v = tails[via[v]]) {
+                    capacity[via[v]]--;
+                    capacity[via[v] ^ 1]++;
+                }
+            }
+
+            List<int[]> paths = new ArrayList<>();
+            for (int unit = 0; unit < 2; unit++) {
+                List<Integer> path = new ArrayList<>();
+                int v = source;
+                while (v != sink) {
+                    int next = -1;
+                    for (int i = first[v]; i >= 0; i = nexts[i]) {
+                        // a forward arc carrying flow has its reverse arc's capacity raised
+                        if ((i & 1) == 0 && capacity[i ^ 1] > 0) {
+                            next = i;
+                            break;
+                        }
+                    }
+                    capacity[next ^ 1]--;
+                    if (edge[next] >= 0) {
+                        path.add(edge[next]);
+                    }
+                    v = heads[next];
+                }
+                int[] result = new int[path.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = path.get(i);
+                }
+                paths.add(result);
+            }
+            return paths;
+        }
+
+        /**
+         * Bellman-Ford with a work queue, since residual arcs can have negative cost.
+         *
+         * @return the arc leading into each node on the least-cost path, or null if the
+         * sink can't be reached
+         */
+        private int[] leastCostAugmentingPath() {
+            double[] dist = new double[nodeCount];
+            int[] via = new int[nodeCount];
+            boolean[] queued = new boolean[nodeCount];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(via, -1);
+
+            Deque<Integer> queue = new ArrayDeque<>();
+            dist[source] = 0;
+            queue.add(source);
+            queued[source] = true;
+            while (!queue.isEmpty()) {
+                int u = queue.poll();
+                queued[u] = false;
+                for (int i = first[u]; i >= 0; i = nexts[i]) {
+                    if (capacity[i] <= 0) {
+                        continue;
+                    }
+                    int w = heads[i];
+                    double d = dist[u] + cost[i];
+                    if (d < dist[w]) {
+                        dist[w] = d;
+                        via[w] = i;
+                        if (!queued[w]) {
+                            queue.add(w);
+                            queued[w] = true;
+                        }
+                    }
+                }
+            }
+            return dist[sink] == Double.POSITIVE_INFINITY ? null : via;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package net.es.oscars.pce;
+
+public enum Disjointness {
+    // the two paths share no port-to-port link, in either direction
+    LINK,
+    // the two paths share no device or port other than the endpoint devices
+    NODE
+}
@@ -0,0 +1,290 @@
+package net.es.oscars.pce;
+
+import org.jgrapht.Graph;
+import org.jgrapht.GraphPath;
+import org.jgrapht.graph.GraphWalk;
+
+import java.util.*;
+
+/**
+ * Lazily enumerates loopless paths of at most maxLength edges between two vertices,
+ * in order of increasing weight (Yen's algorithm). Each call to next() only computes
+ * the spur paths needed to produce the next path, so callers can stop consuming as soon
+ * as they have what they need.
+ * <p>
+ * Spur paths are found with a hop-bounded shortest path search, so the length limit is
+ * honored exactly instead of filtering over-long paths afterwards. Edge weights must
+ * not be negative. At most maxPaths paths are ever returned.
+ * <p>
+ * The graph is indexed once up front; vertices and edges are matched by identity since
+ * topology beans have expensive hashCodes.
+ */
+public class KShortestPathIterator<V, E> implements Iterator<GraphPath<V, E>> {
+    private final Graph<V, E> graph;
+    private final V source;
+    private final V sink;
+    private final int maxLength;
+    private final int maxPaths;
+
+    private final List<V> vertices = new ArrayList<>();
+    private final List<E> edges = new ArrayList<>();
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final double[] edgeWeight;
+    private final int sourceIdx;
+    private final int sinkIdx;
+
+    private final List<Candidate> found = new ArrayList<>();
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    private final Set<Candidate> seen = new HashSet<>();
+
+    private GraphPath<V, E> pending = null;
+    private boolean started = false;
+    private int expanded = 0;
+    private int returned = 0;
+
+    public KShortestPathIterator(Graph<V, E> graph, V source, V sink, int maxLength, int maxPaths) {
+        this.graph = graph;
+        this.source = source;
+        this.sink = sink;
+        this.maxLength = maxLength;
+        this.maxPaths = maxPaths;
+
+        Map<V, Integer> index = new IdentityHashMap<>();
+        for (V v : graph.vertexSet()) {
+            index.put(v, vertices.size());
+            vertices.add(v);
+        }
+        edges.addAll(graph.edgeSet());
+        edgeSource = new int[edges.size()];
+        edgeTarget = new int[edges.size()];
+        edgeWeight = new double[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            E e = edges.get(i);
+            edgeSource[i] = index.get(graph.getEdgeSource(e));
+            edgeTarget[i] = index.get(graph.getEdgeTarget(e));
+            edgeWeight[i] = graph.getEdgeWeight(e);
+        }
+        sourceIdx = index.getOrDefault(source, -1);
+        sinkIdx = index.getOrDefault(sink, -1);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending == null) {
+            pending = advance();
+        }
+        return pending != null;
+    }
+
+    @Override
+    public GraphPath<V, E> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        GraphPath<V, E> result = pending;
+        pending = null;
+        return result;
+    }
+
+    /**
+     * @return how many paths have been returned so far
+     */
+    public int getReturned() {
+        return returned;
+    }
+
+    private GraphPath<V, E> advance() {
+        if (returned >= maxPaths || sourceIdx < 0 || sinkIdx < 0) {
+            return null;
+        }
+        Candidate path;
+        if (!started) {
+            started = true;
+            int[] first = this.boundedShortest(sourceIdx, maxLength,
+                    new boolean[vertices.size()], new boolean[edges.size()]);
+            path = first == null ? null : new Candidate(first, this.weightOf(first));
+        } else {
+            while (expanded < found.size()) {
+                this.expand(found.get(expanded));
+                expanded++;
+            }
+            path = candidates.poll();
+        }
+        if (path == null) {
+            return null;
+        }
+        seen.add(path);
+        found.add(path);
+        returned++;
+        return this.toGraphPath(path);
+    }
+
+    private void expand(Candidate previous) {
+        int[] prevEdges = previous.edges;
+        boolean[] maskedVertices = new boolean[vertices.size()];
+        int spurNode = sourceIdx;
+
+        for (int i = 0; i < prevEdges.length; i++) {
+            boolean[] maskedEdges = new boolean[edges.size()];
+            for (Candidate p : found) {
+                if (p.edges.length > i && samePrefix(prevEdges, p.edges, i)) {
+                    maskedEdges[p.edges[i]] = true;
+                }
+            }
+
+            int[] spur = this.boundedShortest(spurNode, maxLength - i, maskedVertices, maskedEdges);
+            if (spur != null) {
+                int[] total = Arrays.copyOf(prevEdges, i + spur.length);
+                System.arraycopy(spur, 0, total, i, spur.length);
+                Candidate candidate = new Candidate(total, this.weightOf(total));
+                if (!seen.contains(candidate)) {
+                    seen.add(candidate);
+                    candidates.add(candidate);
+                }
+            }
+            // the spur node becomes part of the root for the next deviation
+            maskedVertices[spurNode] = true;
+            spurNode = edgeTarget[prevEdges[i]];
+        }
+    }
+
+    /**
+     * Least-weight path from the given vertex to the sink using at most maxHops edges,
+     * computed by relaxing every edge once per hop (Bellman-Ford by hop count).
+     * <p>
+     * With zero-weight edges a least-weight walk could repeat a vertex. Rather than
+     * losing the spur path, any cycle is cut out of the walk, which (weights being
+     * non-negative) leaves a simple path of no more weight and fewer hops.
+     */
+    private int[] boundedShortest(int from, int maxHops, boolean[] maskedVertices, boolean[] maskedEdges) {
+        if (maxHops < 1) {
+            return null;
+        }
+        int n = vertices.size();
+        double[][] dist = new double[maxHops + 1][];
+        int[][] nextEdge = new int[maxHops + 1][];
+        dist[0] = new double[n];
+        nextEdge[0] = new int[n];
+        Arrays.fill(dist[0], Double.POSITIVE_INFINITY);
+        Arrays.fill(nextEdge[0], -1);
+        dist[0][sinkIdx] = 0;
+
+        int hops = maxHops;
+        for (int h = 1; h <= maxHops; h++) {
+            double[] prev = dist[h - 1];
+            double[] cur = Arrays.copyOf(prev, n);
+            int[] next = Arrays.copyOf(nextEdge[h - 1], n);
+            boolean changed = false;
+            for (int e = 0; e < edgeSource.length; e++) {
+                int u = edgeSource[e];
+                int w = edgeTarget[e];
+                if (maskedEdges[e] || maskedVertices[u] || maskedVertices[w]
+                        || prev[w] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double d = prev[w] + edgeWeight[e];
+                if (d < cur[u]) {
+                    cur[u] = d;
+                    next[u] = e;
+                    changed = true;
+                }
+            }
+            dist[h] = cur;
+            nextEdge[h] = next;
+            if (!changed) {
+                hops = h;
+                break;
+            }
+        }
+        if (dist[hops][from] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        List<Integer> path = new ArrayList<>();
+        // where each vertex on the path so far is left from, to cut out cycles
+        int[] leftAt = new int[n];
+        Arrays.fill(leftAt, -1);
+        int v = from;
+        int h = hops;
+        while (v != sinkIdx) {
+            int e = h < 1 ? -1 : nextEdge[h][v];
+            if (e < 0) {
+                return null;
+            }
+            if (leftAt[v] >= 0) {
+                // back at a vertex already on the path: drop the cycle
+                for (int i = path.size() - 1; i >= leftAt[v]; i--) {
+                    leftAt[edgeSource[path.get(i)]] = -1;
+                    path.remove(i);
+                }
+            }
+            leftAt[v] = path.size();
+            path.add(e);
+            v = edgeTarget[e];
+            h--;
+        }
+        int[] result = new int[path.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = path.get(i);
+        }
+        return result;
+    }
+
+    private double weightOf(int[] path) {
+        double weight = 0;
+        for (int e : path) {
+            weight += edgeWeight[e];
+        }
+        return weight;
+    }
+
+    private GraphPath<V, E> toGraphPath(Candidate candidate) {
+        List<V> vertexList = new ArrayList<>();
+        List<E> edgeList = new ArrayList<>();
+        vertexList.add(source);
+        for (int e : candidate.edges) {
+            edgeList.add(edges.get(e));
+            vertexList.add(vertices.get(edgeTarget[e]));
+        }
+        return new GraphWalk<>(graph, source, sink, vertexList, edgeList, candidate.weight);
+    }
+
+    private static boolean samePrefix(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final int[] edges;
+        private final double weight;
+
+        Candidate(int[] edges, double weight) {
+            this.edges = edges;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int byWeight = Double.compare(weight, o.weight);
+            if (byWeight != 0) {
+                return byWeight;
+            }
+            return Integer.compare(edges.length, o.edges.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Candidate && Arrays.equals(edges, ((Candidate) obj).edges);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.es.oscars.pce;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.resv.ent.EroHop;
+import net.es.oscars.resv.ent.VlanJunction;
+import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.topo.beans.CompactTopo;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.MultipointPceResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Connects several devices with an approximate least-cost Steiner tree, for multipoint
+ * (VPLS) connections.
+ * <p>
+ * Uses the shortest path heuristic: starting from the first device, repeatedly attach
+ * the device nearest to the tree so far, over links that can carry the branch bandwidth
+ * in both directions and aren't in the tree already. The result costs at most twice the
+ * optimum, and each step is a single multi-source search.
+ * <p>
+ * The tree is then cut into pipes at the requested devices and at any device where
+ * it branches; each of those gets a junction.
+ */
+@Slf4j
+@Component
+public class MultipointPCE {
+    @Autowired
+    private TopoService topoService;
+
+    public MultipointPceResponse calculateTree(List<String> deviceUrns,
+                                               Integer bandwidth,
+                                               Map<String, Integer> availIngressBw,
+                                               Map<String, Integer> availEgressBw,
+                                               Set<String> exclude) throws PCEException {
+        if (deviceUrns == null || new HashSet<>(deviceUrns).size() < 2) {
+            throw new PCEException("invalid multipoint request: need at least two distinct devices");
+        }
+        TopoSnapshot snapshot = PceLibrary.snapshot(topoService);
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        CompactTopo topo = snapshot.getCompact();
+
+        boolean[] terminals = new boolean[topo.getVertexCount()];
+        for (String urn : deviceUrns) {
+            terminals[topo.indexOf(PceLibrary.deviceUrn(baseline, urn).getUrn())] = true;
+        }
+
+        int[] ingress = topo.perVertex(availIngressBw);
+        int[] egress = topo.perVertex(availEgressBw);
+        int[] azCapacity = CompactPaths.capacities(topo, ingress, egress, true);
+        int[] zaCapacity = CompactPaths.capacities(topo, ingress, egress, false);
+        boolean[] edgeMask = new boolean[topo.getEdgeCount()];
+        for (int e = 0; e < edgeMask.length; e++) {
+            edgeMask[e] = azCapacity[e] < bandwidth || zaCapacity[e] < bandwidth;
+        }
+        boolean[] vertexMask = new boolean[topo.getVertexCount()];
+        if (exclude != null) {
+            for (String urn : exclude) {
+                int v = topo.indexOf(urn);
+                if (v >= 0 && !terminals[v]) {
+                    vertexMask[v] = true;
+                }
+            }
+        }
+
+        Instant start = Instant.now();
+        boolean[] inTree = new boolean[topo.getVertexCount()];
+        inTree[topo.indexOf(deviceUrns.get(0))] = true;
+        int remaining = new HashSet<>(deviceUrns).size() - 1;
+        List<int[]> branches = new ArrayList<>();
+        double cost = 0;
+        while (remaining > 0) {
+            int[] path = CompactPaths.nearestTarget(topo, inTree, terminals, topo.getMetrics(), vertexMask, edgeMask);
+            if (path == null) {
+                throw new PCEException("no multipoint tree can connect all devices with bandwidth " + bandwidth);
+            }
+            branches.add(path);
+            cost += CompactPaths.cost(path, topo.getMetrics());
+            for (int e : path) {
+                int z = topo.getTargets()[e];
+                inTree[z] = true;
+                // ports in the tree can't be passed through again
+                if (!topo.getDevices()[z]) {
+                    vertexMask[z] = true;
+                }
+            }
+            remaining--;
+        }
+        MultipointPceResponse response = this.toPipes(topo, branches, terminals, bandwidth);
+        response.setCost(cost);
+        log.info("multipoint tree for " + deviceUrns.size() + " devices with " + response.getPipes().size() +
+                " pipes found in time " + Duration.between(start, Instant.now()));
+        return response;
+    }
+
+    /**
+     * Cuts the tree into pipes between junctions: the requested devices and every device
+     * with three or more tree neighbors.
+     */
+    private MultipointPceResponse toPipes(CompactTopo topo, List<int[]> branches, boolean[] terminals, Integer bandwidth) {
+        int[] sources = topo.getSources();
+        int[] targets = topo.getTargets();
+        String[] urns = topo.getUrns();
+
+        // device-level hops: device, egress port, ingress port, next device; both ways
+        Map<Integer, List<int[]>> hops = new HashMap<>();
+        for (int[] path : branches) {
+            for (int i = 0; i + 2 < path.length; i += 3) {
+                int a = sources[path[i]];
+                int aPort = targets[path[i]];
+                int zPort = targets[path[i + 1]];
+                int z = targets[path[i + 2]];
+                hops.computeIfAbsent(a, k -> new ArrayList<>()).add(new int[]{a, aPort, zPort, z});
+                hops.computeIfAbsent(z, k -> new ArrayList<>()).add(new int[]{z, zPort, aPort, a});
+            }
+        }
+
+        Map<Integer, VlanJunction> junctions = new TreeMap<>();
+        for (Integer device : hops.keySet()) {
+            if (terminals[device] || hops.get(device).size() > 2) {
+                junctions.put(device, VlanJunction.builder()
+                        .refId(urns[device])
+                        .deviceUrn(urns[device])
+                        .build());
+            }
+        }
+
+        List<VlanPipe> pipes = new ArrayList<>();
+        Set<String> walked = new HashSet<>();
+        for (Integer junction : junctions.keySet()) {
+            for (int[] hop : hops.get(junction)) {
+                if (walked.contains(hop[1] + " " + hop[2])) {
+                    continue;
+                }
+                List<EroHop> azEro = new ArrayList<>();
+                azEro.add(EroHop.builder().urn(urns[junction]).build());
+                int[] current = hop;
+                while (true) {
+                    walked.add(current[1] + " " + current[2]);
+                    walked.add(current[2] + " " + current[1]);
+                    azEro.add(EroHop.builder().urn(urns[current[1]]).build());
+                    azEro.add(EroHop.builder().urn(urns[current[2]]).build());
+                    azEro.add(EroHop.builder().urn(urns[current[3]]).build());
+                    if (junctions.containsKey(current[3])) {
+                        break;
+                    }
+                    // a device in the middle of a pipe has exactly two tree neighbors
+                    for (int[] next : hops.get(current[3])) {
+                        if (next[1] != current[2]) {
+                            current = next;
+                            break;
+                        }
+                    }
+                }
+                List<EroHop> zaEro = new ArrayList<>();
+                for (EroHop h : azEro) {
+                    zaEro.add(EroHop.builder().urn(h.getUrn()).build());
+                }
+                Collections.reverse(zaEro);
+                pipes.add(VlanPipe.builder()
+                        .a(junctions.get(junction))
+                        .z(junctions.get(current[3]))
+                        .protect(false)
+                        .azBandwidth(bandwidth)
+                        .zaBandwidth(bandwidth)
+                        .azERO(azEro)
+                        .zaERO(zaEro)
+                        .build());
+            }
+        }
+
+        return MultipointPceResponse.builder()
+                .junctions(new ArrayList<>(junctions.values()))
+                .pipes(pipes)
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package net.es.oscars.pce;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.beans.TopoVersionChanged;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.AllDirectedPaths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Enumerated paths between two devices, shared by all PCE callers.
+ * <p>
+ * Entries are keyed by the topology version so a lookup can never return paths from an
+ * older topology; the cache is also emptied whenever TopoService publishes a new version.
+ * The cache is bounded by the total number of edges in the cached paths. Concurrent
+ * lookups of the same key wait for a single computation instead of each running one.
+ */
+@Slf4j
+@Component
+public class PathCache {
+    @Value("${pce.paths-cache-max-edges:2000000}")
+    private Long maxEdges;
+
+    private Cache<PathKey, List<GraphPath<TopoUrn, TopoAdjcy>>> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxEdges)
+                .weigher((PathKey key, List<GraphPath<TopoUrn, TopoAdjcy>> paths) -> {
+                    int edges = 1;
+                    for (GraphPath<TopoUrn, TopoAdjcy> path : paths) {
+                        edges += path.getLength();
+                    }
+                    return edges;
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return all loopless paths from src to dst of at most maxLength edges, over the
+     * snapshot's metric graph; the list must not be modified
+     */
+    public List<GraphPath<TopoUrn, TopoAdjcy>> paths(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst, Integer maxLength)
+            throws PCEException {
+        PathKey key = new PathKey(src.getUrn(), dst.getUrn(), maxLength, snapshot.getVersion().getId());
+        try {
+            return cache.get(key, () -> {
+                Instant ps = Instant.now();
+                AllDirectedPaths<TopoUrn, TopoAdjcy> ap = new AllDirectedPaths<>(snapshot.getByMetricGraph());
+                List<GraphPath<TopoUrn, TopoAdjcy>> paths = ap.getAllPaths(src, dst, true, maxLength);
+                Instant pe = Instant.now();
+                log.info(paths.size() + " distinct paths found between " + src.getUrn() +
+                        " and " + dst.getUrn() + " found in time " + Duration.between(ps, pe));
+                return Collections.unmodifiableList(paths);
+            });
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            throw new PCEException("path enumeration failed: " + ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * @return the paths if they have been enumerated already, otherwise null
+     */
+    public List<GraphPath<TopoUrn, TopoAdjcy>> cached(TopoSnapshot snapshot, TopoUrn src, TopoUrn dst, Integer maxLength) {
+        return cache.getIfPresent(new PathKey(src.getUrn(), dst.getUrn(), maxLength, snapshot.getVersion().getId()));
+    }
+
+    public void invalidate() {
+        log.info("invalidating path cache; " + this.stats());
+        cache.invalidateAll();
+    }
+
+    @EventListener
+    public void onTopoVersionChanged(TopoVersionChanged event) {
+        this.invalidate();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @Data
+    private static class PathKey {
+        private final String src;
+        private final String dst;
+        private final Integer maxLength;
+        private final Long version;
+    }
+}
@@ -0,0 +1,129 @@
+package net.es.oscars.pce;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.es.oscars.web.beans.PcePath;
+import net.es.oscars.web.beans.PceUpdate;
+import net.es.oscars.web.beans.PceUpdateType;
+
+/**
+ * Keeps the best candidate paths seen so far while paths are being evaluated.
+ * <p>
+ * To get the widest paths, check for larger bandwidth; if bandwidth is equal,
+ * then lowest cost; if that is equal too, least hops.
+ * <p>
+ * The listener, if any, is told every time one of the best paths changes.
+ */
+@Getter
+public class PathEvaluation {
+    private final Integer azBandwidth;
+    private final Integer zaBandwidth;
+
+    private PcePath widestAZ = null;
+    private PcePath widestSum = null;
+    private PcePath widestZA = null;
+    private PcePath fits = null;
+    private int evaluated = 0;
+    // evaluated paths without enough bandwidth for the request
+    private int rejected = 0;
+
+    @Getter(AccessLevel.NONE)
+    private final PceListener listener;
+
+    public PathEvaluation(Integer azBandwidth, Integer zaBandwidth) {
+        this(azBandwidth, zaBandwidth, PceListener.NONE);
+    }
+
+    public PathEvaluation(Integer azBandwidth, Integer zaBandwidth, PceListener listener) {
+        this.azBandwidth = azBandwidth;
+        this.zaBandwidth = zaBandwidth;
+        this.listener = listener;
+    }
+
+    public void consider(PcePath pcePath) {
+        PcePath prevFits = fits;
+        PcePath prevSum = widestSum;
+        PcePath prevAZ = widestAZ;
+        PcePath prevZA = widestZA;
+        this.compare(pcePath);
+        if (listener != PceListener.NONE) {
+            this.report(PceUpdateType.FITS, prevFits, fits);
+            this.report(PceUpdateType.WIDEST_SUM, prevSum, widestSum);
+            this.report(PceUpdateType.WIDEST_AZ, prevAZ, widestAZ);
+            this.report(PceUpdateType.WIDEST_ZA, prevZA, widestZA);
+        }
+    }
+
+    private void report(PceUpdateType type, PcePath before, PcePath after) {
+        if (after != before) {
+            listener.update(PceUpdate.builder().type(type).evaluated(evaluated).path(after).build());
+        }
+    }
+
+    private void compare(PcePath pcePath) {
+        evaluated++;
+        // path that fits:
+        if (pcePath.getAzAvailable() >= azBandwidth && pcePath.getZaAvailable() >= zaBandwidth) {
+            // accept first path that matches; otherwise prefer the least-cost one
+            if (fits == null) {
+                fits = pcePath;
+            } else {
+                fits = preferredOf(fits, pcePath);
+            }
+        } else {
+            rejected++;
+        }
+
+        // first path is best by default
+        if (widestAZ == null) {
+            widestAZ = pcePath;
+            widestSum = pcePath;
+            widestZA = pcePath;
+            return;
+        }
+
+        if (widestAZ.getAzAvailable() < pcePath.getAzAvailable()) {
+            widestAZ = pcePath;
+        } else if (widestAZ.getAzAvailable().equals(pcePath.getAzAvailable())) {
+            widestAZ = preferredOf(widestAZ, pcePath);
+        }
+        if (widestZA.getZaAvailable() < pcePath.getZaAvailable()) {
+            widestZA = pcePath;
+        } else if (widestZA.getZaAvailable().equals(pcePath.getZaAvailable())) {
+            widestZA = preferredOf(widestZA, pcePath);
+        }
+
+        Integer prevSum = widestSum.getAzAvailable() + widestSum.getZaAvailable();
+        Integer newSum = pcePath.getAzAvailable() + pcePath.getZaAvailable();
+        if (prevSum < newSum) {
+            widestSum = pcePath;
+        } else if (prevSum.equals(newSum)) {
+            widestSum = preferredOf(widestSum, pcePath);
+        }
+    }
+
+    /**
+     * When paths are considered in order of increasing cost, nothing seen later can
+     * displace the current answers once there is a path that fits and the widest paths
+     * have reached the given upper bounds.
+     */
+    public boolean isSettled(Integer azBound, Integer zaBound) {
+        if (fits == null || widestAZ == null) {
+            return false;
+        }
+        return widestAZ.getAzAvailable() >= azBound
+                && widestZA.getZaAvailable() >= zaBound
+                && widestSum.getAzAvailable() + widestSum.getZaAvailable() >= azBound + zaBound;
+    }
+
+    public static PcePath preferredOf(PcePath a, PcePath b) {
+        if (a.getCost() < b.getCost()) {
+            return a;
+        } else if (a.getCost() == b.getCost()) {
+            if (a.getAzEro().size() < b.getAzEro().size()) {
+                return a;
+            }
+        }
+        return b;
+    }
+}
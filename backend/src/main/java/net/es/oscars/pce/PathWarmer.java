@@ -0,0 +1,145 @@
+package net.es.oscars.pce;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.pce.db.HotPairRepository;
+import net.es.oscars.pce.ent.HotPair;
+import net.es.oscars.topo.beans.TopoLoaded;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.enums.UrnType;
+import net.es.oscars.topo.svc.TopoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the device pairs paths are most often requested for, and enumerates
+ * their paths into the PathCache in the background whenever a new topology version is
+ * loaded, so the first requests after a reload don't pay for it.
+ * <p>
+ * Requests are counted in memory and saved to the database periodically, so the hot
+ * pairs survive a restart; the topology load at startup warms them too.
+ */
+@Slf4j
+@Component
+public class PathWarmer {
+    @Autowired
+    private HotPairRepository hotPairRepo;
+
+    @Autowired
+    private TopoService topoService;
+
+    @Autowired
+    private AllPathsPCE allPathsPCE;
+
+    @Autowired
+    private PathCache pathCache;
+
+    @Value("${pce.engine:ALL_PATHS}")
+    private PceEngine engine;
+
+    @Value("${pce.warm-pairs:50}")
+    private Integer warmPairs;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "path-warmer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // requests not saved yet
+    private final Map<PairKey, AtomicLong> unsaved = new ConcurrentHashMap<>();
+
+    public void record(String src, String dst) {
+        unsaved.computeIfAbsent(new PairKey(src, dst), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Adds the requests counted since the last save to the database.
+     */
+    public synchronized void save() {
+        Instant now = Instant.now();
+        unsaved.forEach((key, counter) -> {
+            long count = counter.getAndSet(0);
+            if (count == 0) {
+                return;
+            }
+            HotPair hotPair = hotPairRepo.findBySrcAndDst(key.getSrc(), key.getDst())
+                    .orElse(HotPair.builder()
+                            .src(key.getSrc())
+                            .dst(key.getDst())
+                            .requests(0L)
+                            .lastRequested(now)
+                            .build());
+            hotPair.setRequests(hotPair.getRequests() + count);
+            hotPair.setLastRequested(now);
+            hotPairRepo.save(hotPair);
+        });
+    }
+
+    @EventListener
+    public void onTopoLoaded(TopoLoaded event) {
+        this.warm(event.getSnapshot());
+    }
+
+    /**
+     * Enumerates the paths of the most requested pairs into the path cache, on a
+     * low-priority thread. Stops early if the topology changes again meanwhile.
+     *
+     * @return the number of pairs warmed
+     */
+    public CompletableFuture<Integer> warm(TopoSnapshot snapshot) {
+        if (!engine.equals(PceEngine.ALL_PATHS)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        this.save();
+        List<HotPair> hotPairs = hotPairRepo.findByOrderByRequestsDesc(PageRequest.of(0, warmPairs));
+
+        return CompletableFuture.supplyAsync(() -> {
+            Instant start = Instant.now();
+            int warmed = 0;
+            for (HotPair hotPair : hotPairs) {
+                if (topoService.getSnapshot() != snapshot) {
+                    log.info("topology changed; stopped warming paths after " + warmed + " pairs");
+                    break;
+                }
+                TopoUrn src = snapshot.getTopoUrnMap().get(hotPair.getSrc());
+                TopoUrn dst = snapshot.getTopoUrnMap().get(hotPair.getDst());
+                if (src == null || dst == null ||
+                        !src.getUrnType().equals(UrnType.DEVICE) || !dst.getUrnType().equals(UrnType.DEVICE)) {
+                    continue;
+                }
+                try {
+                    pathCache.paths(snapshot, src, dst, allPathsPCE.maxLength(snapshot, src, dst));
+                    warmed++;
+                } catch (PCEException ex) {
+                    log.info("could not warm paths between " + src.getUrn() + " and " + dst.getUrn() + ": " + ex.getMessage());
+                }
+            }
+            log.info("warmed paths for " + warmed + " of " + hotPairs.size() + " hot pairs in " +
+                    Duration.between(start, Instant.now()));
+            return warmed;
+        }, executor);
+    }
+
+    @Data
+    private static class PairKey {
+        private final String src;
+        private final String dst;
+    }
+}
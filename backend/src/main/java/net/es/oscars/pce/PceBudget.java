@@ -0,0 +1,69 @@
+package net.es.oscars.pce;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Limits how long one path request may spend evaluating candidate paths, and how many
+ * it may evaluate. A PCE that runs out returns the best paths it has found so far.
+ * <p>
+ * Not thread-safe; make one per request and start() it when the search begins.
+ */
+public class PceBudget {
+    // null means no limit
+    private final Duration maxTime;
+    private final Integer maxPaths;
+
+    private Instant deadline;
+    private int spent = 0;
+    @Getter
+    private boolean exhausted = false;
+
+    private PceBudget(Duration maxTime, Integer maxPaths) {
+        this.maxTime = maxTime;
+        this.maxPaths = maxPaths;
+    }
+
+    public static PceBudget unlimited() {
+        return new PceBudget(null, null);
+    }
+
+    /**
+     * @param maxMillis time limit; null or 0 for none
+     * @param maxPaths  path limit; null or 0 for none
+     */
+    public static PceBudget of(Long maxMillis, Integer maxPaths) {
+        return new PceBudget(maxMillis == null || maxMillis <= 0 ? null : Duration.ofMillis(maxMillis),
+                maxPaths == null || maxPaths <= 0 ? null : maxPaths);
+    }
+
+    public void start() {
+        deadline = maxTime == null ? null : Instant.now().plus(maxTime);
+    }
+
+    /**
+     * Spends one path.
+     *
+     * @return false once the budget has run out; the path should then not be used
+     */
+    public boolean spend() {
+        if (this.expired() || (maxPaths != null && spent >= maxPaths)) {
+            exhausted = true;
+            return false;
+        }
+        spent++;
+        return true;
+    }
+
+    /**
+     * @return true once the time limit has passed
+     */
+    public boolean expired() {
+        if (!exhausted && deadline != null && Instant.now().isAfter(deadline)) {
+            exhausted = true;
+        }
+        return exhausted;
+    }
+}
@@ -0,0 +1,10 @@
+package net.es.oscars.pce;
+
+public enum PceCaller {
+    // the web UI and REST API clients
+    UI,
+    // NSI reserve requests
+    NSI,
+    // SENSE model deltas
+    SENSE
+}
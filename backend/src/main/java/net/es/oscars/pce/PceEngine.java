@@ -0,0 +1,10 @@
+package net.es.oscars.pce;
+
+public enum PceEngine {
+    // enumerate every simple path up to the detour length, then evaluate them all
+    ALL_PATHS,
+    // lazily enumerate paths in order of increasing metric cost, stop once the answers are settled
+    K_SHORTEST,
+    // prune by bandwidth and search for widest / fitting paths directly, no enumeration
+    BANDWIDTH_AWARE
+}
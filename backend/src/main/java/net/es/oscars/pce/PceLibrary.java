@@ -6,28 +6,25 @@ import net.es.oscars.resv.ent.EroHop;
 import net.es.oscars.resv.enums.BwDirection;
 import net.es.oscars.resv.svc.ResvLibrary;
 import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoSnapshot;
 import net.es.oscars.topo.beans.TopoUrn;
 import net.es.oscars.topo.enums.UrnType;
+import net.es.oscars.topo.svc.TopoService;
 import net.es.oscars.web.beans.PcePath;
 import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.GraphMeasurer;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @Slf4j
 public class PceLibrary {
 
-    public static Double diameter = null;
-
-    public static void calculateDiameter(List<TopoAdjcy> adjcies, Map<TopoAdjcy, Double> weights) {
-        DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> byHopsGraph = PceLibrary.makeGraph(adjcies, weights);
-        GraphMeasurer<TopoUrn, TopoAdjcy> gm = new GraphMeasurer<>(byHopsGraph);
-        PceLibrary.diameter = gm.getDiameter();
-
+    public static TopoSnapshot snapshot(TopoService topoService) throws PCEException {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        if (snapshot == null) {
+            throw new PCEException("topology not loaded yet");
+        }
+        return snapshot;
     }
 
 
@@ -52,6 +49,17 @@ public class PceLibrary {
 
     }
 
+    public static TopoUrn deviceUrn(Map<String, TopoUrn> urnMap, String urn) throws PCEException {
+        TopoUrn topoUrn = urnMap.get(urn);
+        if (topoUrn == null) {
+            throw new PCEException(urn + " not found in topology");
+        }
+        if (!topoUrn.getUrnType().equals(UrnType.DEVICE)) {
+            throw new PCEException(urn + " must point to a DEVICE but is " + topoUrn.getUrnType());
+        }
+        return topoUrn;
+    }
+
     public static void pathCost(PcePath pcePath, GraphPath<TopoUrn, TopoAdjcy> path, Map<TopoAdjcy, Double> costs) {
         Double cost = 0D;
         for (TopoAdjcy ta : path.getEdgeList()) {
@@ -71,6 +79,19 @@ public class PceLibrary {
         Map<String, Integer> baselineEgressBw = ResvLibrary
                 .availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
 
+        pathBandwidths(pcePath, baselineIngressBw, baselineEgressBw, availIngressBw, availEgressBw);
+    }
+
+    /**
+     * Sets the baseline and available bandwidth of a path in both directions from
+     * precomputed per-port maps; this only looks at the hops of the path.
+     */
+    public static void pathBandwidths(PcePath pcePath,
+                                      Map<String, Integer> baselineIngressBw,
+                                      Map<String, Integer> baselineEgressBw,
+                                      Map<String, Integer> availIngressBw,
+                                      Map<String, Integer> availEgressBw) throws PCEException {
+
         if (baselineEgressBw == null || baselineIngressBw == null) {
             String error = "";
             if (baselineIngressBw == null) {
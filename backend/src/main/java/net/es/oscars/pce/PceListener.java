@@ -0,0 +1,14 @@
+package net.es.oscars.pce;
+
+import net.es.oscars.web.beans.PceUpdate;
+
+/**
+ * Receives the candidate paths of a path request as they are found, before the whole
+ * PceResponse is ready. Called on the thread doing the computation.
+ */
+public interface PceListener {
+    PceListener NONE = update -> {
+    };
+
+    void update(PceUpdate update);
+}
@@ -1,16 +1,30 @@
 package net.es.oscars.pce;
 
+import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.resv.beans.PeriodBandwidth;
 import net.es.oscars.resv.ent.VlanJunction;
 import net.es.oscars.resv.ent.VlanPipe;
 import net.es.oscars.resv.svc.ResvService;
-import net.es.oscars.web.beans.PceRequest;
-import net.es.oscars.web.beans.PceResponse;
+import net.es.oscars.web.beans.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 public class PceService {
     @Autowired
@@ -20,8 +34,200 @@ public class PceService {
     @Autowired
     private AllPathsPCE allPathsPCE;
 
+    @Autowired
+    private BandwidthAwarePCE bandwidthAwarePCE;
+
+    @Autowired
+    private DisjointPCE disjointPCE;
+
+    @Autowired
+    private MultipointPCE multipointPCE;
+
+    @Autowired
+    private SchedulePCE schedulePCE;
+
+    @Autowired
+    private PathWarmer pathWarmer;
+
+    @Autowired
+    private PceStats pceStats;
+
+    @Value("${pce.engine:ALL_PATHS}")
+    private PceEngine engine;
+
+
+    @Value("${pce.batch-parallelism:0}")
+    private Integer batchParallelism;
+
+    @Value("${pce.budget.ui-millis:0}")
+    private Long uiMillis;
+    @Value("${pce.budget.ui-paths:0}")
+    private Integer uiPaths;
+    @Value("${pce.budget.nsi-millis:0}")
+    private Long nsiMillis;
+    @Value("${pce.budget.nsi-paths:0}")
+    private Integer nsiPaths;
+    @Value("${pce.budget.sense-millis:0}")
+    private Long senseMillis;
+    @Value("${pce.budget.sense-paths:0}")
+    private Integer sensePaths;
+
+    private ForkJoinPool batchPool;
+
+    private final ExecutorService streamPool = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "pce-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        int parallelism = batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors();
+        batchPool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchPool.shutdown();
+        streamPool.shutdown();
+    }
 
     public PceResponse calculatePaths(PceRequest request) throws PCEException {
+        return this.calculatePaths(request, PceCaller.UI);
+    }
+
+    /**
+     * Computes paths within the caller's budget; see PceBudget.
+     */
+    public PceResponse calculatePaths(PceRequest request, PceCaller caller) throws PCEException {
+        Map<String, Integer> availIngressBw = resvService.availableIngBws(request.getInterval());
+        Map<String, Integer> availEgressBw = resvService.availableEgBws(request.getInterval());
+
+        return this.calculatePaths(this.pairOf(request), availIngressBw, availEgressBw, caller, PceListener.NONE);
+    }
+
+    /**
+     * Computes paths in the background, telling the listener about candidate paths as
+     * they are found. Availability is looked up before returning, on the caller's thread
+     * and in its transaction.
+     *
+     * @return the complete response, once the computation is done
+     */
+    public CompletableFuture<PceResponse> streamPaths(PceRequest request, PceListener listener) {
+        Map<String, Integer> availIngressBw = resvService.availableIngBws(request.getInterval());
+        Map<String, Integer> availEgressBw = resvService.availableEgBws(request.getInterval());
+        PcePair pair = this.pairOf(request);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.calculatePaths(pair, availIngressBw, availEgressBw, PceCaller.UI, listener);
+            } catch (PCEException ex) {
+                throw new CompletionException(ex);
+            }
+        }, streamPool);
+    }
+
+    /**
+     * Computes paths for many pairs over one interval: availability is looked up once
+     * and the pairs are computed in parallel. A pair that fails gets an error result
+     * instead of failing the whole batch.
+     */
+    public PceBatchResponse calculatePaths(PceBatchRequest request) throws PCEException {
+        if (request.getPairs() == null || request.getPairs().isEmpty()) {
+            throw new PCEException("invalid batch path request: no pairs");
+        }
+        Map<String, Integer> availIngressBw = Collections.unmodifiableMap(resvService.availableIngBws(request.getInterval()));
+        Map<String, Integer> availEgressBw = Collections.unmodifiableMap(resvService.availableEgBws(request.getInterval()));
+
+        Instant start = Instant.now();
+        List<PceBatchResult> results;
+        try {
+            results = batchPool.submit(() -> request.getPairs().parallelStream()
+                    .map(pair -> {
+                        try {
+                            PceResponse response = this.calculatePaths(pair, availIngressBw, availEgressBw,
+                                    PceCaller.UI, PceListener.NONE);
+                            return PceBatchResult.builder().pair(pair).response(response).build();
+                        } catch (PCEException ex) {
+                            return PceBatchResult.builder().pair(pair).error(ex.getMessage()).build();
+                        }
+                    })
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new PCEException("batch path computation failed: " + ex.getMessage());
+        }
+        log.info("batch of " + results.size() + " path requests computed in " + Duration.between(start, Instant.now()));
+
+        return PceBatchResponse.builder().results(results).build();
+    }
+
+    public MultipointPceResponse calculateTree(MultipointPceRequest request) throws PCEException {
+        Map<String, Integer> availIngressBw = resvService.availableIngBws(request.getInterval());
+        Map<String, Integer> availEgressBw = resvService.availableEgBws(request.getInterval());
+        return multipointPCE.calculateTree(request.getDevices(), request.getBandwidth(),
+                availIngressBw, availEgressBw, request.getExclude());
+    }
+
+    /**
+     * Finds the earliest intervals within the request window where a connection of the
+     * requested duration has a path. Reservations are looked up once, for the whole window.
+     */
+    public PceScheduleResponse calculateSchedule(PceScheduleRequest request) throws PCEException {
+        if (request.getA() == null || request.getA().equals(request.getZ())) {
+            throw new PCEException("invalid schedule request: A is the same as Z "+request.getA());
+        }
+        if (request.getWindow() == null || request.getDuration() == null) {
+            throw new PCEException("invalid schedule request: no window or duration");
+        }
+        VlanPipe bwPipe = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(request.getA()).deviceUrn(request.getA()).build())
+                .z(VlanJunction.builder().refId(request.getZ()).deviceUrn(request.getZ()).build())
+                .protect(false)
+                .azBandwidth(request.getAzBw())
+                .zaBandwidth(request.getZaBw()).build();
+        int maxResults = request.getMaxResults() == null ? 1 : request.getMaxResults();
+
+        Map<String, List<PeriodBandwidth>> reservedIngBws = resvService.reservedIngBws(request.getWindow(), null);
+        Map<String, List<PeriodBandwidth>> reservedEgBws = resvService.reservedEgBws(request.getWindow(), null);
+
+        return schedulePCE.earliest(bwPipe, request.getWindow(), Duration.ofSeconds(request.getDuration()), maxResults,
+                reservedIngBws, reservedEgBws, request.getExclude());
+    }
+
+    public PceStatsSummary stats() {
+        return pceStats.summary();
+    }
+
+    public PceBudget budgetFor(PceCaller caller) {
+        switch (caller) {
+            case NSI:
+                return PceBudget.of(nsiMillis, nsiPaths);
+            case SENSE:
+                return PceBudget.of(senseMillis, sensePaths);
+            default:
+                return PceBudget.of(uiMillis, uiPaths);
+        }
+    }
+
+    private PcePair pairOf(PceRequest request) {
+        return PcePair.builder()
+                .a(request.getA())
+                .z(request.getZ())
+                .azBw(request.getAzBw())
+                .zaBw(request.getZaBw())
+                .include(request.getInclude())
+                .exclude(request.getExclude())
+                .protect(request.getProtect())
+                .disjointness(request.getDisjointness())
+                .explain(request.getExplain())
+                .build();
+    }
+
+    private PceResponse calculatePaths(PcePair request,
+                                       Map<String, Integer> availIngressBw,
+                                       Map<String, Integer> availEgressBw,
+                                       PceCaller caller,
+                                       PceListener listener) throws PCEException {
         if (request.getA().equals(request.getZ())) {
             throw new PCEException("invalid path request: A is the same as Z "+request.getA());
         }
@@ -38,22 +244,61 @@ public class PceService {
         VlanPipe bwPipe = VlanPipe.builder()
                 .a(aj)
                 .z(zj)
-                .protect(false)
+                .protect(request.getProtect() != null && request.getProtect())
                 .azBandwidth(request.getAzBw())
                 .zaBandwidth(request.getZaBw()).build();
 
 
-
-        Map<String, Integer> availIngressBw = resvService.availableIngBws(request.getInterval());
-        Map<String, Integer> availEgressBw = resvService.availableEgBws(request.getInterval());
-
         // at this point we know:
         // - the baseline topology
         // - the currently available topology
         // - the max available bandwidth anywhere on the network
 
 
-        return allPathsPCE.calculatePaths(bwPipe, availIngressBw, availEgressBw, request.getInclude(), request.getExclude());
+        // the bandwidth-aware searches can't honor an ordered include list; enumerate instead
+        boolean hasInclude = request.getInclude() != null && !request.getInclude().isEmpty();
+        boolean hasExclude = request.getExclude() != null && !request.getExclude().isEmpty();
+        if (!hasInclude && !hasExclude) {
+            // only unconstrained enumerations are cached
+            pathWarmer.record(request.getA(), request.getZ());
+        }
+        PceResponse response;
+        if (engine.equals(PceEngine.BANDWIDTH_AWARE) && !hasInclude) {
+            response = bandwidthAwarePCE.calculatePaths(bwPipe, availIngressBw, availEgressBw,
+                    request.getExclude(), this.budgetFor(caller));
+            // nothing to report until the searches are all done
+            this.report(listener, PceUpdateType.SHORTEST, response, response.getShortest());
+            this.report(listener, PceUpdateType.LEAST_HOPS, response, response.getLeastHops());
+            this.report(listener, PceUpdateType.FITS, response, response.getFits());
+            this.report(listener, PceUpdateType.WIDEST_SUM, response, response.getWidestSum());
+            this.report(listener, PceUpdateType.WIDEST_AZ, response, response.getWidestAZ());
+            this.report(listener, PceUpdateType.WIDEST_ZA, response, response.getWidestZA());
+        } else {
+            response = allPathsPCE.calculatePaths(bwPipe, availIngressBw, availEgressBw,
+                    request.getInclude(), request.getExclude(), this.budgetFor(caller), listener);
+        }
+
+        if (request.getExplain() == null || !request.getExplain()) {
+            response.setExplanation(null);
+        }
+
+        if (request.getProtect() != null && request.getProtect()) {
+            Disjointness disjointness = request.getDisjointness() == null ? Disjointness.LINK : request.getDisjointness();
+            List<PcePath> pair = disjointPCE.calculatePair(bwPipe, availIngressBw, availEgressBw, disjointness, request.getExclude());
+            if (!pair.isEmpty()) {
+                response.setPrimary(pair.get(0));
+                response.setProtect(pair.get(1));
+                this.report(listener, PceUpdateType.PRIMARY, response, pair.get(0));
+                this.report(listener, PceUpdateType.PROTECT, response, pair.get(1));
+            }
+        }
+        return response;
+    }
+
+    private void report(PceListener listener, PceUpdateType type, PceResponse response, PcePath path) {
+        if (path != null) {
+            listener.update(PceUpdate.builder().type(type).evaluated(response.getConsidered()).path(path).build());
+        }
     }
 
 
@@ -0,0 +1,68 @@
+package net.es.oscars.pce;
+
+import net.es.oscars.web.beans.PceExplanation;
+import net.es.oscars.web.beans.PcePhase;
+import net.es.oscars.web.beans.PceStatsSummary;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the PceExplanation of every AllPathsPCE and BandwidthAwarePCE
+ * request since startup.
+ * <p>
+ * Cache hits are counted per request that went to the path cache, rather than taken
+ * from the cache's own statistics, which include lookups by the PathWarmer.
+ */
+@Component
+public class PceStats {
+    private final LongAdder requests = new LongAdder();
+    private final Map<PcePhase, DoubleAdder> phaseMillis = new ConcurrentHashMap<>();
+    private final LongAdder enumerated = new LongAdder();
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder prunedByConstraints = new LongAdder();
+    private final LongAdder rejectedForBandwidth = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public void record(PceExplanation explanation) {
+        requests.increment();
+        explanation.getPhaseMillis().forEach((phase, millis) ->
+                phaseMillis.computeIfAbsent(phase, p -> new DoubleAdder()).add(millis));
+        if (explanation.getEnumerated() != null) {
+            enumerated.add(explanation.getEnumerated());
+        }
+        evaluated.add(explanation.getEvaluated());
+        prunedByConstraints.add(explanation.getPrunedByConstraints());
+        rejectedForBandwidth.add(explanation.getRejectedForBandwidth());
+        if (explanation.getCacheHit() != null) {
+            if (explanation.getCacheHit()) {
+                cacheHits.increment();
+            } else {
+                cacheMisses.increment();
+            }
+        }
+    }
+
+    public PceStatsSummary summary() {
+        Map<PcePhase, Double> millis = new EnumMap<>(PcePhase.class);
+        phaseMillis.forEach((phase, total) -> millis.put(phase, total.sum()));
+        long hits = cacheHits.sum();
+        long misses = cacheMisses.sum();
+        return PceStatsSummary.builder()
+                .requests(requests.sum())
+                .phaseMillis(millis)
+                .enumerated(enumerated.sum())
+                .evaluated(evaluated.sum())
+                .prunedByConstraints(prunedByConstraints.sum())
+                .rejectedForBandwidth(rejectedForBandwidth.sum())
+                .cacheHits(hits)
+                .cacheMisses(misses)
+                .cacheHitRatio(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses))
+                .build();
+    }
+}
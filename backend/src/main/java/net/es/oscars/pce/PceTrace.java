@@ -0,0 +1,64 @@
+package net.es.oscars.pce;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.es.oscars.web.beans.PceExplanation;
+import net.es.oscars.web.beans.PcePhase;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects the per-phase timings and counters of one path request, for a
+ * PceExplanation. Time is charged to a phase when it is marked, so everything since
+ * the previous mark counts towards it; the phases add up to the time from creation
+ * to the last mark.
+ * <p>
+ * Not thread-safe; make one per request.
+ */
+public class PceTrace {
+    private final Map<PcePhase, Long> nanos = new EnumMap<>(PcePhase.class);
+    private final long start = System.nanoTime();
+    private long last = start;
+
+    @Getter
+    private long pruned = 0;
+
+    @Setter
+    private Integer shortestLength;
+    @Setter
+    private Integer maxLength;
+    @Setter
+    private Boolean longPath;
+    @Setter
+    private Integer enumerated;
+    @Setter
+    private Boolean cacheHit;
+
+    public void mark(PcePhase phase) {
+        long now = System.nanoTime();
+        nanos.merge(phase, now - last, Long::sum);
+        last = now;
+    }
+
+    public void pruned() {
+        pruned++;
+    }
+
+    public PceExplanation explain(PathEvaluation evaluation) {
+        Map<PcePhase, Double> phaseMillis = new EnumMap<>(PcePhase.class);
+        nanos.forEach((phase, n) -> phaseMillis.put(phase, n / 1e6));
+        return PceExplanation.builder()
+                .phaseMillis(phaseMillis)
+                .totalMillis((last - start) / 1e6)
+                .shortestLength(shortestLength)
+                .maxLength(maxLength)
+                .longPath(longPath)
+                .enumerated(enumerated)
+                .evaluated(evaluation.getEvaluated())
+                .prunedByConstraints(pruned)
+                .rejectedForBandwidth(evaluation.getRejected())
+                .cacheHit(cacheHit)
+                .build();
+    }
+}
@@ -0,0 +1,278 @@
+package net.es.oscars.pce;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
+import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.topo.beans.CompactTopo;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.Interval;
+import net.es.oscars.web.beans.PcePath;
+import net.es.oscars.web.beans.PceScheduleOption;
+import net.es.oscars.web.beans.PceScheduleResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Finds the earliest start times within a window at which a connection of a given
+ * duration and bandwidth has a path.
+ * <p>
+ * Schedules conflict when they overlap or touch, so besides the start of the window the
+ * only start times worth trying are one second after some reservation ends: between two
+ * of those, sliding the interval later can only add conflicting reservations.
+ * <p>
+ * The candidate start times are swept in order. Reservations enter the sweep when they
+ * begin before the candidate interval ends and leave once they end before it starts;
+ * each port keeps a segment tree over its reservations' begin / end instants, so its
+ * peak reserved bandwidth is updated in O(log n) per event instead of recomputed for
+ * every candidate. A path search only runs when some port gained bandwidth since the
+ * last candidate that failed.
+ */
+@Slf4j
+@Component
+public class SchedulePCE {
+    @Autowired
+    private TopoService topoService;
+
+    public PceScheduleResponse earliest(VlanPipe requestPipe,
+                                        Interval window,
+                                        Duration duration,
+                                        int maxResults,
+                                        Map<String, List<PeriodBandwidth>> reservedIngBws,
+                                        Map<String, List<PeriodBandwidth>> reservedEgBws,
+                                        Set<String> exclude) throws PCEException {
+        if (window == null || window.getBeginning() == null || window.getEnding() == null) {
+            throw new PCEException("invalid schedule request: no window");
+        }
+        if (duration == null || duration.isNegative() || duration.isZero()) {
+            throw new PCEException("invalid schedule request: duration must be positive");
+        }
+        if (window.getBeginning().plus(duration).isAfter(window.getEnding())) {
+            throw new PCEException("invalid schedule request: duration is longer than the window");
+        }
+
+        TopoSnapshot snapshot = PceLibrary.snapshot(topoService);
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        CompactTopo topo = snapshot.getCompact();
+
+        int s = topo.indexOf(PceLibrary.deviceUrn(baseline, requestPipe.getA().getDeviceUrn()).getUrn());
+        int d = topo.indexOf(PceLibrary.deviceUrn(baseline, requestPipe.getZ().getDeviceUrn()).getUrn());
+        boolean[] sources = new boolean[topo.getVertexCount()];
+        boolean[] targets = new boolean[topo.getVertexCount()];
+        sources[s] = true;
+        targets[d] = true;
+        boolean[] excluded = new boolean[topo.getVertexCount()];
+        if (exclude != null) {
+            for (String urn : exclude) {
+                int v = topo.indexOf(urn);
+                if (v >= 0 && v != s && v != d) {
+                    excluded[v] = true;
+                }
+            }
+        }
+
+        Map<String, Integer> baselineIngressBw = snapshot.getBaselineIngressBw();
+        Map<String, Integer> baselineEgressBw = snapshot.getBaselineEgressBw();
+        int[] ingress = topo.perVertex(baselineIngressBw);
+        int[] egress = topo.perVertex(baselineEgressBw);
+
+        List<Booking> bookings = new ArrayList<>();
+        bookings.addAll(bookings(topo, reservedIngBws, baselineIngressBw, ingress));
+        bookings.addAll(bookings(topo, reservedEgBws, baselineEgressBw, egress));
+        List<Booking> byBeginning = new ArrayList<>(bookings);
+        byBeginning.sort(Comparator.comparing(b -> b.beginning));
+        List<Booking> byEnding = new ArrayList<>(bookings);
+        byEnding.sort(Comparator.comparing(b -> b.ending));
+
+        TreeSet<Instant> starts = new TreeSet<>();
+        starts.add(window.getBeginning());
+        for (Booking booking : bookings) {
+            Instant start = booking.ending.plusSeconds(1);
+            if (start.isAfter(window.getBeginning()) && !start.plus(duration).isAfter(window.getEnding())) {
+                starts.add(start);
+            }
+        }
+
+        Instant es = Instant.now();
+        Integer azBw = requestPipe.getAzBandwidth();
+        Integer zaBw = requestPipe.getZaBandwidth();
+        double[] metrics = topo.getMetrics();
+        List<PceScheduleOption> options = new ArrayList<>();
+        int entered = 0;
+        int left = 0;
+        int searched = 0;
+        boolean gained = true;
+        for (Instant start : starts) {
+            Instant end = start.plus(duration);
+            while (entered < byBeginning.size() && !byBeginning.get(entered).beginning.isAfter(end)) {
+                byBeginning.get(entered).apply(1);
+                entered++;
+            }
+            // anything that ended before this start began before the previous end, so it has entered
+            while (left < byEnding.size() && byEnding.get(left).ending.isBefore(start)) {
+                gained = byEnding.get(left).apply(-1) || gained;
+                left++;
+            }
+            if (!gained) {
+                continue;
+            }
+            searched++;
+
+            int[] azCapacity = CompactPaths.capacities(topo, ingress, egress, true);
+            int[] zaCapacity = CompactPaths.capacities(topo, ingress, egress, false);
+            boolean[] pruned = new boolean[topo.getEdgeCount()];
+            for (int e = 0; e < pruned.length; e++) {
+                pruned[e] = azCapacity[e] < azBw || zaCapacity[e] < zaBw;
+            }
+            int[] path = CompactPaths.nearestTarget(topo, sources, targets, metrics, excluded, pruned);
+            if (path == null) {
+                gained = false;
+                continue;
+            }
+            PcePath pcePath = CompactPaths.toPcePath(topo, s, path, metrics);
+            BandwidthContext.of(snapshot, asMap(topo, ingress), asMap(topo, egress)).pathBandwidths(pcePath);
+            options.add(PceScheduleOption.builder()
+                    .interval(Interval.builder().beginning(start).ending(end).build())
+                    .path(pcePath)
+                    .build());
+            if (options.size() >= maxResults) {
+                break;
+            }
+        }
+        log.info(searched + " of " + starts.size() + " start times searched over " + bookings.size() +
+                " reservations, " + options.size() + " found in " + Duration.between(es, Instant.now()));
+
+        return PceScheduleResponse.builder()
+                .options(options)
+                .candidates(starts.size())
+                .searched(searched)
+                .build();
+    }
+
+    private List<Booking> bookings(CompactTopo topo,
+                                   Map<String, List<PeriodBandwidth>> reserved,
+                                   Map<String, Integer> baselineBw,
+                                   int[] available) {
+        List<Booking> result = new ArrayList<>();
+        if (reserved == null) {
+            return result;
+        }
+        reserved.forEach((urn, pbws) -> {
+            int v = topo.indexOf(urn);
+            Integer reservable = baselineBw.get(urn);
+            if (v < 0 || reservable == null || pbws == null || pbws.isEmpty()) {
+                return;
+            }
+            Set<Instant> instants = new HashSet<>();
+            for (PeriodBandwidth pbw : pbws) {
+                instants.add(pbw.getBeginning());
+                instants.add(pbw.getEnding());
+            }
+            Timeline timeline = new Timeline(instants, v, reservable, available);
+            for (PeriodBandwidth pbw : pbws) {
+                result.add(new Booking(timeline, pbw));
+            }
+        });
+        return result;
+    }
+
+    private Map<String, Integer> asMap(CompactTopo topo, int[] values) {
+        Map<String, Integer> result = new HashMap<>();
+        String[] urns = topo.getUrns();
+        for (int v = 0; v < values.length; v++) {
+            result.put(urns[v], values[v]);
+        }
+        return result;
+    }
+
+    /**
+     * One reserved bandwidth figure on one port, in one direction.
+     */
+    private static class Booking {
+        private final Timeline timeline;
+        private final Instant beginning;
+        private final Instant ending;
+        private final int bandwidth;
+
+        private Booking(Timeline timeline, PeriodBandwidth pbw) {
+            this.timeline = timeline;
+            this.beginning = pbw.getBeginning();
+            this.ending = pbw.getEnding();
+            this.bandwidth = pbw.getBandwidth();
+        }
+
+        /**
+         * Adds (sign 1) or removes (sign -1) this booking from its port's timeline.
+         *
+         * @return true if the port's available bandwidth went up
+         */
+        private boolean apply(int sign) {
+            return timeline.add(timeline.index(beginning), timeline.index(ending), sign * bandwidth);
+        }
+    }
+
+    /**
+     * Reserved bandwidth on one port over time, as a segment tree with range add and
+     * global max. Leaf i is the period from the i-th to the (i+1)-th distinct instant;
+     * a reservation covers the leaves from its beginning up to, not including, its end,
+     * so one ending and another beginning at the same instant don't stack.
+     * <p>
+     * The port's entry in the shared availability array is kept up to date.
+     */
+    private static class Timeline {
+        private final List<Instant> instants;
+        private final int leaves;
+        private final int[] max;
+        private final int[] added;
+
+        private final int vertex;
+        private final int reservable;
+        private final int[] available;
+
+        private Timeline(Set<Instant> instants, int vertex, int reservable, int[] available) {
+            this.instants = new ArrayList<>(instants);
+            Collections.sort(this.instants);
+            this.leaves = Math.max(1, this.instants.size() - 1);
+            this.max = new int[4 * leaves];
+            this.added = new int[4 * leaves];
+            this.vertex = vertex;
+            this.reservable = reservable;
+            this.available = available;
+        }
+
+        private int index(Instant instant) {
+            return Collections.binarySearch(instants, instant);
+        }
+
+        private boolean add(int from, int to, int delta) {
+            if (from >= to) {
+                return false;
+            }
+            update(1, 0, leaves, from, to, delta);
+            int before = available[vertex];
+            available[vertex] = reservable - max[1];
+            return available[vertex] > before;
+        }
+
+        private void update(int node, int lo, int hi, int from, int to, int delta) {
+            if (to <= lo || hi <= from) {
+                return;
+            }
+            if (from <= lo && hi <= to) {
+                added[node] += delta;
+                max[node] += delta;
+                return;
+            }
+            int mid = (lo + hi) / 2;
+            update(2 * node, lo, mid, from, to, delta);
+            update(2 * node + 1, mid, hi, from, to, delta);
+            max[node] = added[node] + Math.max(max[2 * node], max[2 * node + 1]);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package net.es.oscars.pce;
+
+public enum ShortestPathAlgorithm {
+    // plain Dijkstra
+    DIJKSTRA,
+    // A* with landmark lower bounds; same paths as DIJKSTRA, fewer vertices settled
+    ALT
+}
@@ -0,0 +1,19 @@
+package net.es.oscars.pce.db;
+
+import net.es.oscars.pce.ent.HotPair;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+
+@Repository
+public interface HotPairRepository extends JpaRepository<HotPair, Long> {
+
+    Optional<HotPair> findBySrcAndDst(String src, String dst);
+
+    List<HotPair> findByOrderByRequestsDesc(Pageable pageable);
+
+}
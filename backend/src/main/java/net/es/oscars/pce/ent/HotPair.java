@@ -0,0 +1,36 @@
+package net.es.oscars.pce.ent;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.*;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import java.time.Instant;
+
+/**
+ * How often paths between two devices have been requested.
+ */
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotPair {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @NonNull
+    private String src;
+
+    @NonNull
+    private String dst;
+
+    @NonNull
+    private Long requests;
+
+    @NonNull
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant lastRequested;
+}
@@ -6,12 +6,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.exc.PSSException;
 import net.es.oscars.dto.topo.DeviceModel;
+import net.es.oscars.resv.beans.ReservationSnapshot;
 import net.es.oscars.resv.db.FixtureRepository;
 import net.es.oscars.resv.db.JunctionRepository;
 import net.es.oscars.resv.ent.*;
 import net.es.oscars.resv.enums.CommandParamIntent;
 import net.es.oscars.resv.svc.ResvService;
-import net.es.oscars.topo.beans.IntRange;
+import net.es.oscars.topo.beans.IntRangeSet;
 import net.es.oscars.topo.beans.ReservableCommandParam;
 import net.es.oscars.topo.beans.TopoUrn;
 import net.es.oscars.topo.ent.Device;
@@ -54,10 +55,11 @@ public class PssResourceService {
                 .build();
 
         try {
-            Map<String, Set<ReservableCommandParam>> availableParams = resvService.availableParams(interval);
+            ReservationSnapshot snapshot = resvService.snapshot(interval, null);
+            Map<String, Set<ReservableCommandParam>> availableParams = resvService.availableParams(snapshot);
             log.debug("available params:");
 
-            this.reserveGlobals(conn, sched, availableParams);
+            this.reserveGlobals(conn, sched, snapshot, availableParams);
 
             for (VlanJunction j : conn.getReserved().getCmp().getJunctions()) {
                 this.reserveByJunction(j, conn, sched, availableParams);
@@ -75,14 +77,10 @@ public class PssResourceService {
     }
 
     @Transactional
-    public void reserveGlobals(Connection conn, Schedule sched,
+    public void reserveGlobals(Connection conn, Schedule sched, ReservationSnapshot snapshot,
                                Map<String, Set<ReservableCommandParam>> availableParams) throws PSSException {
 
         log.info("reserving globals & per-device. deciding VC id:");
-        Interval interval = Interval.builder()
-                .beginning(sched.getBeginning())
-                .ending(sched.getEnding())
-                .build();
 
 
         /*
@@ -118,18 +116,16 @@ public class PssResourceService {
         }
 
 
-        Map<String, Set<IntRange>> availVcIds = new HashMap<>();
-//        Set<IntRange> allRanges = new HashSet<>();
+        Map<String, IntRangeSet> availVcIds = new HashMap<>();
         for (TopoUrn urn : topoUrns) {
             for (ReservableCommandParam rcp : availableParams.get(urn.getUrn())) {
                 if (rcp.getType().equals(CommandParamType.VC_ID)) {
-                    availVcIds.put(urn.getUrn(), rcp.getReservableRanges());
-//                    allRanges.addAll(rcp.getReservableRanges());
+                    availVcIds.put(urn.getUrn(), IntRangeSet.of(rcp.getReservableRanges()));
                 }
             }
         }
 
-        Integer vcid = IntRange.leastInAll(availVcIds);
+        Integer vcid = IntRangeSet.leastInAll(availVcIds.values());
         if (vcid == null) {
             throw new PSSException("no vcid found!");
         }
@@ -140,11 +136,9 @@ public class PssResourceService {
 
         if (needProtect) {
             for (String urn : availVcIds.keySet()) {
-                Set<IntRange> availVcIdsHere = availVcIds.get(urn);
-                availVcIdsHere = IntRange.subtractFromSet(availVcIdsHere, vcid);
-                availVcIds.put(urn, availVcIdsHere);
+                availVcIds.put(urn, availVcIds.get(urn).without(vcid));
             }
-            protectVcId = IntRange.leastInAll(availVcIds);
+            protectVcId = IntRangeSet.leastInAll(availVcIds.values());
             if (protectVcId == null) {
                 throw new PSSException("no protectVcId found!");
             }
@@ -169,7 +163,7 @@ public class PssResourceService {
          */
 
 
-        Set<Integer> availLoopbacks = resvService.availableLoopbacks(interval);
+        Set<Integer> availLoopbacks = resvService.availableLoopbacks(snapshot);
 
         for (VlanJunction j : conn.getReserved().getCmp().getJunctions()) {
 
@@ -261,10 +255,10 @@ public class PssResourceService {
         if (d.getModel().equals(DeviceModel.ALCATEL_SR7750)) {
 
             // first find available QOS ids
-            Set<IntRange> availQosIds = new HashSet<>();
+            IntRangeSet availQosIds = IntRangeSet.EMPTY;
             for (ReservableCommandParam rcp : availableParams.get(d.getUrn())) {
                 if (rcp.getType().equals(CommandParamType.ALU_QOS_POLICY_ID)) {
-                    availQosIds = rcp.getReservableRanges();
+                    availQosIds = IntRangeSet.of(rcp.getReservableRanges());
                 }
             }
 
@@ -275,11 +269,11 @@ public class PssResourceService {
                         f.setCommandParams(new HashSet<>());
                     }
 
-                    if (availQosIds.size() == 0) {
+                    if (availQosIds.isEmpty()) {
                         throw new PSSException("No ALU QOS ids available");
                     }
 
-                    Integer picked = IntRange.minFloor(availQosIds);
+                    Integer picked = availQosIds.first();
                     CommandParam qosCp = CommandParam.builder()
                             .connectionId(conn.getConnectionId())
                             .paramType(CommandParamType.ALU_QOS_POLICY_ID)
@@ -289,7 +283,7 @@ public class PssResourceService {
                             .build();
                     f.getCommandParams().add(qosCp);
 
-                    availQosIds = IntRange.subtractFromSet(availQosIds, picked);
+                    availQosIds = availQosIds.without(picked);
                     jnctRepo.save(j);
                     fixRepo.save(f);
                 }
@@ -299,10 +293,10 @@ public class PssResourceService {
 
             // SDP ids are reserved similarly to VC ids
 
-            Set<IntRange> availSdpIds = new HashSet<>();
+            IntRangeSet availSdpIds = IntRangeSet.EMPTY;
             for (ReservableCommandParam rcp : availableParams.get(d.getUrn())) {
                 if (rcp.getType().equals(CommandParamType.ALU_SDP_ID)) {
-                    availSdpIds = rcp.getReservableRanges();
+                    availSdpIds = IntRangeSet.of(rcp.getReservableRanges());
                 }
             }
 
@@ -320,7 +314,10 @@ public class PssResourceService {
                 }
 
                 if (junctionInPipe) {
-                    Integer sdpId = IntRange.minFloor(availSdpIds);
+                    if (availSdpIds.isEmpty()) {
+                        throw new PSSException("No ALU SDP ids available");
+                    }
+                    Integer sdpId = availSdpIds.first();
                     log.debug("reserving ALU SDP id "+sdpId+" on "+d.getUrn());
 
                     CommandParam sdpIdCp = CommandParam.builder()
@@ -335,11 +332,14 @@ public class PssResourceService {
 
                     j.getCommandParams().add(sdpIdCp);
 
-                    availSdpIds = IntRange.subtractFromSet(availSdpIds, sdpId);
+                    availSdpIds = availSdpIds.without(sdpId);
                     jnctRepo.save(j);
 
                     if (p.getProtect()) {
-                        Integer protectSdpId = IntRange.minFloor(availSdpIds);
+                        if (availSdpIds.isEmpty()) {
+                            throw new PSSException("No ALU SDP ids available for protect");
+                        }
+                        Integer protectSdpId = availSdpIds.first();
                         log.debug("reserving ALU protect SDP id "+protectSdpId+" on "+d.getUrn());
 
                         CommandParam protectSdpIdCp = CommandParam.builder()
@@ -354,7 +354,7 @@ public class PssResourceService {
 
                         j.getCommandParams().add(protectSdpIdCp);
 
-                        availSdpIds = IntRange.subtractFromSet(availSdpIds, protectSdpId);
+                        availSdpIds = availSdpIds.without(protectSdpId);
                         jnctRepo.save(j);
                     }
                 }
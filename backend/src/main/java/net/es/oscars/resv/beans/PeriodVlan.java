@@ -0,0 +1,21 @@
+package net.es.oscars.resv.beans;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PeriodVlan {
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant beginning;
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant ending;
+    private Integer vlanId;
+}
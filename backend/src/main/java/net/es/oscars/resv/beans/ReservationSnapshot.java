@@ -0,0 +1,36 @@
+package net.es.oscars.resv.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.es.oscars.resv.ent.CommandParam;
+import net.es.oscars.resv.ent.Vlan;
+import net.es.oscars.web.beans.Interval;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything reserved during an interval, as loaded once by ResvService.snapshot();
+ * one connection may be left out, e.g. the one being modified.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationSnapshot {
+    private Interval interval;
+    private String exceptConnectionId;
+
+    // by HELD and RESERVED schedules
+    private Collection<Vlan> vlans;
+    private Map<String, List<PeriodBandwidth>> ingressBws;
+    private Map<String, List<PeriodBandwidth>> egressBws;
+    private Set<CommandParam> loopbacks;
+
+    // by RESERVED schedules only, keyed by urn
+    private Map<String, Set<CommandParam>> commandParams;
+}
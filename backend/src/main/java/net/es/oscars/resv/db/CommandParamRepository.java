@@ -5,6 +5,7 @@ import net.es.oscars.resv.ent.Schedule;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,5 +15,6 @@ public interface CommandParamRepository extends CrudRepository<CommandParam, Lon
     List<CommandParam> findAll();
     Optional<CommandParam> findByConnectionId(String connectionId);
     List<CommandParam> findBySchedule(Schedule s);
+    List<CommandParam> findByScheduleIn(Collection<Schedule> s);
 
 }
\ No newline at end of file
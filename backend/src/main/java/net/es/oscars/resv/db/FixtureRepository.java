@@ -3,9 +3,12 @@ package net.es.oscars.resv.db;
 import net.es.oscars.resv.ent.Schedule;
 import net.es.oscars.resv.ent.Vlan;
 import net.es.oscars.resv.ent.VlanFixture;
+import net.es.oscars.resv.enums.Phase;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,5 +18,12 @@ public interface FixtureRepository extends CrudRepository<VlanFixture, Long> {
     List<VlanFixture> findByConnectionId(String connectionId);
     List<VlanFixture> findBySchedule(Schedule s);
 
+    @Query(value = "SELECT DISTINCT f FROM VlanFixture f LEFT JOIN FETCH f.commandParams WHERE f.schedule IN ?1")
+    List<VlanFixture> findWithCommandParamsByScheduleIn(Collection<Schedule> s);
+
+    // rows of schedule, port urn, ingress and egress bandwidth
+    @Query(value = "SELECT s, f.portUrn, f.ingressBandwidth, f.egressBandwidth FROM VlanFixture f " +
+            "JOIN f.schedule s WHERE s.phase IN ?1 AND s.connectionId IS NOT NULL")
+    List<Object[]> findBookingsByPhaseIn(Collection<Phase> phases);
 
 }
\ No newline at end of file
@@ -2,9 +2,11 @@ package net.es.oscars.resv.db;
 
 import net.es.oscars.resv.ent.Schedule;
 import net.es.oscars.resv.ent.VlanJunction;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,4 +17,7 @@ public interface JunctionRepository extends CrudRepository<VlanJunction, Long> {
 
     List<VlanJunction> findBySchedule(Schedule s);
 
+    @Query(value = "SELECT DISTINCT j FROM VlanJunction j LEFT JOIN FETCH j.commandParams WHERE j.schedule IN ?1")
+    List<VlanJunction> findWithCommandParamsByScheduleIn(Collection<Schedule> s);
+
 }
\ No newline at end of file
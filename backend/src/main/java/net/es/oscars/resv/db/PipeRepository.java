@@ -2,9 +2,12 @@ package net.es.oscars.resv.db;
 
 import net.es.oscars.resv.ent.Schedule;
 import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.resv.enums.Phase;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,5 +17,10 @@ public interface PipeRepository extends CrudRepository<VlanPipe, Long> {
     List<VlanPipe> findByConnectionId(String connectionId);
     List<VlanPipe> findBySchedule(Schedule s);
 
+    // EROs are read as the lists they are mapped to, the same as through findBySchedule
+    @Query(value = "SELECT p FROM VlanPipe p JOIN FETCH p.schedule s " +
+            "WHERE s.phase IN ?1 AND s.connectionId IS NOT NULL")
+    List<VlanPipe> findWithScheduleByPhaseIn(Collection<Phase> phases);
+
 
 }
\ No newline at end of file
@@ -2,9 +2,12 @@ package net.es.oscars.resv.db;
 
 import net.es.oscars.resv.ent.Schedule;
 import net.es.oscars.resv.ent.Vlan;
+import net.es.oscars.resv.enums.Phase;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,5 +17,10 @@ public interface VlanRepository extends CrudRepository<Vlan, Long> {
     List<Vlan> findByConnectionId(String connectionId);
     List<Vlan> findBySchedule(Schedule s);
 
+    // rows of schedule, urn and vlan id
+    @Query(value = "SELECT s, v.urn, v.vlanId FROM Vlan v " +
+            "JOIN v.schedule s WHERE s.phase IN ?1 AND s.connectionId IS NOT NULL")
+    List<Object[]> findBookingsByPhaseIn(Collection<Phase> phases);
+
 
 }
\ No newline at end of file
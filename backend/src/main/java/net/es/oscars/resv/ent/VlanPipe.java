@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.util.List;
@@ -59,12 +60,14 @@ public class VlanPipe {
     @NonNull
     private Integer zaBandwidth;
 
-    // EROs are optional
+    // EROs are optional; when many pipes are read at once, their EROs are too
     @OneToMany(cascade = CascadeType.ALL)
+    @BatchSize(size = 100)
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     private List<EroHop> azERO;
 
     @OneToMany(cascade = CascadeType.ALL)
+    @BatchSize(size = 100)
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     private List<EroHop> zaERO;
 
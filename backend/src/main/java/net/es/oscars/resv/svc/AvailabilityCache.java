@@ -0,0 +1,98 @@
+package net.es.oscars.resv.svc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.topo.beans.PortBwVlan;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.Interval;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Recently computed port availability, so that repeated requests for the same interval
+ * (the UI polls constantly) don't recompute it while nothing has changed.
+ * <p>
+ * Entries are keyed by the interval, the connection left out, the topology version and
+ * the reservation ledger's generation, so once a reservation change is committed or a
+ * new topology is loaded the older entries are never returned again; they are dropped
+ * as the cache fills up or, for topology changes, right away.
+ */
+@Slf4j
+@Component
+public class AvailabilityCache {
+    @Value("${resv.available-cache-size:256}")
+    private Integer maxSize;
+
+    @Autowired
+    private TopoService topoService;
+
+    @Autowired
+    private ReservationLedger reservationLedger;
+
+    private Cache<AvailabilityKey, Map<String, PortBwVlan>> cache;
+
+    // the topology the entries were computed on
+    private volatile TopoSnapshot cachedFor = null;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the cached availability for the interval, otherwise what compute returns;
+     * the map must not be modified
+     */
+    public Map<String, PortBwVlan> get(Interval interval, String connectionId,
+                                       Supplier<Map<String, PortBwVlan>> compute) {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        if (snapshot == null) {
+            return compute.get();
+        }
+        if (snapshot != cachedFor) {
+            cache.invalidateAll();
+            cachedFor = snapshot;
+        }
+        // read before computing, so that a change committed meanwhile can't be cached as older
+        AvailabilityKey key = new AvailabilityKey(interval.getBeginning(), interval.getEnding(), connectionId,
+                snapshot.getVersion() == null ? null : snapshot.getVersion().getId(),
+                reservationLedger.generation());
+        try {
+            return cache.get(key, () -> Collections.unmodifiableMap(compute.get()));
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    @Data
+    private static class AvailabilityKey {
+        private final Instant beginning;
+        private final Instant ending;
+        private final String connectionId;
+        private final Long version;
+        private final long generation;
+    }
+}
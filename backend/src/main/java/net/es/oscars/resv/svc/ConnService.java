@@ -6,7 +6,7 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.exc.PCEException;
 import net.es.oscars.app.exc.PSSException;
-import net.es.oscars.app.util.DbAccess;
+import net.es.oscars.app.util.ResourceLocks;
 import net.es.oscars.dto.pss.cmd.CommandType;
 import net.es.oscars.ext.SlackConnector;
 import net.es.oscars.pss.svc.PSSAdapter;
@@ -35,7 +35,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
@@ -77,7 +77,7 @@ public class ConnService {
     private PSSQueuer pssQueuer;
 
     @Autowired
-    private DbAccess dbAccess;
+    private ResourceLocks resourceLocks;
 
     @Autowired
     private TopoService topoService;
@@ -365,18 +365,16 @@ public class ConnService {
 
         slack.sendMessage("User " + c.getUsername() + " committed reservation " + c.getConnectionId());
 
-        Validity v = this.validateCommit(c);
-        if (!v.isValid()) {
-            throw new ConnException("Invalid connection for commit; errors follow: \n" + v.getMessage());
-        }
-
-        ReentrantLock connLock = dbAccess.getConnLock();
-        if (connLock.isLocked()) {
-            log.debug("connection lock already locked; will need to wait to complete commit");
-        }
-        connLock.lock();
+        // commits of connections that share no resources go ahead in parallel; the locks
+        // are kept until our transaction ends, so the next commit on any of the same
+        // resources validates against what we reserved
+        List<Lock> locks = resourceLocks.lock(this.lockedResources(c));
         try {
-            // log.debug("got connection lock ");
+            Validity v = this.validateCommit(c);
+            if (!v.isValid()) {
+                throw new ConnException("Invalid connection for commit; errors follow: \n" + v.getMessage());
+            }
+
             c.setPhase(Phase.RESERVED);
 
             this.reservedFromHeld(c);
@@ -391,8 +389,7 @@ public class ConnService {
             c.setLast_modified((int) instant.getEpochSecond());
 
         } finally {
-            // log.debug("unlocked connections");
-            connLock.unlock();
+            resourceLocks.unlockAfterTransaction(locks);
         }
 
         // TODO: set the user
@@ -412,6 +409,34 @@ public class ConnService {
     }
 
 
+    /**
+     * @return what committing a connection may reserve: its id, the devices of its
+     * junctions (VC and SDP ids), the ports of its fixtures (VLANs, bandwidth), every hop
+     * of its pipes (bandwidth) and, if it has pipes, the global VPLS loopback range
+     */
+    private Set<String> lockedResources(Connection c) {
+        Set<String> result = new HashSet<>();
+        result.add(c.getConnectionId());
+        Components cmp = c.getHeld().getCmp();
+        if (cmp.getJunctions() != null) {
+            cmp.getJunctions().forEach(j -> result.add(j.getDeviceUrn()));
+        }
+        if (cmp.getFixtures() != null) {
+            cmp.getFixtures().forEach(f -> result.add(f.getPortUrn()));
+        }
+        if (cmp.getPipes() != null && !cmp.getPipes().isEmpty()) {
+            result.add(ResourceLocks.VPLS_LOOPBACKS);
+            for (VlanPipe p : cmp.getPipes()) {
+                for (List<EroHop> ero : Arrays.asList(p.getAzERO(), p.getZaERO())) {
+                    if (ero != null) {
+                        ero.forEach(hop -> result.add(hop.getUrn()));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     public ConnChangeResult uncommit(Connection c) {
 
         Held h = this.heldFromReserved(c);
@@ -505,13 +530,9 @@ public class ConnService {
                 .build();
         logService.logEvent(c.getConnectionId(), ev);
 
-        ReentrantLock connLock = dbAccess.getConnLock();
-        if (connLock.isLocked()) {
-            log.debug("connection lock already locked; will need to wait to complete cancel");
-        }
-        connLock.lock();
+        // releasing only frees resources, so it only needs to keep out changes to this connection
+        List<Lock> locks = resourceLocks.lock(Collections.singleton(c.getConnectionId()));
         try {
-            // log.debug("got connection lock ");
             // then, archive it
             c.setPhase(Phase.ARCHIVED);
             c.setHeld(null);
@@ -523,8 +544,7 @@ public class ConnService {
             connRepo.saveAndFlush(c);
 
         } finally {
-            // log.debug("unlocked connections");
-            connLock.unlock();
+            resourceLocks.unlockAfterTransaction(locks);
         }
 
 
@@ -899,8 +919,6 @@ public class ConnService {
 
             }
 
-            Map<String, PortBwVlan> availBwVlanMap = resvService.available(interval, in.getConnectionId());
-
             // make maps: urn -> total of what we are requesting to reserve for VLANs and BW
             Map<String, ImmutablePair<Integer, Integer>> inBwMap = new HashMap<>();
             Map<String, Set<Integer>> inVlanMap = new HashMap<>();
@@ -972,6 +990,9 @@ public class ConnService {
 
             }
 
+            // only the ports we are requesting on (every fixture port is in inBwMap)
+            Map<String, PortBwVlan> availBwVlanMap = resvService.available(interval, in.getConnectionId(), inBwMap.keySet());
+
             // compare VLAN maps to what is available
             for (Fixture f : in.getFixtures()) {
                 Validity fv = Validity.builder()
@@ -0,0 +1,183 @@
+package net.es.oscars.resv.svc;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Values over closed time intervals, in an AVL tree ordered by interval beginning
+ * where each node also knows the latest ending in its subtree. Finding the k values
+ * whose intervals overlap a query interval takes O(log n + k).
+ * <p>
+ * Not thread-safe.
+ */
+public class IntervalTree<T> {
+    private Node<T> root = null;
+    private long added = 0;
+    @Getter
+    private int size = 0;
+
+    public static class Node<T> {
+        private final Instant beginning;
+        private final Instant ending;
+        // breaks ties between equal beginnings
+        private final long id;
+        @Getter
+        private final T value;
+
+        private Node<T> left = null;
+        private Node<T> right = null;
+        private int height = 1;
+        private Instant maxEnding;
+
+        private Node(Instant beginning, Instant ending, long id, T value) {
+            this.beginning = beginning;
+            this.ending = ending;
+            this.id = id;
+            this.value = value;
+            this.maxEnding = ending;
+        }
+    }
+
+    /**
+     * @return the node holding the value, to remove it with later
+     */
+    public Node<T> add(Instant beginning, Instant ending, T value) {
+        Node<T> node = new Node<>(beginning, ending, added++, value);
+        root = insert(root, node);
+        size++;
+        return node;
+    }
+
+    public void remove(Node<T> node) {
+        root = delete(root, node);
+        size--;
+    }
+
+    /**
+     * Passes every value whose interval overlaps [beginning, ending], ends included, to
+     * the consumer, in order of interval beginning.
+     */
+    public void overlapping(Instant beginning, Instant ending, Consumer<T> consumer) {
+        visit(root, beginning, ending, consumer);
+    }
+
+    private void visit(Node<T> node, Instant beginning, Instant ending, Consumer<T> consumer) {
+        if (node == null || node.maxEnding.isBefore(beginning)) {
+            return;
+        }
+        visit(node.left, beginning, ending, consumer);
+        // everything to the right begins later still
+        if (node.beginning.isAfter(ending)) {
+            return;
+        }
+        if (!node.ending.isBefore(beginning)) {
+            consumer.accept(node.value);
+        }
+        visit(node.right, beginning, ending, consumer);
+    }
+
+    private static <T> int compare(Node<T> a, Node<T> b) {
+        int result = a.beginning.compareTo(b.beginning);
+        return result != 0 ? result : Long.compare(a.id, b.id);
+    }
+
+    private Node<T> insert(Node<T> subtree, Node<T> node) {
+        if (subtree == null) {
+            return node;
+        }
+        if (compare(node, subtree) < 0) {
+            subtree.left = insert(subtree.left, node);
+        } else {
+            subtree.right = insert(subtree.right, node);
+        }
+        return balance(subtree);
+    }
+
+    private Node<T> delete(Node<T> subtree, Node<T> node) {
+        if (subtree == null) {
+            throw new IllegalArgumentException("node is not in the tree");
+        }
+        int c = compare(node, subtree);
+        if (c < 0) {
+            subtree.left = delete(subtree.left, node);
+            return balance(subtree);
+        } else if (c > 0) {
+            subtree.right = delete(subtree.right, node);
+            return balance(subtree);
+        }
+        if (subtree.left == null) {
+            return subtree.right;
+        } else if (subtree.right == null) {
+            return subtree.left;
+        }
+        // nodes are handed out, so the successor takes this node's place rather than its key
+        Node<T> successor = subtree.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        successor.right = deleteMin(subtree.right);
+        successor.left = subtree.left;
+        return balance(successor);
+    }
+
+    private Node<T> deleteMin(Node<T> subtree) {
+        if (subtree.left == null) {
+            return subtree.right;
+        }
+        subtree.left = deleteMin(subtree.left);
+        return balance(subtree);
+    }
+
+    private Node<T> balance(Node<T> node) {
+        update(node);
+        int skew = height(node.left) - height(node.right);
+        if (skew > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (skew < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> top = node.left;
+        node.left = top.right;
+        top.right = node;
+        update(node);
+        update(top);
+        return top;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> top = node.right;
+        node.right = top.left;
+        top.left = node;
+        update(node);
+        update(top);
+        return top;
+    }
+
+    private void update(Node<T> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        Instant maxEnding = node.ending;
+        if (node.left != null && node.left.maxEnding.isAfter(maxEnding)) {
+            maxEnding = node.left.maxEnding;
+        }
+        if (node.right != null && node.right.maxEnding.isAfter(maxEnding)) {
+            maxEnding = node.right.maxEnding;
+        }
+        node.maxEnding = maxEnding;
+    }
+
+    private static <T> int height(Node<T> node) {
+        return node == null ? 0 : node.height;
+    }
+}
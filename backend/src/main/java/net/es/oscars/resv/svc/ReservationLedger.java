@@ -0,0 +1,472 @@
+package net.es.oscars.resv.svc;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.StartupComponent;
+import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.beans.PeriodVlan;
+import net.es.oscars.resv.db.FixtureRepository;
+import net.es.oscars.resv.db.PipeRepository;
+import net.es.oscars.resv.db.ScheduleRepository;
+import net.es.oscars.resv.db.VlanRepository;
+import net.es.oscars.resv.ent.*;
+import net.es.oscars.resv.enums.BwDirection;
+import net.es.oscars.resv.enums.Phase;
+import net.es.oscars.web.beans.Interval;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The bandwidth and VLANs reserved by HELD and RESERVED schedules, kept in memory as
+ * one interval tree per port and direction (and one per port for VLANs) so availability
+ * lookups don't have to query the schedules, fixtures, pipes and vlans every time.
+ * <p>
+ * Hibernate tells the ledger after a transaction commits if it changed a schedule,
+ * fixture, pipe or vlan; the connections involved are re-read before the next lookup. So
+ * holds, commits, releases, archiving and schedule changes are all picked up once they
+ * are committed, whatever code path made them. Everything is read from the database
+ * at startup (or on first use, if that comes earlier), and lookups only ever read
+ * committed state.
+ */
+@Slf4j
+@Component
+public class ReservationLedger implements StartupComponent {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ScheduleRepository scheduleRepo;
+
+    @Autowired
+    private FixtureRepository fixtureRepo;
+
+    @Autowired
+    private PipeRepository pipeRepo;
+
+    @Autowired
+    private VlanRepository vlanRepo;
+
+    private Trees trees = new Trees();
+
+    // connections with committed changes not yet in the trees, with the generation of the
+    // latest change
+    private final Map<String, Long> stale = new ConcurrentHashMap<>();
+    // bumped on every committed reservation change, i.e. holds, commits, releases,
+    // archiving and expired holds alike
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile boolean loaded = false;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    public void init() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        ChangeListener listener = new ChangeListener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    /**
+     * @param connectionId if not null, this connection's bookings are left out
+     * @return the bandwidth reserved on each port in one direction by the schedules that
+     * overlap the interval (ends included); the lists must not be modified
+     */
+    public Map<String, List<PeriodBandwidth>> reserved(BwDirection direction, Interval interval, String connectionId) {
+        return this.reserved(direction, interval, connectionId, null);
+    }
+
+    /**
+     * As reserved(direction, interval, connectionId), but only looks at the given ports;
+     * all of them if urns is null.
+     */
+    public Map<String, List<PeriodBandwidth>> reserved(BwDirection direction, Interval interval,
+                                                       String connectionId, Collection<String> urns) {
+        this.catchUp();
+
+        Map<String, List<PeriodBandwidth>> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            this.overlapping(direction.equals(BwDirection.INGRESS) ? trees.ingress : trees.egress, urns, interval, connectionId, (urn, booking) ->
+                    result.computeIfAbsent(urn, k -> new ArrayList<>()).add(booking.getPbw()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @param connectionId if not null, this connection's vlans are left out
+     * @return the vlans reserved on each port by the schedules that overlap the interval
+     * (ends included), with their schedule's beginning and ending
+     */
+    public Map<String, List<PeriodVlan>> reservedVlans(Interval interval, String connectionId) {
+        return this.reservedVlans(interval, connectionId, null);
+    }
+
+    /**
+     * As reservedVlans(interval, connectionId), but only looks at the given ports; all of
+     * them if urns is null.
+     */
+    public Map<String, List<PeriodVlan>> reservedVlans(Interval interval, String connectionId,
+                                                       Collection<String> urns) {
+        this.catchUp();
+
+        Map<String, List<PeriodVlan>> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            this.overlapping(trees.vlans, urns, interval, connectionId, (urn, booking) ->
+                    result.computeIfAbsent(urn, k -> new ArrayList<>()).add(booking.getVlan()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private void overlapping(Map<String, IntervalTree<Booking>> byUrn, Collection<String> urns,
+                             Interval interval, String connectionId, BiConsumer<String, Booking> action) {
+        Collection<String> lookAt = urns == null ? byUrn.keySet() : urns;
+        for (String urn : lookAt) {
+            IntervalTree<Booking> tree = byUrn.get(urn);
+            if (tree == null) {
+                continue;
+            }
+            tree.overlapping(interval.getBeginning(), interval.getEnding(), booking -> {
+                if (connectionId == null || !connectionId.equals(booking.getConnectionId())) {
+                    action.accept(urn, booking);
+                }
+            });
+        }
+    }
+
+    /**
+     * Forgets everything; it will all be read again from the database on the next lookup.
+     */
+    public void reload() {
+        reloads.incrementAndGet();
+        this.loaded = false;
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes whenever a schedule, fixture, pipe or vlan change is
+     * committed; results computed from reservations can be cached until it does
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Reads whatever is missing or stale without holding the lock, so lookups are never
+     * held up by a database read, then takes the write lock only to put it in the trees.
+     */
+    private void catchUp() {
+        if (loaded && stale.isEmpty()) {
+            return;
+        }
+        // never joins the caller's transaction, which may have flushed changes that are
+        // not committed yet, and could still roll back
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+
+        if (!loaded) {
+            long reloadsBefore = reloads.get();
+            Trees read = template.execute(status -> this.load());
+            lock.writeLock().lock();
+            try {
+                // unless another lookup got there first, or reload() was called meanwhile
+                if (!loaded && reloads.get() == reloadsBefore) {
+                    trees = read;
+                    loaded = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Map<String, Long> seen = new HashMap<>(stale);
+        if (seen.isEmpty()) {
+            return;
+        }
+        Map<String, List<Entry>> read = template.execute(status -> {
+            Map<String, List<Entry>> result = new HashMap<>();
+            for (String connectionId : seen.keySet()) {
+                result.put(connectionId, this.read(connectionId));
+            }
+            return result;
+        });
+        lock.writeLock().lock();
+        try {
+            seen.forEach((connectionId, changed) -> {
+                Long latest = stale.get(connectionId);
+                if (latest == null) {
+                    // another lookup put in what it read at least as late as this one
+                    return;
+                }
+                if (latest.equals(changed)) {
+                    stale.remove(connectionId);
+                }
+                // otherwise it changed again since it was read, and stays stale
+                trees.remove(connectionId);
+                read.get(connectionId).forEach(trees::add);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void startup() {
+        this.catchUp();
+    }
+
+    /**
+     * Reads the bookings of all HELD and RESERVED schedules with one query each for
+     * fixtures, vlans and pipes; pipe EROs are read in batches.
+     */
+    private Trees load() {
+        Instant start = Instant.now();
+        Trees result = new Trees();
+        List<Phase> phases = Arrays.asList(Phase.HELD, Phase.RESERVED);
+        Set<Long> schedules = new HashSet<>();
+        for (Object[] row : fixtureRepo.findBookingsByPhaseIn(phases)) {
+            Schedule sch = (Schedule) row[0];
+            result.add(new Entry(sch, Kind.INGRESS, (String) row[1], (Integer) row[2]));
+            result.add(new Entry(sch, Kind.EGRESS, (String) row[1], (Integer) row[3]));
+            schedules.add(sch.getId());
+        }
+        for (Object[] row : vlanRepo.findBookingsByPhaseIn(phases)) {
+            Schedule sch = (Schedule) row[0];
+            result.add(new Entry(sch, Kind.VLAN, (String) row[1], (Integer) row[2]));
+            schedules.add(sch.getId());
+        }
+        for (VlanPipe pipe : pipeRepo.findWithScheduleByPhaseIn(phases)) {
+            List<Entry> entries = new ArrayList<>();
+            this.read(pipe, entries);
+            entries.forEach(result::add);
+            schedules.add(pipe.getSchedule().getId());
+        }
+        log.info("reservation ledger loaded " + schedules.size() + " schedules, " + result.treeOf.size() +
+                " bookings in " + Duration.between(start, Instant.now()));
+        return result;
+    }
+
+    private List<Entry> read(String connectionId) {
+        List<Entry> result = new ArrayList<>();
+        for (Schedule sch : scheduleRepo.findByConnectionId(connectionId)) {
+            if (!reserves(sch)) {
+                continue;
+            }
+            for (VlanFixture f : fixtureRepo.findBySchedule(sch)) {
+                result.add(new Entry(sch, Kind.INGRESS, f.getPortUrn(), f.getIngressBandwidth()));
+                result.add(new Entry(sch, Kind.EGRESS, f.getPortUrn(), f.getEgressBandwidth()));
+            }
+            for (VlanPipe pipe : pipeRepo.findBySchedule(sch)) {
+                this.read(pipe, result);
+            }
+            for (Vlan vlan : vlanRepo.findBySchedule(sch)) {
+                result.add(new Entry(sch, Kind.VLAN, vlan.getUrn(), vlan.getVlanId()));
+            }
+        }
+        return result;
+    }
+
+    private static boolean reserves(Schedule sch) {
+        return sch.getConnectionId() != null &&
+                (Phase.HELD.equals(sch.getPhase()) || Phase.RESERVED.equals(sch.getPhase()));
+    }
+
+    private void read(VlanPipe pipe, List<Entry> result) {
+        // hops go:
+        // device, outPort, inPort, device, outPort, inPort, device
+        // bandwidth gets applied per direction i.e.
+        // az as egress on outPort, as ingress on inPort
+        this.read(pipe.getSchedule(), pipe.getAzERO(), pipe.getAzBandwidth(), result);
+        this.read(pipe.getSchedule(), pipe.getZaERO(), pipe.getZaBandwidth(), result);
+    }
+
+    private void read(Schedule sch, List<EroHop> ero, Integer bandwidth, List<Entry> result) {
+        if (ero == null) {
+            return;
+        }
+        for (int i = 0; i < ero.size(); i++) {
+            if (i % 3 == 1) {
+                result.add(new Entry(sch, Kind.EGRESS, ero.get(i).getUrn(), bandwidth));
+            } else if (i % 3 == 2) {
+                result.add(new Entry(sch, Kind.INGRESS, ero.get(i).getUrn(), bandwidth));
+            }
+        }
+    }
+
+    private enum Kind {
+        INGRESS, EGRESS, VLAN
+    }
+
+    // one booking as read from the database, not yet in any tree
+    private static class Entry {
+        private final Kind kind;
+        private final String urn;
+        private final Instant beginning;
+        private final Instant ending;
+        private final Booking booking;
+
+        Entry(Schedule sch, Kind kind, String urn, Integer value) {
+            this.kind = kind;
+            this.urn = urn;
+            this.beginning = sch.getBeginning();
+            this.ending = sch.getEnding();
+            if (kind.equals(Kind.VLAN)) {
+                PeriodVlan pv = PeriodVlan.builder()
+                        .vlanId(value)
+                        .beginning(beginning)
+                        .ending(ending)
+                        .build();
+                this.booking = new Booking(sch.getConnectionId(), null, pv);
+            } else {
+                PeriodBandwidth pbw = PeriodBandwidth.builder()
+                        .bandwidth(value)
+                        .beginning(beginning)
+                        .ending(ending)
+                        .build();
+                this.booking = new Booking(sch.getConnectionId(), pbw, null);
+            }
+        }
+    }
+
+    private static class Trees {
+        private final Map<String, IntervalTree<Booking>> ingress = new HashMap<>();
+        private final Map<String, IntervalTree<Booking>> egress = new HashMap<>();
+        private final Map<String, IntervalTree<Booking>> vlans = new HashMap<>();
+        // where each connection's bookings are, to take them out again
+        private final Map<String, List<IntervalTree.Node<Booking>>> byConnection = new HashMap<>();
+        private final Map<IntervalTree.Node<Booking>, IntervalTree<Booking>> treeOf = new HashMap<>();
+
+        private void add(Entry entry) {
+            Map<String, IntervalTree<Booking>> byUrn;
+            switch (entry.kind) {
+                case INGRESS:
+                    byUrn = ingress;
+                    break;
+                case EGRESS:
+                    byUrn = egress;
+                    break;
+                default:
+                    byUrn = vlans;
+            }
+            IntervalTree<Booking> tree = byUrn.computeIfAbsent(entry.urn, k -> new IntervalTree<>());
+            IntervalTree.Node<Booking> node = tree.add(entry.beginning, entry.ending, entry.booking);
+            byConnection.computeIfAbsent(entry.booking.getConnectionId(), k -> new ArrayList<>()).add(node);
+            treeOf.put(node, tree);
+        }
+
+        private void remove(String connectionId) {
+            List<IntervalTree.Node<Booking>> nodes = byConnection.remove(connectionId);
+            if (nodes != null) {
+                for (IntervalTree.Node<Booking> node : nodes) {
+                    treeOf.remove(node).remove(node);
+                }
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Booking {
+        private final String connectionId;
+        // one of these, depending on the tree
+        private final PeriodBandwidth pbw;
+        private final PeriodVlan vlan;
+    }
+
+    /**
+     * Marks the connection of any committed schedule, fixture, pipe or vlan change as stale.
+     */
+    private class ChangeListener implements PostCommitInsertEventListener,
+            PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        private void changed(Object entity) {
+            String connectionId = null;
+            if (entity instanceof Schedule) {
+                connectionId = ((Schedule) entity).getConnectionId();
+            } else if (entity instanceof VlanFixture) {
+                VlanFixture f = (VlanFixture) entity;
+                connectionId = f.getSchedule() == null ? f.getConnectionId() : f.getSchedule().getConnectionId();
+            } else if (entity instanceof VlanPipe) {
+                VlanPipe pipe = (VlanPipe) entity;
+                connectionId = pipe.getSchedule() == null ? pipe.getConnectionId() : pipe.getSchedule().getConnectionId();
+            } else if (entity instanceof Vlan) {
+                Vlan vlan = (Vlan) entity;
+                connectionId = vlan.getSchedule() == null ? vlan.getConnectionId() : vlan.getSchedule().getConnectionId();
+            }
+            long changed = generation.incrementAndGet();
+            if (connectionId != null) {
+                stale.put(connectionId, changed);
+            }
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            this.changed(event.getEntity());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            this.changed(event.getEntity());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            this.changed(event.getEntity());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            Class<?> mapped = persister.getMappedClass();
+            return mapped.equals(Schedule.class) || mapped.equals(VlanFixture.class) ||
+                    mapped.equals(VlanPipe.class) || mapped.equals(Vlan.class);
+        }
+
+        // still abstract in this Hibernate version; only called through the default above
+        @Override
+        @Deprecated
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return this.requiresPostCommitHandling(persister);
+        }
+    }
+}
@@ -2,16 +2,21 @@ package net.es.oscars.resv.svc;
 
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.beans.PeriodVlan;
 import net.es.oscars.resv.ent.*;
 import net.es.oscars.resv.enums.BwDirection;
 import net.es.oscars.resv.enums.Phase;
+import net.es.oscars.topo.beans.IntBitSet;
 import net.es.oscars.topo.beans.IntRange;
+import net.es.oscars.topo.beans.IntRangeSet;
 import net.es.oscars.topo.beans.PortBwVlan;
 import net.es.oscars.topo.beans.ReservableCommandParam;
 import net.es.oscars.topo.beans.TopoUrn;
 import net.es.oscars.topo.enums.CommandParamType;
 import net.es.oscars.topo.enums.Layer;
 import net.es.oscars.topo.enums.UrnType;
+import net.es.oscars.web.beans.Interval;
+import net.es.oscars.web.beans.PortTimelineSegment;
 
 import java.time.Instant;
 import java.util.*;
@@ -165,12 +170,9 @@ public class ResvLibrary {
 
     public static Map<String, Set<IntRange>> availableVlanMap(Map<String, TopoUrn> baseline, Collection<Vlan> reservedVlans) {
 
-        Map<String, Set<Integer>> reservedVlanMap = new HashMap<>();
+        Map<String, IntBitSet> reservedVlanMap = new HashMap<>();
         reservedVlans.forEach(v -> {
-            if (!reservedVlanMap.keySet().contains(v.getUrn())) {
-                reservedVlanMap.put(v.getUrn(), new HashSet<>());
-            }
-            reservedVlanMap.get(v.getUrn()).add(v.getVlanId());
+            reservedVlanMap.computeIfAbsent(v.getUrn(), k -> IntBitSet.empty()).add(v.getVlanId());
         });
 
         Map<String, Set<IntRange>> availableVlanMap = new HashMap<>();
@@ -179,22 +181,19 @@ public class ResvLibrary {
             return new HashMap<>();
         }
         for (String urn : baseline.keySet()) {
-            Set<IntRange> reservable = baseline.get(urn).getReservableVlans();
-            Set<IntRange> availableVlans = availableInts(reservable, reservedVlanMap.get(urn));
-            availableVlanMap.put(urn, availableVlans);
+            IntBitSet available = IntBitSet.of(baseline.get(urn).getReservableVlans());
+            IntBitSet reserved = reservedVlanMap.get(urn);
+            if (reserved != null) {
+                available.andNot(reserved);
+            }
+            availableVlanMap.put(urn, available.toRanges());
         }
         return availableVlanMap;
     }
 
     public static Set<IntRange> availableInts(Set<IntRange> reservable, Set<Integer> reserved) {
-        Set<Integer> available = new HashSet<>();
-        for (IntRange range : reservable) {
-            available.addAll(range.asSet());
-        }
-        if (reserved != null) {
-            available.removeAll(reserved);
-        }
-        return IntRange.fromSet(available);
+        // identifier ranges can be wide, so these are subtracted as ranges
+        return IntRangeSet.of(reservable).subtract(IntRangeSet.ofValues(reserved)).toRanges();
     }
 
     public static Map<String, TopoUrn> constructAvailabilityMap(
@@ -244,31 +243,21 @@ public class ResvLibrary {
 
     public static Integer overallAvailBandwidth(Integer reservableBw,
                                                 Collection<PeriodBandwidth> periodBandwidths) {
-        Map<Instant, Set<Integer>> timeline = new HashMap<>();
+        // net change at each instant; equal deltas at the same instant must all count
+        TreeMap<Instant, Integer> timeline = new TreeMap<>();
         if (periodBandwidths == null) {
             periodBandwidths = new ArrayList<>();
         }
         for (PeriodBandwidth pbw : periodBandwidths) {
-            if (!timeline.containsKey(pbw.getBeginning())) {
-                timeline.put(pbw.getBeginning(), new HashSet<>());
-            }
-            if (!timeline.containsKey(pbw.getEnding())) {
-                timeline.put(pbw.getEnding(), new HashSet<>());
-            }
-            timeline.get(pbw.getBeginning()).add(pbw.getBandwidth());
-            timeline.get(pbw.getEnding()).add(-1 * pbw.getBandwidth());
+            timeline.merge(pbw.getBeginning(), pbw.getBandwidth(), Integer::sum);
+            timeline.merge(pbw.getEnding(), -1 * pbw.getBandwidth(), Integer::sum);
         }
-        List<Instant> instants = new ArrayList<>(timeline.keySet());
-        instants.sort(Comparator.comparing(Instant::getEpochSecond));
 
         Integer maxReserved = 0;
 
         Integer runningReserved = 0;
-        for (Instant inst : instants) {
-            Set<Integer> deltas = timeline.get(inst);
-            for (Integer d : deltas) {
-                runningReserved += d;
-            }
+        for (Integer delta : timeline.values()) {
+            runningReserved += delta;
             if (runningReserved > maxReserved) {
                 maxReserved = runningReserved;
             }
@@ -276,6 +265,104 @@ public class ResvLibrary {
         return reservableBw - maxReserved;
     }
 
+    /**
+     * Sweeps the reservations on one port across a window and returns what is available
+     * as consecutive segments, a new one starting whenever the available ingress or egress
+     * bandwidth or the number of free VLANs changes.
+     * <p>
+     * A reservation counts from its beginning up to its ending; capacity is shown as freed
+     * from the ending on.
+     */
+    public static List<PortTimelineSegment> portTimeline(TopoUrn port, Interval window,
+                                                         Collection<PeriodBandwidth> ingressBws,
+                                                         Collection<PeriodBandwidth> egressBws,
+                                                         Collection<PeriodVlan> vlans) {
+        TreeMap<Instant, int[]> events = new TreeMap<>();
+        // per instant: ingress delta, egress delta
+        if (ingressBws != null) {
+            for (PeriodBandwidth pbw : ingressBws) {
+                events.computeIfAbsent(pbw.getBeginning(), k -> new int[2])[0] += pbw.getBandwidth();
+                events.computeIfAbsent(pbw.getEnding(), k -> new int[2])[0] -= pbw.getBandwidth();
+            }
+        }
+        if (egressBws != null) {
+            for (PeriodBandwidth pbw : egressBws) {
+                events.computeIfAbsent(pbw.getBeginning(), k -> new int[2])[1] += pbw.getBandwidth();
+                events.computeIfAbsent(pbw.getEnding(), k -> new int[2])[1] -= pbw.getBandwidth();
+            }
+        }
+        IntBitSet reservable = IntBitSet.of(port.getReservableVlans());
+        TreeMap<Instant, List<PeriodVlan>> vlanStarts = new TreeMap<>();
+        TreeMap<Instant, List<PeriodVlan>> vlanEnds = new TreeMap<>();
+        if (vlans != null) {
+            for (PeriodVlan pv : vlans) {
+                if (reservable.contains(pv.getVlanId())) {
+                    vlanStarts.computeIfAbsent(pv.getBeginning(), k -> new ArrayList<>()).add(pv);
+                    vlanEnds.computeIfAbsent(pv.getEnding(), k -> new ArrayList<>()).add(pv);
+                    events.computeIfAbsent(pv.getBeginning(), k -> new int[2]);
+                    events.computeIfAbsent(pv.getEnding(), k -> new int[2]);
+                }
+            }
+        }
+
+        int reservableIngress = port.getReservableIngressBw() == null ? 0 : port.getReservableIngressBw();
+        int reservableEgress = port.getReservableEgressBw() == null ? 0 : port.getReservableEgressBw();
+        int freeVlans = reservable.cardinality();
+        // how many reservations hold each vlan id right now
+        Map<Integer, Integer> holding = new HashMap<>();
+        int ingress = 0;
+        int egress = 0;
+
+        List<PortTimelineSegment> result = new ArrayList<>();
+        Instant segmentStart = window.getBeginning();
+        for (Map.Entry<Instant, int[]> e : events.entrySet()) {
+            Instant when = e.getKey();
+            if (when.isAfter(window.getBeginning())) {
+                if (!when.isBefore(window.getEnding())) {
+                    break;
+                }
+                addSegment(result, segmentStart, when, reservableIngress - ingress, reservableEgress - egress, freeVlans);
+                segmentStart = when;
+            }
+            ingress += e.getValue()[0];
+            egress += e.getValue()[1];
+            for (PeriodVlan pv : vlanEnds.getOrDefault(when, Collections.emptyList())) {
+                if (holding.merge(pv.getVlanId(), -1, Integer::sum) == 0) {
+                    freeVlans++;
+                }
+            }
+            for (PeriodVlan pv : vlanStarts.getOrDefault(when, Collections.emptyList())) {
+                if (holding.merge(pv.getVlanId(), 1, Integer::sum) == 1) {
+                    freeVlans--;
+                }
+            }
+        }
+        addSegment(result, segmentStart, window.getEnding(), reservableIngress - ingress, reservableEgress - egress, freeVlans);
+        return result;
+    }
+
+    private static void addSegment(List<PortTimelineSegment> segments, Instant beginning, Instant ending,
+                                   int ingress, int egress, int freeVlans) {
+        if (!ending.isAfter(beginning)) {
+            return;
+        }
+        if (!segments.isEmpty()) {
+            PortTimelineSegment last = segments.get(segments.size() - 1);
+            if (last.getIngressBandwidth() == ingress && last.getEgressBandwidth() == egress &&
+                    last.getFreeVlans() == freeVlans) {
+                last.setEnding(ending);
+                return;
+            }
+        }
+        segments.add(PortTimelineSegment.builder()
+                .beginning(beginning)
+                .ending(ending)
+                .ingressBandwidth(ingress)
+                .egressBandwidth(egress)
+                .freeVlans(freeVlans)
+                .build());
+    }
+
     public static Integer minBwOverPath(List<TopoUrn> topoUrns, Map<String, Integer> availableBws) {
         Integer min = Integer.MAX_VALUE;
         for (TopoUrn topoUrn: topoUrns) {
@@ -292,18 +379,24 @@ public class ResvLibrary {
 
         Map<String, Integer> result = new HashMap<>();
 
+        // ranges become bitsets once; everything below is bitset intersection
+        Map<String, IntBitSet> requestedBits = new HashMap<>();
+        Map<String, IntBitSet> availableBits = new HashMap<>();
+
         // first, try to find an identifier that is within all of the available / requested ranges
-        Map<String, Set<IntRange>> search = new HashMap<>();
+        IntBitSet inAll = null;
         for (String r : requested.keySet()) {
-            search.put(r+"-req", requested.get(r));
+            requestedBits.put(r, IntBitSet.of(requested.get(r)));
+            inAll = inAll == null ? requestedBits.get(r).copy() : inAll.and(requestedBits.get(r));
             log.info("req: "+r+" : "+IntRange.asString(requested.get(r)));
         }
         for (String a : available.keySet()) {
-            search.put(a+"-avail", available.get(a));
+            availableBits.put(a, IntBitSet.of(available.get(a)));
+            inAll = inAll == null ? availableBits.get(a).copy() : inAll.and(availableBits.get(a));
             log.info("avail: "+a+" : "+IntRange.asString(available.get(a)));
         }
 
-        Integer least = IntRange.leastInAll(search);
+        Integer least = least(inAll);
         if (least != null) {
             for (String r : requested.keySet()) {
                 result.put(r, least);
@@ -319,21 +412,19 @@ public class ResvLibrary {
         for (String key : requested.keySet()) {
             String[] reqParts = key.split("#");
             String urn = reqParts[0];
-            Set<IntRange> req = requested.get(key);
-            Set<IntRange> avail = available.get(urn);
+            IntBitSet search = requestedBits.get(key).copy();
+            IntBitSet avail = availableBits.get(urn);
+            search.and(avail == null ? IntBitSet.empty() : avail);
             if (pickedOnPorts.containsKey(urn)) {
-                Set<Integer> picked = pickedOnPorts.get(urn);
                 // need to subtract already picked from available
-                for (Integer ident : picked) {
-                    avail = IntRange.subtractFromSet(avail, ident);
+                for (Integer ident : pickedOnPorts.get(urn)) {
+                    if (ident != null) {
+                        search.remove(ident);
+                    }
                 }
             }
 
-
-            search = new HashMap<>();
-            search.put("req", req);
-            search.put("avail", avail);
-            least = IntRange.leastInAll(search);
+            least = least(search);
             log.info("identifier available / requested for "+key+": "+least);
             if (pickedOnPorts.containsKey(urn)) {
                 pickedOnPorts.get(urn).add(least);
@@ -348,4 +439,12 @@ public class ResvLibrary {
 
     }
 
+    private static Integer least(IntBitSet bits) {
+        if (bits == null) {
+            return null;
+        }
+        int least = bits.nextSetBit(0);
+        return least < 0 ? null : least;
+    }
+
 }
@@ -11,14 +11,19 @@ import net.es.oscars.app.exc.PSSException;
 import net.es.oscars.app.props.PssProperties;
 import net.es.oscars.dto.pss.cmd.Command;
 import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.beans.PeriodVlan;
+import net.es.oscars.resv.beans.ReservationSnapshot;
 import net.es.oscars.resv.db.*;
 import net.es.oscars.resv.ent.*;
 import net.es.oscars.resv.enums.BwDirection;
 import net.es.oscars.resv.enums.Phase;
 import net.es.oscars.topo.beans.*;
 import net.es.oscars.topo.enums.CommandParamType;
+import net.es.oscars.topo.enums.UrnType;
 import net.es.oscars.topo.svc.TopoService;
 import net.es.oscars.web.beans.Interval;
+import net.es.oscars.web.beans.PortTimelineRequest;
+import net.es.oscars.web.beans.PortTimelineSegment;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Service;
@@ -56,164 +61,72 @@ public class ResvService {
     @Autowired
     private TopoService topoService;
 
+    @Autowired
+    private ReservationLedger reservationLedger;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    /**
+     * @return the bandwidth reserved on each port's ingress by HELD and RESERVED schedules
+     * overlapping the interval, except those of the given connection; see ReservationLedger
+     */
     public Map<String, List<PeriodBandwidth>> reservedIngBws(Interval interval, String connectionId) {
-        List<Schedule> scheds = scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding());
-        Map<String, List<PeriodBandwidth>> reservedIngBws = new HashMap<>();
+        return reservationLedger.reserved(BwDirection.INGRESS, interval, connectionId);
+    }
 
+    public Map<String, List<PeriodBandwidth>> reservedEgBws(Interval interval, String connectionId) {
+        return reservationLedger.reserved(BwDirection.EGRESS, interval, connectionId);
+    }
 
-        for (Schedule sch : scheds) {
-            if (connectionId != null ) {
-                if (sch.getConnectionId().equals(connectionId)) {
-                    continue;
-                }
-            }
+    public Collection<Vlan> reservedVlans(Interval interval, String connectionId) {
+        return vlans(reservationLedger.reservedVlans(interval, connectionId));
+    }
 
-            if (sch.getPhase().equals(Phase.HELD) || sch.getPhase().equals(Phase.RESERVED)) {
-                List<VlanFixture> fixtures = fixtureRepo.findBySchedule(sch);
-                List<VlanPipe> pipes = pipeRepo.findBySchedule(sch);
-                for (VlanFixture f : fixtures) {
-                    String urn = f.getPortUrn();
-                    PeriodBandwidth iPbw = PeriodBandwidth.builder()
-                            .bandwidth(f.getIngressBandwidth())
-                            .beginning(sch.getBeginning())
-                            .ending(sch.getEnding())
-                            .build();
-                    addTo(reservedIngBws, urn, iPbw);
-                }
-
-                for (VlanPipe pipe : pipes) {
-                    // hops go:
-                    // device, outPort, inPort, device, outPort, inPort, device
-                    // hops will always be empty, or 1 modulo 3
-                    // bandwidth gets applied per direction i.e.
-                    // az as egress on outPort, as ingress on inPort
-                    if (pipe.getAzERO() != null) {
-
-                        for (int i = 0; i < pipe.getAzERO().size(); i++) {
-                            EroHop hop = pipe.getAzERO().get(i);
-                            String urn = hop.getUrn();
-                            PeriodBandwidth pbw = PeriodBandwidth.builder()
-                                    .bandwidth(pipe.getAzBandwidth())
-                                    .beginning(sch.getBeginning())
-                                    .ending(sch.getEnding())
-                                    .build();
-
-                            if (i % 3 == 2) {
-                                addTo(reservedIngBws, urn, pbw);
-                            }
-                        }
-                    }
-
-                    if (pipe.getZaERO() != null ) {
-
-                        for (int i = 0; i < pipe.getZaERO().size(); i++) {
-                            EroHop hop = pipe.getZaERO().get(i);
-                            String urn = hop.getUrn();
-
-                            PeriodBandwidth pbw = PeriodBandwidth.builder()
-                                    .bandwidth(pipe.getZaBandwidth())
-                                    .beginning(sch.getBeginning())
-                                    .ending(sch.getEnding())
-                                    .build();
-
-                            if (i % 3 == 2) {
-                                addTo(reservedIngBws, urn, pbw);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return reservedIngBws;
+    /**
+     * Loads everything the HELD and RESERVED schedules overlapping an interval hold, leaving
+     * out those of one connection if connectionId is not null.
+     * <p>
+     * Vlans and bandwidths come from the reservation ledger, the same as for
+     * available(interval, connectionId, urns), so both agree on what is taken. The
+     * overlapping schedules are looked up once; loopbacks and command params then take
+     * one query each for all of them, rather than one per schedule.
+     */
+    public ReservationSnapshot snapshot(Interval interval, String connectionId) {
+        List<Schedule> scheds = this.heldOrReserved(interval, connectionId);
+        return ReservationSnapshot.builder()
+                .interval(interval)
+                .exceptConnectionId(connectionId)
+                .vlans(this.reservedVlans(interval, connectionId))
+                .ingressBws(reservedIngBws(interval, connectionId))
+                .egressBws(reservedEgBws(interval, connectionId))
+                .loopbacks(this.reservedLoopbacks(scheds))
+                .commandParams(this.reservedCommandParams(scheds))
+                .build();
     }
 
-    public Map<String, List<PeriodBandwidth>> reservedEgBws(Interval interval, String connectionId) {
-        List<Schedule> scheds = scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding());
-        Map<String, List<PeriodBandwidth>> reservedEgBws = new HashMap<>();
-
-        for (Schedule sch : scheds) {
-            if (connectionId != null) {
-                if (sch.getConnectionId().equals(connectionId)) {
-                    continue;
-                }
+    private List<Schedule> heldOrReserved(Interval interval, String connectionId) {
+        List<Schedule> result = new ArrayList<>();
+        for (Schedule sch : scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding())) {
+            if (connectionId != null && sch.getConnectionId().equals(connectionId)) {
+                continue;
             }
             if (sch.getPhase().equals(Phase.HELD) || sch.getPhase().equals(Phase.RESERVED)) {
-                List<VlanFixture> fixtures = fixtureRepo.findBySchedule(sch);
-                List<VlanPipe> pipes = pipeRepo.findBySchedule(sch);
-
-                for (VlanFixture f : fixtures) {
-                    String urn = f.getPortUrn();
-                    PeriodBandwidth ePbw = PeriodBandwidth.builder()
-                            .bandwidth(f.getEgressBandwidth())
-                            .beginning(sch.getBeginning())
-                            .ending(sch.getEnding())
-                            .build();
-
-                    addTo(reservedEgBws, urn, ePbw);
-                }
-
-                for (VlanPipe pipe : pipes) {
-                    // hops go:
-                    // device, outPort, inPort, device, outPort, inPort, device
-                    // hops will always be empty, or 1 modulo 3
-                    // bandwidth gets applied per direction i.e.
-                    // az as egress on outPort, as ingress on inPort
-                    if (pipe.getAzERO() != null) {
-
-                        for (int i = 0; i < pipe.getAzERO().size(); i++) {
-
-                            EroHop hop = pipe.getAzERO().get(i);
-                            String urn = hop.getUrn();
-                            PeriodBandwidth pbw = PeriodBandwidth.builder()
-                                    .bandwidth(pipe.getAzBandwidth())
-                                    .beginning(sch.getBeginning())
-                                    .ending(sch.getEnding())
-                                    .build();
-
-                            if (i % 3 == 1) {
-                                addTo(reservedEgBws, urn, pbw);
-                            }
-                        }
-                    }
-                    if (pipe.getZaERO() != null) {
-                        for (int i = 0; i < pipe.getZaERO().size(); i++) {
-                            EroHop hop = pipe.getZaERO().get(i);
-                            String urn = hop.getUrn();
-
-                            PeriodBandwidth pbw = PeriodBandwidth.builder()
-                                    .bandwidth(pipe.getZaBandwidth())
-                                    .beginning(sch.getBeginning())
-                                    .ending(sch.getEnding())
-                                    .build();
-
-                            if (i % 3 == 1) {
-
-                                addTo(reservedEgBws, urn, pbw);
-                            }
-                        }
-                    }
-                }
+                result.add(sch);
             }
         }
-        return reservedEgBws;
+        return result;
     }
 
-    public Collection<Vlan> reservedVlans(Interval interval, String connectionId) {
-        List<Schedule> scheds = scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding());
-        HashSet<Vlan> reservedVlans = new HashSet<>();
-
-        for (Schedule sch : scheds) {
-            if (connectionId != null ) {
-                if (sch.getConnectionId().equals(connectionId)) {
-                    continue;
-                }
+    // the ledger's vlans, as (unsaved) entities to hand to ResvLibrary
+    private static List<Vlan> vlans(Map<String, List<PeriodVlan>> reserved) {
+        List<Vlan> result = new ArrayList<>();
+        reserved.forEach((urn, pvs) -> {
+            for (PeriodVlan pv : pvs) {
+                result.add(Vlan.builder().urn(urn).vlanId(pv.getVlanId()).build());
             }
-            if (sch.getPhase().equals(Phase.HELD) || sch.getPhase().equals(Phase.RESERVED)) {
-                List<Vlan> vlans = vlanRepo.findBySchedule(sch);
-                reservedVlans.addAll(vlans);
-            }
-        }
-        return reservedVlans;
+        });
+        return result;
     }
 
     public Map<String, Integer> availableIngBws(Interval interval) {
@@ -237,8 +150,11 @@ public class ResvService {
     }
 
     public Map<String, Set<ReservableCommandParam>> availableParams(Interval interval) {
-        List<Schedule> scheds = scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding());
-        Map<String, Set<CommandParam>> reservedParams = this.reservedCommandParams(scheds);
+        return this.availableParams(this.snapshot(interval, null));
+    }
+
+    public Map<String, Set<ReservableCommandParam>> availableParams(ReservationSnapshot snapshot) {
+        Map<String, Set<CommandParam>> reservedParams = snapshot.getCommandParams();
         /*
         try {
             log.info("reserved:");
@@ -255,15 +171,12 @@ public class ResvService {
     }
 
     public Set<Integer> availableLoopbacks(Interval interval) throws PSSException {
+        return this.availableLoopbacks(this.snapshot(interval, null));
+    }
+
+    public Set<Integer> availableLoopbacks(ReservationSnapshot snapshot) throws PSSException {
         Set<Integer> available = new HashSet<>();
-        List<Schedule> scheds = scheduleRepo.findOverlapping(interval.getBeginning(), interval.getEnding());
-        List<Schedule> heldOrReservedScheds = new ArrayList<>();
-        for (Schedule sch : scheds) {
-            if (sch.getPhase().equals(Phase.HELD) || sch.getPhase().equals(Phase.RESERVED)) {
-                heldOrReservedScheds.add(sch);
-            }
-        }
-        Set<CommandParam> reservedLoopbacks = this.reservedLoopbacks(heldOrReservedScheds);
+        Set<CommandParam> reservedLoopbacks = snapshot.getLoopbacks();
 
 
         String range = pssProperties.getLoopbackRange();
@@ -301,13 +214,12 @@ public class ResvService {
 
     public Set<CommandParam> reservedLoopbacks(List<Schedule> scheds) {
         Set<CommandParam> result = new HashSet<>();
-
-        for (Schedule sched : scheds) {
-            List<CommandParam> cpList = cpRepo.findBySchedule(sched);
-            for (CommandParam cp: cpList) {
-                if (cp.getParamType().equals(CommandParamType.VPLS_LOOPBACK)) {
-                    result.add(cp);
-                }
+        if (scheds.isEmpty()) {
+            return result;
+        }
+        for (CommandParam cp : cpRepo.findByScheduleIn(scheds)) {
+            if (cp.getParamType().equals(CommandParamType.VPLS_LOOPBACK)) {
+                result.add(cp);
             }
         }
         return result;
@@ -317,26 +229,25 @@ public class ResvService {
 
     public Map<String, Set<CommandParam>> reservedCommandParams(List<Schedule> scheds) {
         Map<String, Set<CommandParam>> result = new HashMap<>();
+        List<Schedule> reserved = new ArrayList<>();
         for (Schedule sched: scheds) {
             if (sched.getPhase().equals(Phase.RESERVED)) {
-                for (VlanFixture f: fixtureRepo.findBySchedule(sched)) {
-                    for (CommandParam cp : f.getCommandParams()) {
-                        if (!result.containsKey(cp.getUrn())) {
-                            result.put(cp.getUrn(), new HashSet<>());
-                        }
-                        result.get(cp.getUrn()).add(cp);
-                    }
-                }
-                for (VlanJunction j: jnctRepo.findBySchedule(sched)) {
-                    for (CommandParam cp : j.getCommandParams()) {
-                        if (!result.containsKey(cp.getUrn())) {
-                            result.put(cp.getUrn(), new HashSet<>());
-                        }
-                        result.get(cp.getUrn()).add(cp);
-                    }
-                }
+                reserved.add(sched);
             }
-
+        }
+        if (reserved.isEmpty()) {
+            return result;
+        }
+        // the command params are fetched along with their fixtures and junctions
+        List<CommandParam> cps = new ArrayList<>();
+        for (VlanFixture f: fixtureRepo.findWithCommandParamsByScheduleIn(reserved)) {
+            cps.addAll(f.getCommandParams());
+        }
+        for (VlanJunction j: jnctRepo.findWithCommandParamsByScheduleIn(reserved)) {
+            cps.addAll(j.getCommandParams());
+        }
+        for (CommandParam cp : cps) {
+            result.computeIfAbsent(cp.getUrn(), k -> new HashSet<>()).add(cp);
         }
         return result;
     }
@@ -356,19 +267,92 @@ public class ResvService {
         return ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, reservedEgBws);
     }
 
+    /**
+     * @return what is available on every port over the interval, leaving out a connection if
+     * connectionId is not null; cached until a reservation change or new topology.
+     * <p>
+     * Only vlans and bandwidths are needed, so everything comes from the reservation
+     * ledger; snapshot() is for callers that also need loopbacks or command params.
+     */
     public Map<String, PortBwVlan> available(Interval interval, String connectionId) {
-        Collection<Vlan> reservedVlans = reservedVlans(interval, connectionId);
-        Map<String, List<PeriodBandwidth>> reservedEgBws = reservedEgBws(interval, connectionId);
-        Map<String, List<PeriodBandwidth>> reservedIngBws = reservedIngBws(interval, connectionId);
+        return availabilityCache.get(interval, connectionId,
+                () -> this.available(topoService.getTopoUrnMap(), interval, connectionId, null));
+    }
 
-        return ResvLibrary.portBwVlans(topoService.getTopoUrnMap(), reservedVlans, reservedIngBws, reservedEgBws);
+    /**
+     * @return what is available over the interval on just the given ports, leaving out a
+     * connection if connectionId is not null; on every port if urns is null. Ports not in
+     * the topology are left out of the result.
+     * <p>
+     * Everything is read from the reservation ledger for those ports only, so validating
+     * a request costs as much as the ports it uses rather than the whole network. Results
+     * are not cached, since hardly any two requests use the same ports.
+     */
+    public Map<String, PortBwVlan> available(Interval interval, String connectionId, Collection<String> urns) {
+        if (urns == null) {
+            return this.available(interval, connectionId);
+        }
+        Map<String, TopoUrn> urnMap = topoService.getTopoUrnMap();
+        if (urnMap == null) {
+            return new HashMap<>();
+        }
+        Map<String, TopoUrn> scoped = new HashMap<>();
+        for (String urn : urns) {
+            TopoUrn topoUrn = urnMap.get(urn);
+            if (topoUrn != null) {
+                scoped.put(urn, topoUrn);
+            }
+        }
+
+        return this.available(scoped, interval, connectionId, scoped.keySet());
+    }
+
+    // urns are the ports to read from the ledger, or null for all of them
+    private Map<String, PortBwVlan> available(Map<String, TopoUrn> urnMap, Interval interval,
+                                              String connectionId, Collection<String> urns) {
+        return ResvLibrary.portBwVlans(urnMap,
+                vlans(reservationLedger.reservedVlans(interval, connectionId, urns)),
+                reservationLedger.reserved(BwDirection.INGRESS, interval, connectionId, urns),
+                reservationLedger.reserved(BwDirection.EGRESS, interval, connectionId, urns));
     }
 
-    static private void addTo(Map<String, List<PeriodBandwidth>> bwMap, String urn, PeriodBandwidth pbw) {
-        if (!bwMap.containsKey(urn)) {
-            bwMap.put(urn, new ArrayList<>());
+    /**
+     * @return how available bandwidth and free VLANs change over the interval on each
+     * requested port (or every port), all read from the reservation ledger
+     */
+    public Map<String, List<PortTimelineSegment>> timeline(PortTimelineRequest request) {
+        Interval interval = request.getInterval();
+        Map<String, TopoUrn> urnMap = topoService.getTopoUrnMap();
+        Map<String, List<PortTimelineSegment>> result = new HashMap<>();
+        if (urnMap == null) {
+            return result;
+        }
+        // only the requested ports' bookings are read; null reads every port's
+        Collection<String> urns = request.getUrns();
+        if (urns != null && urns.isEmpty()) {
+            urns = null;
+        }
+        Map<String, List<PeriodBandwidth>> ingress = reservationLedger.reserved(BwDirection.INGRESS, interval, null, urns);
+        Map<String, List<PeriodBandwidth>> egress = reservationLedger.reserved(BwDirection.EGRESS, interval, null, urns);
+        Map<String, List<PeriodVlan>> vlans = reservationLedger.reservedVlans(interval, null, urns);
+
+        if (urns == null) {
+            urns = urnMap.keySet();
+        }
+        for (String urn : urns) {
+            TopoUrn topoUrn = urnMap.get(urn);
+            if (topoUrn == null || !topoUrn.getUrnType().equals(UrnType.PORT)) {
+                continue;
+            }
+            result.put(urn, ResvLibrary.portTimeline(topoUrn, interval,
+                    ingress.get(urn), egress.get(urn), vlans.get(urn)));
         }
-        bwMap.get(urn).add(pbw);
+        return result;
+    }
+
+    public Map<String, PortBwVlan> available(ReservationSnapshot snapshot) {
+        return ResvLibrary.portBwVlans(topoService.getTopoUrnMap(),
+                snapshot.getVlans(), snapshot.getIngressBws(), snapshot.getEgressBws());
     }
 
 
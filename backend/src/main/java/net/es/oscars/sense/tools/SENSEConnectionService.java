@@ -49,6 +49,7 @@ import org.springframework.stereotype.Component;
 
 import lombok.extern.slf4j.Slf4j;
 import net.es.nsi.lib.soap.gen.nsi_2_0.connection.ifce.ServiceException;
+import net.es.oscars.pce.PceCaller;
 import net.es.oscars.pce.PceService;
 import net.es.oscars.resv.db.ConnectionRepository;
 import net.es.oscars.resv.ent.Connection;
@@ -421,8 +422,8 @@ public class SENSEConnectionService {
                 String z = junc.get(junc.size() - 1).getDevice();
 
                 PceRequest pceReq = new PceRequest(new Interval(lifetimeDuring.getStart(), lifetimeDuring.getEnd()), a,
-                        z, 1000, 1000, null, null);
-                PceResponse calc = pceSvc.calculatePaths(pceReq);
+                        z, 1000, 1000, null, null, null, null, null);
+                PceResponse calc = pceSvc.calculatePaths(pceReq, PceCaller.SENSE);
 
                 List<String> ero = new ArrayList<>();
                 for (EroHop hop : calc.getFits().getAzEro()) {
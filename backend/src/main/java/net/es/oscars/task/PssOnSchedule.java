@@ -3,7 +3,7 @@ package net.es.oscars.task;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.Startup;
 import net.es.oscars.app.exc.PSSException;
-import net.es.oscars.app.util.DbAccess;
+import net.es.oscars.app.util.ResourceLocks;
 import net.es.oscars.dto.pss.cmd.CommandType;
 import net.es.oscars.pss.beans.QueueName;
 import net.es.oscars.pss.db.RouterCommandsRepository;
@@ -18,11 +18,13 @@ import net.es.oscars.resv.enums.State;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 
 @Slf4j
@@ -45,105 +47,132 @@ public class PssOnSchedule {
     private Startup startup;
 
     @Autowired
-    private DbAccess dbAccess;
+    private ResourceLocks resourceLocks;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     private Map<String, Integer> attempts = new HashMap<>();
 
+    /**
+     * Candidates are picked without locks. Each then gets its own transaction, in which
+     * it is locked, read again and changed if it still needs to be; its lock is released
+     * when that transaction ends, and the PSS queue runs with no connection locked.
+     */
     @Scheduled(fixedDelay = 3000)
-    @Transactional
     public void genConfigsBuildDismantle() {
         if (startup.isInStartup() || startup.isInShutdown()) {
             // log.info("application in startup or shutdown; skipping state transitions");
             return;
         }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
 
-        ReentrantLock connLock = dbAccess.getConnLock();
-        boolean gotLock = connLock.tryLock();
-        if (gotLock) {
-
-            List<Connection> conns = connRepo.findByPhase(Phase.RESERVED);
-
-            List<Connection> needConfigs = new ArrayList<>();
-            for (Connection c : conns) {
+        List<String> needConfigs = new ArrayList<>();
+        List<String> shouldBeBuilt = new ArrayList<>();
+        List<String> shouldBeDismantled = new ArrayList<>();
+        template.executeWithoutResult(status -> {
+            for (Connection c : connRepo.findByPhase(Phase.RESERVED)) {
                 if (rcRepo.findByConnectionId(c.getConnectionId()).isEmpty()) {
                     log.info("connection " + c.getConnectionId() + " needs router configs to be generated");
-                    needConfigs.add(c);
+                    needConfigs.add(c.getConnectionId());
+                }
+                if (this.shouldBeDismantled(c)) {
+                    shouldBeDismantled.add(c.getConnectionId());
+                } else if (this.shouldBeBuilt(c)) {
+                    shouldBeBuilt.add(c.getConnectionId());
                 }
             }
+        });
 
-            for (Connection c : needConfigs) {
-                Integer tried = 0;
-                Integer maxTries = 3;
-                if (attempts.containsKey(c.getConnectionId())) {
-                    tried = attempts.get(c.getConnectionId());
-                }
-                if (tried < maxTries) {
-                    tried = tried + 1;
+        for (String connectionId : needConfigs) {
+            Integer tried = 0;
+            Integer maxTries = 3;
+            if (attempts.containsKey(connectionId)) {
+                tried = attempts.get(connectionId);
+            }
+            if (tried < maxTries) {
+                Integer attempt = tried + 1;
+                template.executeWithoutResult(status -> this.locked(connectionId, c -> {
+                    if (!c.getPhase().equals(Phase.RESERVED) || !rcRepo.findByConnectionId(connectionId).isEmpty()) {
+                        return;
+                    }
                     try {
                         cgs.generateConfig(c);
-                        attempts.remove(c.getConnectionId());
+                        attempts.remove(connectionId);
                     } catch (PSSException e) {
-                        attempts.put(c.getConnectionId(), tried);
+                        attempts.put(connectionId, attempt);
                         log.error(e.getMessage(), e);
                     }
+                }));
 
-                } else if (tried.equals(maxTries)) {
-                    log.error(" stopping trying to generate config for " + c.getConnectionId());
-                    attempts.put(c.getConnectionId(), maxTries + 1);
-                }
-
+            } else if (tried.equals(maxTries)) {
+                log.error(" stopping trying to generate config for " + connectionId);
+                attempts.put(connectionId, maxTries + 1);
             }
 
+        }
 
-            Set<Connection> shouldBeBuilt = new HashSet<>();
-            Set<Connection> shouldBeDismantled = new HashSet<>();
-            // log.debug("got connection lock");
-
-            for (Connection c : conns) {
-                Schedule s = c.getReserved().getSchedule();
-                // this has already ended, so if active it needs to be added to the dismantle list
-                if (s.getEnding().isBefore(Instant.now())) {
-                    if (c.getState().equals(State.ACTIVE)) {
-                        shouldBeDismantled.add(c);
-                    }
+        pssQueuer.clear(QueueName.DONE);
 
-                } else if (s.getBeginning().isBefore(Instant.now())) {
-                    // we are past the beginning, so we need to set it up if
-                    // a. it is not in manual mode
-                    // b. AND it is not already set up or failed
-                    if (c.getMode().equals(BuildMode.AUTOMATIC)) {
-                        if (c.getState().equals(State.WAITING)) {
-                            boolean shouldBuild = true;
-                            if (attempts.containsKey(c.getConnectionId())) {
-                                if (attempts.get(c.getConnectionId()) >= 3) {
-                                    shouldBuild = false;
-                                }
-
-
-                            }
-                            if (shouldBuild) {
-                                shouldBeBuilt.add(c);
-                            }
-                        }
-                    }
+        // do the PSS work
+        for (String connectionId : shouldBeBuilt) {
+            template.executeWithoutResult(status -> this.locked(connectionId, c -> {
+                if (this.shouldBeBuilt(c)) {
+                    pssQueuer.add(CommandType.BUILD, connectionId, State.ACTIVE);
                 }
-            }
-            pssQueuer.clear(QueueName.DONE);
+            }));
+        }
+        for (String connectionId : shouldBeDismantled) {
+            template.executeWithoutResult(status -> this.locked(connectionId, c -> {
+                if (this.shouldBeDismantled(c)) {
+                    pssQueuer.add(CommandType.DISMANTLE, connectionId, State.FINISHED);
+                }
+            }));
+        }
 
-            // do the PSS work
-            for (Connection c : shouldBeBuilt) {
-                pssQueuer.add(CommandType.BUILD, c.getConnectionId(), State.ACTIVE);
-            }
-            for (Connection c : shouldBeDismantled) {
-                pssQueuer.add(CommandType.DISMANTLE, c.getConnectionId(), State.FINISHED);
-            }
+        // run the PSS queue
+        template.executeWithoutResult(status -> pssQueuer.process());
+    }
 
-            // run the PSS queue
-            pssQueuer.process();
-            connLock.unlock();
+    // this has already ended, so if active it needs to be dismantled
+    private boolean shouldBeDismantled(Connection c) {
+        if (!c.getPhase().equals(Phase.RESERVED)) {
+            return false;
+        }
+        Schedule s = c.getReserved().getSchedule();
+        return s.getEnding().isBefore(Instant.now()) && c.getState().equals(State.ACTIVE);
+    }
 
+    private boolean shouldBeBuilt(Connection c) {
+        if (!c.getPhase().equals(Phase.RESERVED)) {
+            return false;
+        }
+        Schedule s = c.getReserved().getSchedule();
+        if (s.getEnding().isBefore(Instant.now()) || !s.getBeginning().isBefore(Instant.now())) {
+            return false;
+        }
+        // we are past the beginning, so we need to set it up if
+        // a. it is not in manual mode
+        // b. AND it is not already set up or failed
+        if (!c.getMode().equals(BuildMode.AUTOMATIC) || !c.getState().equals(State.WAITING)) {
+            return false;
         }
+        return !attempts.containsKey(c.getConnectionId()) || attempts.get(c.getConnectionId()) < 3;
     }
 
+    /**
+     * Locks a connection until the current transaction ends, then hands it, as read after
+     * locking, to update; a connection being committed or released right now, or one that
+     * is gone, is left alone until the next run.
+     */
+    private void locked(String connectionId, Consumer<Connection> update) {
+        List<Lock> locks = resourceLocks.tryLock(Collections.singleton(connectionId));
+        if (locks == null) {
+            log.debug(connectionId + " : busy; waiting for next run");
+            return;
+        }
+        resourceLocks.unlockAfterTransaction(locks);
+        connRepo.findByConnectionId(connectionId).ifPresent(update);
+    }
 
 }
\ No newline at end of file
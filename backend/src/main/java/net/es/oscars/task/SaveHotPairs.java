@@ -0,0 +1,30 @@
+package net.es.oscars.task;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.Startup;
+import net.es.oscars.pce.PathWarmer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+
+@Slf4j
+@Component
+public class SaveHotPairs {
+    @Autowired
+    private Startup startup;
+
+    @Autowired
+    private PathWarmer pathWarmer;
+
+    @Scheduled(fixedDelay = 60000)
+    @Transactional
+    public void processingLoop() {
+        if (startup.isInStartup() || startup.isInShutdown()) {
+            return;
+        }
+        pathWarmer.save();
+    }
+
+}
@@ -4,7 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.es.nsi.lib.soap.gen.nsi_2_0.connection.types.LifecycleStateEnumType;
 import net.es.oscars.app.Startup;
 import net.es.oscars.app.exc.NsiException;
-import net.es.oscars.app.util.DbAccess;
+import net.es.oscars.app.util.ResourceLocks;
 import net.es.oscars.nsi.db.NsiMappingRepository;
 import net.es.oscars.nsi.ent.NsiMapping;
 import net.es.oscars.nsi.svc.NsiService;
@@ -18,14 +18,16 @@ import net.es.oscars.resv.enums.State;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 
 @Slf4j
@@ -41,91 +43,110 @@ public class TransitionStates {
     private NsiService nsiService;
 
     @Autowired
-    private DbAccess dbAccess;
+    private ResourceLocks resourceLocks;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Candidates are picked without locks. Each is then deleted or archived in its own
+     * transaction, once locked and read again, and only if it still has expired or ended;
+     * its lock is released when that transaction ends.
+     */
     @Scheduled(fixedDelay = 5000)
-    @Transactional
     public void processingLoop() {
         if (startup.isInStartup() || startup.isInShutdown()) {
 //            log.info("application in startup or shutdown; skipping state transitions");
             return;
         }
-        ReentrantLock connLock = dbAccess.getConnLock();
-        boolean gotLock = connLock.tryLock();
-        if (gotLock) {
-            try {
-                // log.info("got connection lock");
-
-                List<Connection> heldConns = connRepo.findByPhase(Phase.HELD);
-                List<Connection> reservedConns = connRepo.findByPhase(Phase.RESERVED);
-                List<Connection> deleteThese = new ArrayList<>();
-                List<Connection> archiveThese = new ArrayList<>();
-
-                List<NsiMapping> pastEndTime = new ArrayList<>();
-                List<NsiMapping> timedOut = new ArrayList<>();
-
-                for (Connection c : heldConns) {
-
-                    if (c.getHeld().getExpiration().isBefore(Instant.now())) {
-                        log.info("will delete expired held connection: " + c.getConnectionId());
-                        try {
-                            Optional<NsiMapping> maybeMapping = nsiService.getMappingForOscarsId(c.getConnectionId());
-                            maybeMapping.ifPresent(timedOut::add);
-                        } catch (NsiException ex) {
-                            log.error(ex.getMessage(), ex);
-                        }
-                        deleteThese.add(c);
-                    }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+
+        List<String> deleteThese = new ArrayList<>();
+        List<String> archiveThese = new ArrayList<>();
+
+        List<NsiMapping> pastEndTime = new ArrayList<>();
+        List<NsiMapping> timedOut = new ArrayList<>();
+
+        template.executeWithoutResult(status -> {
+            for (Connection c : connRepo.findByPhase(Phase.HELD)) {
+                if (this.expired(c)) {
+                    log.info("will delete expired held connection: " + c.getConnectionId());
+                    deleteThese.add(c.getConnectionId());
                 }
-                for (Connection c : reservedConns) {
-                    if (c.getReserved().getSchedule().getEnding().isBefore(Instant.now())) {
-                        log.info("will archive (and dismantle if needed) connection: " + c.getConnectionId());
-                        try {
-                            Optional<NsiMapping> maybeMapping = nsiService.getMappingForOscarsId(c.getConnectionId());
-                            maybeMapping.ifPresent(pastEndTime::add);
-                        } catch (NsiException ex) {
-                            log.error(ex.getMessage(), ex);
-                        }
-
-                        if (c.getState().equals(State.ACTIVE)) {
-                            log.info(c.getConnectionId() + " : active; waiting for dismantle before archiving");
-                        } else {
-                            archiveThese.add(c);
-                        }
+            }
+            for (Connection c : connRepo.findByPhase(Phase.RESERVED)) {
+                if (this.ended(c)) {
+                    log.info("will archive (and dismantle if needed) connection: " + c.getConnectionId());
+
+                    if (c.getState().equals(State.ACTIVE)) {
+                        log.info(c.getConnectionId() + " : active; waiting for dismantle before archiving");
+                        this.mapping(c).ifPresent(pastEndTime::add);
+                    } else {
+                        archiveThese.add(c.getConnectionId());
                     }
                 }
-
-                for (NsiMapping mapping : pastEndTime) {
-                    nsiService.pastEndTime(mapping);
+            }
+        });
+
+        for (String connectionId : deleteThese) {
+            template.executeWithoutResult(status -> this.locked(connectionId, c -> {
+                if (this.expired(c)) {
+                    this.mapping(c).ifPresent(timedOut::add);
+                    log.debug("Deleting " + connectionId);
+                    connRepo.delete(c);
                 }
-                for (NsiMapping mapping : timedOut) {
-                    nsiService.resvTimedOut(mapping);
+            }));
+        }
+        for (String connectionId : archiveThese) {
+            template.executeWithoutResult(status -> this.locked(connectionId, c -> {
+                if (this.ended(c) && !c.getState().equals(State.ACTIVE)) {
+                    this.mapping(c).ifPresent(pastEndTime::add);
+                    log.debug("Archiving " + connectionId);
+                    c.setPhase(Phase.ARCHIVED);
+                    c.setReserved(null);
+                    connRepo.save(c);
                 }
+            }));
+        }
 
-                if (deleteThese.size() == 0 && archiveThese.size() == 0) {
-                    return;
-                }
+        for (NsiMapping mapping : pastEndTime) {
+            nsiService.pastEndTime(mapping);
+        }
+        for (NsiMapping mapping : timedOut) {
+            nsiService.resvTimedOut(mapping);
+        }
+    }
 
-                deleteThese.forEach(c -> {
-                    log.debug("Deleting "+c.getConnectionId());
-                });
-                connRepo.deleteAll(deleteThese);
+    private boolean expired(Connection c) {
+        return c.getPhase().equals(Phase.HELD) && c.getHeld().getExpiration().isBefore(Instant.now());
+    }
 
-                archiveThese.forEach(c -> {
-                    log.debug("Archiving "+c.getConnectionId());
-                    c.setPhase(Phase.ARCHIVED);
-                    c.setReserved(null);
-                    connRepo.saveAndFlush(c);
-                });
-            } finally {
-                // log.debug("unlocking connections");
-                connLock.unlock();
-            }
-        } else {
-            log.debug("unable to lock; waiting for next run ");
-        }
+    private boolean ended(Connection c) {
+        return c.getPhase().equals(Phase.RESERVED) && c.getReserved().getSchedule().getEnding().isBefore(Instant.now());
+    }
 
+    /**
+     * Locks a connection until the current transaction ends, then hands it, as read after
+     * locking, to update; a connection being committed or released right now, or one that
+     * is gone, is left alone until the next run.
+     */
+    private void locked(String connectionId, Consumer<Connection> update) {
+        List<Lock> locks = resourceLocks.tryLock(Collections.singleton(connectionId));
+        if (locks == null) {
+            log.debug(connectionId + " : busy; waiting for next run");
+            return;
+        }
+        resourceLocks.unlockAfterTransaction(locks);
+        connRepo.findByConnectionId(connectionId).ifPresent(update);
+    }
 
+    private Optional<NsiMapping> mapping(Connection c) {
+        try {
+            return nsiService.getMappingForOscarsId(c.getConnectionId());
+        } catch (NsiException ex) {
+            log.error(ex.getMessage(), ex);
+            return Optional.empty();
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+package net.es.oscars.topo.beans;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.es.oscars.topo.enums.Layer;
+import net.es.oscars.topo.enums.UrnType;
+
+import java.util.*;
+
+/**
+ * Array-backed topology graph for path computation.
+ * <p>
+ * Every URN is interned to an int; adjacencies are kept in compressed sparse row form,
+ * so the outgoing edges of vertex v are offsets[v] .. offsets[v+1] - 1 and edge e goes
+ * from sources[e] to targets[e]. Searches over it never hash a TopoUrn or TopoAdjcy.
+ * <p>
+ * Instances are immutable once built; don't write into the arrays.
+ */
+@Getter
+public class CompactTopo {
+    private final int vertexCount;
+    private final int edgeCount;
+
+    private final String[] urns;
+    private final TopoUrn[] topoUrns;
+    private final boolean[] devices;
+
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final double[] metrics;
+    private final boolean[] internal;
+    private final TopoAdjcy[] adjcies;
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Integer> index = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Map<TopoAdjcy, Integer> edgeIndex = new IdentityHashMap<>();
+
+    public CompactTopo(Map<String, TopoUrn> topoUrnMap, List<TopoAdjcy> topoAdjcies, Map<TopoAdjcy, Double> metricCosts) {
+        List<String> sorted = new ArrayList<>(topoUrnMap.keySet());
+        Collections.sort(sorted);
+
+        vertexCount = sorted.size();
+        urns = new String[vertexCount];
+        topoUrns = new TopoUrn[vertexCount];
+        devices = new boolean[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            urns[i] = sorted.get(i);
+            topoUrns[i] = topoUrnMap.get(urns[i]);
+            devices[i] = UrnType.DEVICE.equals(topoUrns[i].getUrnType());
+            index.put(urns[i], i);
+        }
+
+        // counting sort of the adjacencies by source vertex
+        edgeCount = topoAdjcies.size();
+        offsets = new int[vertexCount + 1];
+        for (TopoAdjcy adjcy : topoAdjcies) {
+            offsets[index.get(adjcy.getA().getUrn()) + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+
+        sources = new int[edgeCount];
+        targets = new int[edgeCount];
+        metrics = new double[edgeCount];
+        internal = new boolean[edgeCount];
+        adjcies = new TopoAdjcy[edgeCount];
+        for (TopoAdjcy adjcy : topoAdjcies) {
+            int a = index.get(adjcy.getA().getUrn());
+            int e = fill[a]++;
+            sources[e] = a;
+            targets[e] = index.get(adjcy.getZ().getUrn());
+            metrics[e] = metricCosts.get(adjcy);
+            internal[e] = adjcy.getMetrics().containsKey(Layer.INTERNAL);
+            adjcies[e] = adjcy;
+            edgeIndex.put(adjcy, e);
+        }
+    }
+
+    /**
+     * @return the vertex index of a URN, or -1 if it is not in the topology
+     */
+    public int indexOf(String urn) {
+        Integer i = index.get(urn);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the edge index of an adjacency from this topology, or -1
+     */
+    public int edgeOf(TopoAdjcy adjcy) {
+        Integer e = edgeIndex.get(adjcy);
+        return e == null ? -1 : e;
+    }
+
+    /**
+     * Lays out a per-URN value map as a per-vertex array; URNs not in the map get 0.
+     */
+    public int[] perVertex(Map<String, Integer> values) {
+        int[] result = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            Integer value = values.get(urns[i]);
+            result[i] = value == null ? 0 : value;
+        }
+        return result;
+    }
+
+    /**
+     * Dijkstra from src to every vertex; with null weights every edge costs 1.
+     *
+     * @return the least cost from src to each vertex, infinite where unreachable
+     */
+    public double[] distances(int src, double[] weights) {
+        double[] dist = new double[vertexCount];
+        boolean[] settled = new boolean[vertexCount];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+
+        VertexHeap heap = new VertexHeap(vertexCount);
+        dist[src] = 0;
+        heap.push(0, 0, src);
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            if (settled[u]) {
+                continue;
+            }
+            settled[u] = true;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targets[e];
+                double d = dist[u] + (weights == null ? 1 : weights[e]);
+                if (!settled[w] && d < dist[w]) {
+                    dist[w] = d;
+                    heap.push(d, d, w);
+                }
+            }
+        }
+        return dist;
+    }
+}
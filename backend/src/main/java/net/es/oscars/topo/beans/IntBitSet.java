@@ -0,0 +1,189 @@
+package net.es.oscars.topo.beans;
+
+import java.util.*;
+
+/**
+ * A set of non-negative integers as a fixed-size bitset, for availability arithmetic
+ * on VLANs and other identifiers without boxing every value.
+ * <p>
+ * Sets hold at least the 4096 VLAN ids; a set made from ranges with larger values is
+ * sized to fit them. Values outside a set's size are never members: adding them is
+ * ignored, as is removing them.
+ */
+public class IntBitSet {
+    public static final int VLAN_BITS = 4096;
+
+    private final long[] words;
+
+    private IntBitSet(int bits) {
+        this.words = new long[(bits + 63) >>> 6];
+    }
+
+    private IntBitSet(long[] words) {
+        this.words = words;
+    }
+
+    public static IntBitSet empty() {
+        return new IntBitSet(VLAN_BITS);
+    }
+
+    public static IntBitSet of(Collection<IntRange> ranges) {
+        int bits = VLAN_BITS;
+        if (ranges != null) {
+            for (IntRange range : ranges) {
+                bits = Math.max(bits, range.getCeiling() + 1);
+            }
+        }
+        IntBitSet result = new IntBitSet(bits);
+        if (ranges != null) {
+            for (IntRange range : ranges) {
+                result.add(range.getFloor(), range.getCeiling());
+            }
+        }
+        return result;
+    }
+
+    public IntBitSet copy() {
+        return new IntBitSet(words.clone());
+    }
+
+    public boolean contains(int i) {
+        return i >= 0 && (i >>> 6) < words.length && (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void add(int i) {
+        if (i >= 0 && (i >>> 6) < words.length) {
+            words[i >>> 6] |= 1L << i;
+        }
+    }
+
+    public void remove(int i) {
+        if (i >= 0 && (i >>> 6) < words.length) {
+            words[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * Adds every value from floor to ceiling, inclusive.
+     */
+    public void add(int floor, int ceiling) {
+        floor = Math.max(floor, 0);
+        ceiling = Math.min(ceiling, (words.length << 6) - 1);
+        if (floor > ceiling) {
+            return;
+        }
+        int first = floor >>> 6;
+        int last = ceiling >>> 6;
+        long firstMask = -1L << floor;
+        long lastMask = -1L >>> (63 - (ceiling & 63));
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int w = first + 1; w < last; w++) {
+            words[w] = -1L;
+        }
+        words[last] |= lastMask;
+    }
+
+    /**
+     * Keeps only the values also in other.
+     */
+    public IntBitSet and(IntBitSet other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int w = 0; w < common; w++) {
+            words[w] &= other.words[w];
+        }
+        Arrays.fill(words, common, words.length, 0L);
+        return this;
+    }
+
+    /**
+     * Removes the values in other.
+     */
+    public IntBitSet andNot(IntBitSet other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int w = 0; w < common; w++) {
+            words[w] &= ~other.words[w];
+        }
+        return this;
+    }
+
+    /**
+     * @return the least value at or above from, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return the least value at or above from that is not in the set
+     */
+    public int nextClearBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return from;
+        }
+        long word = ~words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return w << 6;
+            }
+            word = ~words[w];
+        }
+    }
+
+    public int cardinality() {
+        int result = 0;
+        for (long word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the values as maximal ranges
+     */
+    public Set<IntRange> toRanges() {
+        Set<IntRange> result = new HashSet<>();
+        int floor = nextSetBit(0);
+        while (floor >= 0) {
+            int end = nextClearBit(floor);
+            result.add(IntRange.builder().floor(floor).ceiling(end - 1).build());
+            floor = nextSetBit(end);
+        }
+        return result;
+    }
+}
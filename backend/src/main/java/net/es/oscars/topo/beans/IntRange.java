@@ -19,6 +19,35 @@ import java.util.regex.Pattern;
 
 @Slf4j
 public class IntRange {
+    private static final Pattern RE_VALID = Pattern.compile(
+            "# Validate comma separated integers/integer ranges.\n" +
+                    "^             # Anchor to start of string.         \n" +
+                    "[0-9]+        # Integer of 1st value (required).   \n" +
+                    "(?:           # Range for 1st value (optional).    \n" +
+                    "  :           # Colon separates range integer.      \n" +
+                    "  [0-9]+      # Range integer of 1st value.        \n" +
+                    ")?            # Range for 1st value (optional).    \n" +
+                    "(?:           # Zero or more additional values.    \n" +
+                    "  ,           # Comma separates additional values. \n" +
+                    "  [0-9]+      # Integer of extra value (required). \n" +
+                    "  (?:         # Range for extra value (optional).  \n" +
+                    "    :         # Colon separates range integer.      \n" +
+                    "    [0-9]+    # Range integer of extra value.      \n" +
+                    "  )?          # Range for extra value (optional).  \n" +
+                    ")*            # Zero or more additional values.    \n" +
+                    "$             # Anchor to end of string.           ",
+            Pattern.COMMENTS);
+
+    private static final Pattern RE_NEXT_VAL = Pattern.compile(
+            "# extract next integers/integer range value.    \n" +
+                    "([0-9]+)      # $1: 1st integer (Base).         \n" +
+                    "(?:           # Range for value (optional).     \n" +
+                    "  :           # Colon separates range integer.   \n" +
+                    "  ([0-9]+)    # $2: 2nd integer (Range)         \n" +
+                    ")?            # Range for value (optional). \n" +
+                    "(?:,|$)       # End on comma or string end.",
+            Pattern.COMMENTS);
+
     private Integer floor;
     private Integer ceiling;
 
@@ -93,41 +122,14 @@ public class IntRange {
     }
 
     public static Boolean isValidExpression(String text) {
-        Pattern re_valid = Pattern.compile(
-                "# Validate comma separated integers/integer ranges.\n" +
-                        "^             # Anchor to start of string.         \n" +
-                        "[0-9]+        # Integer of 1st value (required).   \n" +
-                        "(?:           # Range for 1st value (optional).    \n" +
-                        "  :           # Colon separates range integer.      \n" +
-                        "  [0-9]+      # Range integer of 1st value.        \n" +
-                        ")?            # Range for 1st value (optional).    \n" +
-                        "(?:           # Zero or more additional values.    \n" +
-                        "  ,           # Comma separates additional values. \n" +
-                        "  [0-9]+      # Integer of extra value (required). \n" +
-                        "  (?:         # Range for extra value (optional).  \n" +
-                        "    :         # Colon separates range integer.      \n" +
-                        "    [0-9]+    # Range integer of extra value.      \n" +
-                        "  )?          # Range for extra value (optional).  \n" +
-                        ")*            # Zero or more additional values.    \n" +
-                        "$             # Anchor to end of string.           ",
-                Pattern.COMMENTS);
-        Matcher m = re_valid.matcher(text);
+        Matcher m = RE_VALID.matcher(text);
         return m.matches();
     }
 
     public static Set<IntRange> fromExpression(String text) throws NumberFormatException {
 
         Set<IntRange> firstPass = new HashSet<>();
-        Pattern re_next_val = Pattern.compile(
-                "# extract next integers/integer range value.    \n" +
-                        "([0-9]+)      # $1: 1st integer (Base).         \n" +
-                        "(?:           # Range for value (optional).     \n" +
-                        "  :           # Colon separates range integer.   \n" +
-                        "  ([0-9]+)    # $2: 2nd integer (Range)         \n" +
-                        ")?            # Range for value (optional). \n" +
-                        "(?:,|$)       # End on comma or string end.",
-                Pattern.COMMENTS);
-        Matcher m = re_next_val.matcher(text);
+        Matcher m = RE_NEXT_VAL.matcher(text);
 
         while (m.find()) {
             Integer floor = Integer.parseInt(m.group(1));
@@ -207,12 +209,7 @@ public class IntRange {
     }
 
     public static Set<IntRange> subtractFromSet(Set<IntRange> ranges, Integer i) {
-        Set<Integer> all = new HashSet<>();
-        for (IntRange range: ranges) {
-            all.addAll(range.asSet());
-        }
-        all.remove(i);
-        return fromSet(all);
+        return IntRangeSet.of(ranges).without(i).toRanges();
     }
 
     public static Integer minFloor(Collection<IntRange> ranges) {
@@ -246,26 +243,11 @@ public class IntRange {
 
 
     public static Integer leastInAll(Map<String, Set<IntRange>> rangeMapOfSets) {
-        Set<IntRange> allRanges = new HashSet<>();
+        List<IntRangeSet> sets = new ArrayList<>();
         for (Set<IntRange> rangeSet : rangeMapOfSets.values()) {
-            allRanges.addAll(rangeSet);
-        }
-
-        Integer floor = minFloor(allRanges);
-        Integer ceiling = maxCeil(allRanges);
-        for (Integer i = floor; i <= ceiling; i++) {
-            boolean containedInAll = true;
-            for (Set<IntRange> rangeSet : rangeMapOfSets.values()) {
-                if (!setContains(rangeSet, i)) {
-                    containedInAll = false;
-                }
-            }
-            if (containedInAll) {
-                return i;
-            }
-
+            sets.add(IntRangeSet.of(rangeSet));
         }
-        return null;
+        return IntRangeSet.leastInAll(sets);
 
     }
 
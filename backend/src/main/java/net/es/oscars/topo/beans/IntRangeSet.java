@@ -0,0 +1,256 @@
+package net.es.oscars.topo.beans;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * An immutable set of integers kept as sorted, disjoint, non-adjacent ranges.
+ * <p>
+ * Operations work on the ranges and never enumerate the values, so wide identifier
+ * ranges (VC ids, SDP ids, etc.) cost no more than narrow ones: contains is a binary
+ * search, and union / intersect / subtract are a single merge over both sets.
+ */
+public final class IntRangeSet {
+    public static final IntRangeSet EMPTY = new IntRangeSet(new int[0], new int[0], 0);
+
+    private final int[] floors;
+    private final int[] ceilings;
+    private final int size;
+
+    private IntRangeSet(int[] floors, int[] ceilings, int size) {
+        this.floors = floors;
+        this.ceilings = ceilings;
+        this.size = size;
+    }
+
+    public static IntRangeSet of(Collection<IntRange> ranges) {
+        if (ranges == null || ranges.isEmpty()) {
+            return EMPTY;
+        }
+        List<IntRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparing(IntRange::getFloor));
+        Builder b = new Builder(sorted.size());
+        for (IntRange r : sorted) {
+            b.add(r.getFloor(), r.getCeiling());
+        }
+        return b.build();
+    }
+
+    public static IntRangeSet of(int floor, int ceiling) {
+        if (ceiling < floor) {
+            return EMPTY;
+        }
+        return new IntRangeSet(new int[]{floor}, new int[]{ceiling}, 1);
+    }
+
+    public static IntRangeSet ofValues(Collection<Integer> values) {
+        if (values == null || values.isEmpty()) {
+            return EMPTY;
+        }
+        int[] sorted = new int[values.size()];
+        int n = 0;
+        for (Integer v : values) {
+            sorted[n++] = v;
+        }
+        Arrays.sort(sorted);
+        Builder b = new Builder(n);
+        for (int v : sorted) {
+            b.add(v, v);
+        }
+        return b.build();
+    }
+
+    /**
+     * @return the least value in every one of the sets, or null if there is none
+     */
+    public static Integer leastInAll(Collection<IntRangeSet> sets) {
+        IntRangeSet common = null;
+        for (IntRangeSet set : sets) {
+            common = common == null ? set : common.intersect(set);
+            if (common.isEmpty()) {
+                return null;
+            }
+        }
+        return common == null ? null : common.first();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the least value, or null if empty
+     */
+    public Integer first() {
+        return size == 0 ? null : floors[0];
+    }
+
+    public boolean contains(int i) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ceilings[mid] < i) {
+                lo = mid + 1;
+            } else if (floors[mid] > i) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public IntRangeSet union(IntRangeSet other) {
+        Builder b = new Builder(size + other.size);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && floors[i] <= other.floors[j])) {
+                b.add(floors[i], ceilings[i]);
+                i++;
+            } else {
+                b.add(other.floors[j], other.ceilings[j]);
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    public IntRangeSet intersect(IntRangeSet other) {
+        Builder b = new Builder(Math.max(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            int floor = Math.max(floors[i], other.floors[j]);
+            int ceiling = Math.min(ceilings[i], other.ceilings[j]);
+            if (floor <= ceiling) {
+                b.add(floor, ceiling);
+            }
+            if (ceilings[i] < other.ceilings[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    public IntRangeSet subtract(IntRangeSet other) {
+        if (size == 0 || other.size == 0) {
+            return this;
+        }
+        Builder b = new Builder(size + other.size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            // floor is a long so that removing Integer.MAX_VALUE can't wrap around
+            long floor = floors[i];
+            int ceiling = ceilings[i];
+            while (j < other.size && other.ceilings[j] < floor) {
+                j++;
+            }
+            int k = j;
+            while (k < other.size && other.floors[k] <= ceiling && floor <= ceiling) {
+                if (other.floors[k] > floor) {
+                    b.add((int) floor, other.floors[k] - 1);
+                }
+                floor = (long) other.ceilings[k] + 1;
+                k++;
+            }
+            if (floor <= ceiling) {
+                b.add((int) floor, ceiling);
+            }
+        }
+        return b.build();
+    }
+
+    public IntRangeSet without(int i) {
+        return contains(i) ? subtract(of(i, i)) : this;
+    }
+
+    public Set<IntRange> toRanges() {
+        Set<IntRange> result = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            result.add(IntRange.builder().floor(floors[i]).ceiling(ceilings[i]).build());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IntRangeSet)) {
+            return false;
+        }
+        IntRangeSet other = (IntRangeSet) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (floors[i] != other.floors[i] || ceilings[i] != other.ceilings[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = size;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + floors[i];
+            h = 31 * h + ceilings[i];
+        }
+        return h;
+    }
+
+    /**
+     * @return the same expression format as IntRange.asString, e.g. "2,10:20"
+     */
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            parts.add(floors[i] == ceilings[i] ? floors[i] + "" : floors[i] + ":" + ceilings[i]);
+        }
+        return StringUtils.join(parts, ',');
+    }
+
+    /**
+     * Appends ranges in order of floor, merging those that overlap or touch.
+     */
+    private static class Builder {
+        private int[] floors;
+        private int[] ceilings;
+        private int size = 0;
+
+        private Builder(int capacity) {
+            floors = new int[Math.max(capacity, 1)];
+            ceilings = new int[Math.max(capacity, 1)];
+        }
+
+        private void add(int floor, int ceiling) {
+            if (ceiling < floor) {
+                return;
+            }
+            if (size > 0 && (long) ceilings[size - 1] + 1 >= floor) {
+                ceilings[size - 1] = Math.max(ceilings[size - 1], ceiling);
+                return;
+            }
+            if (size == floors.length) {
+                floors = Arrays.copyOf(floors, size * 2);
+                ceilings = Arrays.copyOf(ceilings, size * 2);
+            }
+            floors[size] = floor;
+            ceilings[size] = ceiling;
+            size++;
+        }
+
+        private IntRangeSet build() {
+            return size == 0 ? EMPTY : new IntRangeSet(floors, ceilings, size);
+        }
+    }
+}
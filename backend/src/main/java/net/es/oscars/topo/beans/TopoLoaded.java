@@ -0,0 +1,14 @@
+package net.es.oscars.topo.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by TopoPopulator once a new topology has been loaded from files into
+ * memory and checked for consistency.
+ */
+@Getter
+@AllArgsConstructor
+public class TopoLoaded {
+    private final TopoSnapshot snapshot;
+}
@@ -0,0 +1,88 @@
+package net.es.oscars.topo.beans;
+
+import lombok.Getter;
+import net.es.oscars.topo.ent.Version;
+
+import java.time.Instant;
+
+/**
+ * Distance metrics for one topology version.
+ * <p>
+ * Eccentricities and the diameter are by hop count over every URN, ports included,
+ * and are infinite when the graph is not strongly connected. Hop and metric distances
+ * are kept from every device to every URN; rows for ports are not stored, since paths
+ * always start at a device.
+ */
+@Getter
+public class TopoMetrics {
+    private final Version version;
+    private final Instant computed;
+    private final CompactTopo compact;
+
+    private final double diameter;
+    private final double[] eccentricities;
+
+    // indexed by compact vertex; null for non-device rows
+    private final double[][] hops;
+    private final double[][] metricDistances;
+
+    private TopoMetrics(TopoSnapshot snapshot) {
+        this.version = snapshot.getVersion();
+        this.compact = snapshot.getCompact();
+
+        int n = compact.getVertexCount();
+        boolean[] devices = compact.getDevices();
+        eccentricities = new double[n];
+        hops = new double[n][];
+        metricDistances = new double[n][];
+
+        double max = 0;
+        for (int v = 0; v < n; v++) {
+            double[] dist = compact.distances(v, null);
+            for (double d : dist) {
+                eccentricities[v] = Math.max(eccentricities[v], d);
+            }
+            max = Math.max(max, eccentricities[v]);
+            if (devices[v]) {
+                hops[v] = dist;
+                metricDistances[v] = compact.distances(v, compact.getMetrics());
+            }
+        }
+        this.diameter = max;
+        this.computed = Instant.now();
+    }
+
+    public static TopoMetrics of(TopoSnapshot snapshot) {
+        return new TopoMetrics(snapshot);
+    }
+
+    /**
+     * @return the least number of hops from a device to any URN, infinite if unreachable
+     * or if the source is not a device
+     */
+    public double hops(String device, String urn) {
+        return lookup(hops, device, urn);
+    }
+
+    /**
+     * @return the least metric cost from a device to any URN, infinite if unreachable
+     * or if the source is not a device
+     */
+    public double metricDistance(String device, String urn) {
+        return lookup(metricDistances, device, urn);
+    }
+
+    public double eccentricity(String urn) {
+        int v = compact.indexOf(urn);
+        return v < 0 ? Double.POSITIVE_INFINITY : eccentricities[v];
+    }
+
+    private double lookup(double[][] rows, String from, String to) {
+        int a = compact.indexOf(from);
+        int z = compact.indexOf(to);
+        if (a < 0 || z < 0 || rows[a] == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return rows[a][z];
+    }
+}
@@ -0,0 +1,90 @@
+package net.es.oscars.topo.beans;
+
+import lombok.Getter;
+import net.es.oscars.resv.enums.BwDirection;
+import net.es.oscars.resv.svc.ResvLibrary;
+import net.es.oscars.topo.ent.Version;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.AsUnmodifiableGraph;
+import org.jgrapht.graph.AsWeightedGraph;
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+
+import java.util.*;
+
+/**
+ * An immutable view of the in-memory topology for one topology version, with the
+ * graphs and edge weights path computation needs already built.
+ * <p>
+ * TopoAdjcy extends DefaultWeightedEdge, so a weight set on a graph is stored in the
+ * adjacency itself and shared by every graph it is part of. The metric and hop graphs
+ * here are weighted views over one graph so they can never overwrite each other.
+ * <p>
+ * The same topology is also laid out as a CompactTopo for the array-based searches.
+ */
+@Getter
+public class TopoSnapshot {
+    private final Version version;
+    private final Map<String, TopoUrn> topoUrnMap;
+    private final List<TopoAdjcy> topoAdjcies;
+
+    private final Map<TopoAdjcy, Double> metricCosts;
+    private final Map<TopoAdjcy, Double> hopCosts;
+
+    private final Graph<TopoUrn, TopoAdjcy> byMetricGraph;
+    private final Graph<TopoUrn, TopoAdjcy> byHopsGraph;
+
+    private final CompactTopo compact;
+
+    // reservable bandwidth per port, with nothing reserved
+    private final Map<String, Integer> baselineIngressBw;
+    private final Map<String, Integer> baselineEgressBw;
+
+    private TopoSnapshot(Version version, Map<String, TopoUrn> topoUrnMap, List<TopoAdjcy> topoAdjcies) {
+        this.version = version;
+        this.topoUrnMap = Collections.unmodifiableMap(new HashMap<>(topoUrnMap));
+        this.topoAdjcies = Collections.unmodifiableList(new ArrayList<>(topoAdjcies));
+
+        // identity maps: adjacencies are unique objects and their hashCode is expensive
+        Map<TopoAdjcy, Double> metric = new IdentityHashMap<>();
+        Map<TopoAdjcy, Double> hops = new IdentityHashMap<>();
+
+        DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> graph = new DirectedWeightedMultigraph<>(TopoAdjcy.class);
+        for (TopoAdjcy adjcy : topoAdjcies) {
+            graph.addVertex(adjcy.getA());
+            graph.addVertex(adjcy.getZ());
+            graph.addEdge(adjcy.getA(), adjcy.getZ(), adjcy);
+            metric.put(adjcy, metricCost(adjcy));
+            hops.put(adjcy, 1D);
+        }
+        this.metricCosts = Collections.unmodifiableMap(metric);
+        this.hopCosts = Collections.unmodifiableMap(hops);
+
+        Graph<TopoUrn, TopoAdjcy> base = new AsUnmodifiableGraph<>(graph);
+        this.byMetricGraph = new AsUnmodifiableGraph<>(new AsWeightedGraph<>(base, metric));
+        this.byHopsGraph = new AsUnmodifiableGraph<>(new AsWeightedGraph<>(base, hops));
+
+        this.compact = new CompactTopo(this.topoUrnMap, this.topoAdjcies, this.metricCosts);
+
+        this.baselineIngressBw = Collections.unmodifiableMap(
+                ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, this.topoUrnMap, new HashMap<>()));
+        this.baselineEgressBw = Collections.unmodifiableMap(
+                ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, this.topoUrnMap, new HashMap<>()));
+    }
+
+    public static TopoSnapshot of(Version version, Map<String, TopoUrn> topoUrnMap, List<TopoAdjcy> topoAdjcies) {
+        return new TopoSnapshot(version, topoUrnMap, topoAdjcies);
+    }
+
+    /**
+     * An adjacency costs as much as its highest metric.
+     */
+    public static double metricCost(TopoAdjcy adjcy) {
+        double cost = 0;
+        for (Long metric : adjcy.getMetrics().values()) {
+            if (metric > cost) {
+                cost = metric.doubleValue();
+            }
+        }
+        return cost;
+    }
+}
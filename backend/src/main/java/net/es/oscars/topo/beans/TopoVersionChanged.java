@@ -0,0 +1,15 @@
+package net.es.oscars.topo.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.es.oscars.topo.ent.Version;
+
+/**
+ * Published by TopoService when a new topology version becomes current, before it is
+ * loaded into memory; anything computed from an older version can be dropped.
+ */
+@Getter
+@AllArgsConstructor
+public class TopoVersionChanged {
+    private final Version version;
+}
@@ -0,0 +1,80 @@
+package net.es.oscars.topo.beans;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (key, tie, vertex) entries ordered by key, then tie, with lazy
+ * deletion: a vertex can be pushed more than once and stale entries are skipped by
+ * the caller.
+ */
+public class VertexHeap {
+    private double[] keys;
+    private double[] ties;
+    private int[] values;
+    private int size = 0;
+
+    public VertexHeap(int capacity) {
+        keys = new double[Math.max(capacity, 16)];
+        ties = new double[keys.length];
+        values = new int[keys.length];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void push(double key, double tie, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            ties = Arrays.copyOf(ties, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!less(key, tie, keys[parent], ties[parent])) {
+                break;
+            }
+            keys[i] = keys[parent];
+            ties[i] = ties[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        ties[i] = tie;
+        values[i] = value;
+    }
+
+    public int pop() {
+        int top = values[0];
+        size--;
+        double key = keys[size];
+        double tie = ties[size];
+        int value = values[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(keys[child + 1], ties[child + 1], keys[child], ties[child])) {
+                child++;
+            }
+            if (!less(keys[child], ties[child], key, tie)) {
+                break;
+            }
+            keys[i] = keys[child];
+            ties[i] = ties[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        ties[i] = tie;
+        values[i] = value;
+        return top;
+    }
+
+    private static boolean less(double key, double tie, double otherKey, double otherTie) {
+        return key < otherKey || (key == otherKey && tie < otherTie);
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.app.props.TopoProperties;
 import net.es.oscars.topo.beans.TopoException;
+import net.es.oscars.topo.beans.TopoLoaded;
 import net.es.oscars.topo.beans.Topology;
 import net.es.oscars.topo.db.AdjcyRepository;
 import net.es.oscars.topo.db.DeviceRepository;
@@ -15,6 +16,7 @@ import net.es.oscars.topo.ent.Version;
 import net.es.oscars.topo.svc.ConsistencyService;
 import net.es.oscars.topo.svc.TopoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
@@ -36,6 +38,7 @@ public class TopoPopulator {
 
     private ConsistencyService consistencySvc;
 
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public TopoPopulator(TopoService topoService,
@@ -43,6 +46,7 @@ public class TopoPopulator {
                          PortRepository portRepo,
                          AdjcyRepository adjcyRepo,
                          ConsistencyService consistencySvc,
+                         ApplicationEventPublisher eventPublisher,
                          TopoProperties topoProperties) {
         this.topoProperties = topoProperties;
         this.deviceRepo = deviceRepo;
@@ -50,6 +54,7 @@ public class TopoPopulator {
         this.adjcyRepo = adjcyRepo;
         this.topoService = topoService;
         this.consistencySvc = consistencySvc;
+        this.eventPublisher = eventPublisher;
     }
 
     public boolean fileLoadNeeded(Version version) {
@@ -190,6 +195,8 @@ public class TopoPopulator {
             topoService.updateInMemoryTopo();
             // check consistency
             consistencySvc.checkConsistency();
+            // e.g. the PathWarmer precomputes paths for the most requested pairs
+            eventPublisher.publishEvent(new TopoLoaded(topoService.getSnapshot()));
         }
 
     }
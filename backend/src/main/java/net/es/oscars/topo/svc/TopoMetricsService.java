@@ -0,0 +1,76 @@
+package net.es.oscars.topo.svc;
+
+import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.topo.beans.TopoMetrics;
+import net.es.oscars.topo.beans.TopoSnapshot;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes TopoMetrics in the background whenever TopoService loads a new topology
+ * version, so that PCE requests don't have to.
+ * <p>
+ * Only the metrics for the latest version are kept. Asking for the metrics of a
+ * snapshot waits for the computation already under way for its version, or starts
+ * one if there is none.
+ */
+@Service
+@Slf4j
+public class TopoMetricsService {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "topo-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Long, CompletableFuture<TopoMetrics>> byVersion = new ConcurrentHashMap<>();
+
+    /**
+     * Starts computing the metrics for a new snapshot and drops those of older versions.
+     */
+    public void update(TopoSnapshot snapshot) {
+        Long id = snapshot.getVersion().getId();
+        byVersion.keySet().removeIf(v -> !v.equals(id));
+        this.future(snapshot);
+    }
+
+    /**
+     * @return the metrics for the snapshot's version, waiting for them if necessary
+     */
+    public TopoMetrics metrics(TopoSnapshot snapshot) {
+        return this.future(snapshot).join();
+    }
+
+    /**
+     * @return the metrics for the latest version, if they have been computed already
+     */
+    public TopoMetrics latest() {
+        TopoMetrics result = null;
+        for (CompletableFuture<TopoMetrics> future : byVersion.values()) {
+            TopoMetrics metrics = future.getNow(null);
+            if (metrics != null && (result == null || metrics.getVersion().getId() > result.getVersion().getId())) {
+                result = metrics;
+            }
+        }
+        return result;
+    }
+
+    private CompletableFuture<TopoMetrics> future(TopoSnapshot snapshot) {
+        return byVersion.computeIfAbsent(snapshot.getVersion().getId(), id ->
+                CompletableFuture.supplyAsync(() -> {
+                    Instant start = Instant.now();
+                    TopoMetrics metrics = TopoMetrics.of(snapshot);
+                    log.info("topo version " + id + " metrics computed in " + Duration.between(start, Instant.now()) +
+                            ", diameter " + metrics.getDiameter());
+                    return metrics;
+                }, executor));
+    }
+}
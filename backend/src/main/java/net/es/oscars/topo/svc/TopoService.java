@@ -19,6 +19,7 @@ import net.es.oscars.topo.enums.Layer;
 import net.es.oscars.topo.enums.UrnType;
 import net.es.oscars.topo.pop.ConsistencyException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -33,6 +34,9 @@ public class TopoService {
     private List<TopoAdjcy> topoAdjcies;
     private Version current = null;
 
+    // immutable graphs for path computation; replaced wholesale on every topology update
+    private volatile TopoSnapshot snapshot = null;
+
 
     @Autowired
     private DeviceRepository deviceRepo;
@@ -46,6 +50,12 @@ public class TopoService {
     @Autowired
     private PssProperties pssProperties;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TopoMetricsService topoMetricsService;
+
     // dumb cache
     private Map<String, PortBwVlan> baseline = new HashMap<>();
 
@@ -61,6 +71,8 @@ public class TopoService {
         this.topoAdjcies = topoAdjciesFromDevices(devices);
         this.topoAdjcies.addAll(topoAdjciesFromDbAdjcies(adjcies));
         this.baseline = new HashMap<>();
+        this.snapshot = TopoSnapshot.of(this.current, this.topoUrnMap, this.topoAdjcies);
+        topoMetricsService.update(this.snapshot);
 
         log.info("topo version " + this.current.getId() + " updated " +
                 "(" + devices.size() + " devices, " + this.topoAdjcies.size() + " adjcies)");
@@ -96,6 +108,7 @@ public class TopoService {
         Version newVersion = Version.builder().updated(Instant.now()).valid(true).build();
         this.current = newVersion;
         versionRepo.save(newVersion);
+        eventPublisher.publishEvent(new TopoVersionChanged(newVersion));
 
         log.debug("New version id is: " + newVersion.getId());
         return newVersion;
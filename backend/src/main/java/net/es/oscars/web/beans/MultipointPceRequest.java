@@ -0,0 +1,23 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipointPceRequest {
+    private Interval interval;
+    private List<String> devices;
+    // per branch, in both directions
+    private Integer bandwidth;
+    private Set<String> exclude;
+
+
+}
@@ -0,0 +1,23 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.es.oscars.resv.ent.VlanJunction;
+import net.es.oscars.resv.ent.VlanPipe;
+
+import java.util.List;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipointPceResponse {
+    private Double cost;
+
+    // the requested devices, plus any device where the tree branches
+    private List<VlanJunction> junctions;
+    private List<VlanPipe> pipes;
+
+}
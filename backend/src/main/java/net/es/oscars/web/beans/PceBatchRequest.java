@@ -0,0 +1,19 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceBatchRequest {
+    // shared by all pairs
+    private Interval interval;
+    private List<PcePair> pairs;
+
+}
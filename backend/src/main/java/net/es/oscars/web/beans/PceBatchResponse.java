@@ -0,0 +1,18 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceBatchResponse {
+    // in the same order as the requested pairs
+    private List<PceBatchResult> results;
+
+}
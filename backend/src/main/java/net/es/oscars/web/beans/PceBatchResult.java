@@ -0,0 +1,19 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceBatchResult {
+    private PcePair pair;
+
+    // exactly one of these is set
+    private PceResponse response;
+    private String error;
+
+}
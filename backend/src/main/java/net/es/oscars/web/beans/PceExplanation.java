@@ -0,0 +1,33 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceExplanation {
+    private Map<PcePhase, Double> phaseMillis;
+    // all the phases together
+    private Double totalMillis;
+
+    // ERO length of the shortest path, and the enumeration limit derived from it
+    private Integer shortestLength;
+    private Integer maxLength;
+    private Boolean longPath;
+
+    // candidate paths produced by the enumeration, and how many of them were evaluated
+    private Integer enumerated;
+    private Integer evaluated;
+    // search branches cut because they would enter an excluded URN or skip an include
+    private Long prunedByConstraints;
+    // evaluated paths without enough bandwidth for the request
+    private Integer rejectedForBandwidth;
+    // whether the enumeration came from the path cache; null when it was searched instead
+    private Boolean cacheHit;
+}
@@ -0,0 +1,32 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.es.oscars.pce.Disjointness;
+
+import java.util.List;
+import java.util.Set;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PcePair {
+    private String a;
+    private String z;
+    private Integer azBw;
+    private Integer zaBw;
+    private List<String> include;
+    private Set<String> exclude;
+
+    // also compute a disjoint primary / protect pair
+    private Boolean protect;
+    private Disjointness disjointness;
+
+    // return per-phase timings and counters in the response
+    private Boolean explain;
+
+
+}
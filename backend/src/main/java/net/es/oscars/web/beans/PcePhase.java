@@ -0,0 +1,14 @@
+package net.es.oscars.web.beans;
+
+public enum PcePhase {
+    // looking up the topology snapshot and its prebuilt graphs
+    SNAPSHOT,
+    // the shortest and least-hops paths, and the enumeration length limit
+    SHORTEST_PATHS,
+    // translating include / exclude into search waypoints and a mask
+    CONSTRAINTS,
+    // enumerating candidate paths, or looking them up in the path cache
+    ENUMERATION,
+    // working out the bandwidth and cost of each candidate
+    EVALUATION
+}
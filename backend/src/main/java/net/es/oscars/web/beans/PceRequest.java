@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import net.es.oscars.pce.Disjointness;
 
 import java.util.List;
 import java.util.Set;
@@ -21,5 +22,12 @@ public class PceRequest {
     private List<String> include;
     private Set<String> exclude;
 
+    // also compute a disjoint primary / protect pair
+    private Boolean protect;
+    private Disjointness disjointness;
+
+    // return per-phase timings and counters in the response
+    private Boolean explain;
+
 
 }
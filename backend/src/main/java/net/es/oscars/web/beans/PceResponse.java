@@ -15,7 +15,12 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 public class PceResponse {
+    // candidate paths enumerated (or, for the bandwidth-aware engine, evaluated)
     private Integer evaluated;
+    // candidates that made it through the filters and were compared for bandwidth and cost
+    private Integer considered;
+    // true when the PCE ran out of budget and the paths are the best found until then
+    private Boolean partial;
 
     private PcePath shortest;
     private PcePath leastHops;
@@ -24,4 +29,11 @@ public class PceResponse {
     private PcePath widestAZ;
     private PcePath widestZA;
 
+    // disjoint pair, only when protection was requested and a pair exists
+    private PcePath primary;
+    private PcePath protect;
+
+    // per-phase timings and counters; only when the request asked for them
+    private PceExplanation explanation;
+
 }
@@ -0,0 +1,28 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceScheduleRequest {
+    // the connection must fit entirely within the window
+    private Interval window;
+    // in seconds
+    private Integer duration;
+    private String a;
+    private String z;
+    private Integer azBw;
+    private Integer zaBw;
+    private Set<String> exclude;
+
+    // how many start times to return, earliest first; defaults to 1
+    private Integer maxResults;
+
+}
@@ -0,0 +1,22 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceScheduleResponse {
+    // earliest first; empty if nothing fits in the window
+    private List<PceScheduleOption> options;
+
+    // start times considered, and how many of them needed a path search
+    private Integer candidates;
+    private Integer searched;
+
+}
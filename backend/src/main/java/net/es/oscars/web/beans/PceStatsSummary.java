@@ -0,0 +1,26 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceStatsSummary {
+    // totals over all path requests since startup
+    private Long requests;
+    private Map<PcePhase, Double> phaseMillis;
+    private Long enumerated;
+    private Long evaluated;
+    private Long prunedByConstraints;
+    private Long rejectedForBandwidth;
+
+    private Long cacheHits;
+    private Long cacheMisses;
+    private Double cacheHitRatio;
+}
@@ -0,0 +1,17 @@
+package net.es.oscars.web.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PceUpdate {
+    private PceUpdateType type;
+    // how many paths had been evaluated when this one was found
+    private Integer evaluated;
+    private PcePath path;
+}
@@ -0,0 +1,12 @@
+package net.es.oscars.web.beans;
+
+public enum PceUpdateType {
+    SHORTEST,
+    LEAST_HOPS,
+    FITS,
+    WIDEST_SUM,
+    WIDEST_AZ,
+    WIDEST_ZA,
+    PRIMARY,
+    PROTECT
+}
@@ -0,0 +1,26 @@
+package net.es.oscars.web.beans;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * What is available on a port from beginning up to, not including, ending.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PortTimelineSegment {
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant beginning;
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant ending;
+    private Integer ingressBandwidth;
+    private Integer egressBandwidth;
+    private Integer freeVlans;
+}
@@ -0,0 +1,31 @@
+package net.es.oscars.web.beans;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopoMetricsReport {
+    private Long version;
+
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER, timezone = "UTC")
+    private Instant computed;
+
+    private Double diameter;
+
+    // device urn -> eccentricity
+    private Map<String, Double> eccentricities;
+
+    // device urn -> device urn -> distance
+    private Map<String, Map<String, Double>> hops;
+    private Map<String, Map<String, Double>> metricDistances;
+
+}
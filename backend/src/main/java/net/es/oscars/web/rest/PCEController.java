@@ -7,13 +7,24 @@ import net.es.oscars.app.exc.PCEException;
 import net.es.oscars.app.exc.StartupException;
 import net.es.oscars.pce.PceService;
 
+import net.es.oscars.web.beans.MultipointPceRequest;
+import net.es.oscars.web.beans.MultipointPceResponse;
+import net.es.oscars.web.beans.PceBatchRequest;
+import net.es.oscars.web.beans.PceBatchResponse;
 import net.es.oscars.web.beans.PceRequest;
 import net.es.oscars.web.beans.PceResponse;
+import net.es.oscars.web.beans.PceScheduleRequest;
+import net.es.oscars.web.beans.PceScheduleResponse;
+import net.es.oscars.web.beans.PceStatsSummary;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -26,6 +37,9 @@ public class PCEController {
     @Autowired
     private PceService pceService;
 
+    @Value("${pce.stream-timeout-millis:60000}")
+    private Long streamTimeout;
+
     @ExceptionHandler(NoSuchElementException.class)
     @ResponseStatus(value = HttpStatus.NOT_FOUND)
     public void handleResourceNotFoundException(NoSuchElementException ex) {
@@ -53,9 +67,94 @@ public class PCEController {
 
     }
 
+    /**
+     * Streams the paths as Server-Sent Events while they are computed: an event per
+     * candidate path named after its PceUpdateType, with the shortest and least-hops
+     * paths first, then a final "summary" event with the whole PceResponse, or an
+     * "error" event.
+     */
+    @RequestMapping(value = "/api/pce/paths/stream", method = RequestMethod.POST,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Transactional
+    public SseEmitter pathStream(@RequestBody PceRequest request) throws StartupException {
+        if (startup.isInStartup()) {
+            throw new StartupException("OSCARS starting up");
+        } else if (startup.isInShutdown()) {
+            throw new StartupException("OSCARS shutting down");
+        }
 
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        pceService.streamPaths(request, update -> this.send(emitter, update.getType().toString(), update))
+                .whenComplete((response, ex) -> {
+                    if (ex == null) {
+                        this.send(emitter, "summary", response);
+                    } else {
+                        Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                        log.info("streamed path request failed: " + cause.getMessage());
+                        this.send(emitter, "error", cause.getMessage());
+                    }
+                    emitter.complete();
+                });
+        return emitter;
+    }
 
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException ex) {
+            log.debug("could not send " + name + " event; client gone? " + ex.getMessage());
+        }
+    }
 
+    /**
+     * Totals of the per-phase timings and counters of all path requests since startup.
+     */
+    @RequestMapping(value = "/api/pce/stats", method = RequestMethod.GET)
+    @ResponseBody
+    public PceStatsSummary stats() {
+        return pceService.stats();
+    }
 
+    @RequestMapping(value = "/api/pce/batch", method = RequestMethod.POST)
+    @ResponseBody
+    @Transactional
+    public PceBatchResponse batch(@RequestBody PceBatchRequest request) throws PCEException, StartupException {
+        if (startup.isInStartup()) {
+            throw new StartupException("OSCARS starting up");
+        } else if (startup.isInShutdown()) {
+            throw new StartupException("OSCARS shutting down");
+        }
+
+        return pceService.calculatePaths(request);
+
+    }
+
+    @RequestMapping(value = "/api/pce/multipoint", method = RequestMethod.POST)
+    @ResponseBody
+    @Transactional
+    public MultipointPceResponse multipoint(@RequestBody MultipointPceRequest request) throws PCEException, StartupException {
+        if (startup.isInStartup()) {
+            throw new StartupException("OSCARS starting up");
+        } else if (startup.isInShutdown()) {
+            throw new StartupException("OSCARS shutting down");
+        }
+
+        return pceService.calculateTree(request);
+
+    }
+
+    @RequestMapping(value = "/api/pce/schedule", method = RequestMethod.POST)
+    @ResponseBody
+    @Transactional
+    public PceScheduleResponse schedule(@RequestBody PceScheduleRequest request) throws PCEException, StartupException {
+        if (startup.isInStartup()) {
+            throw new StartupException("OSCARS starting up");
+        } else if (startup.isInShutdown()) {
+            throw new StartupException("OSCARS shutting down");
+        }
+
+        return pceService.calculateSchedule(request);
+
+    }
 
 }
\ No newline at end of file
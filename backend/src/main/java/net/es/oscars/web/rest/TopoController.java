@@ -13,9 +13,13 @@ import net.es.oscars.topo.enums.Layer;
 import net.es.oscars.topo.enums.UrnType;
 import net.es.oscars.topo.pop.ConsistencyException;
 import net.es.oscars.topo.svc.ConsistencyService;
+import net.es.oscars.topo.svc.TopoMetricsService;
 import net.es.oscars.topo.svc.TopoService;
 import net.es.oscars.web.beans.Interval;
+import net.es.oscars.web.beans.PortTimelineRequest;
+import net.es.oscars.web.beans.PortTimelineSegment;
 import net.es.oscars.web.beans.SimpleAdjcy;
+import net.es.oscars.web.beans.TopoMetricsReport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,6 +37,9 @@ public class TopoController {
     @Autowired
     private ConsistencyService consistencySvc;
 
+    @Autowired
+    private TopoMetricsService topoMetricsService;
+
     @Autowired
     private ResvService resvService;
 
@@ -55,6 +62,12 @@ public class TopoController {
         log.warn("Still in startup");
     }
 
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public void handleBadRequest(IllegalArgumentException ex) {
+        log.warn("bad request: " + ex.getMessage());
+    }
+
     @RequestMapping(value = "/api/topo/ethernetPortsByDevice", method = RequestMethod.GET)
     @ResponseBody
     @Transactional
@@ -142,6 +155,18 @@ public class TopoController {
 
     }
 
+    @RequestMapping(value = "/api/topo/timeline", method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, List<PortTimelineSegment>> timeline(@RequestBody PortTimelineRequest request)
+            throws StartupException {
+        this.startupCheck();
+        if (request.getInterval() == null || request.getInterval().getBeginning() == null ||
+                request.getInterval().getEnding() == null) {
+            throw new IllegalArgumentException("a timeline needs an interval");
+        }
+        return resvService.timeline(request);
+    }
+
     @RequestMapping(value = "/api/topo/version", method = RequestMethod.GET)
     @ResponseBody
     public Version version() throws StartupException, ConsistencyException {
@@ -156,6 +181,46 @@ public class TopoController {
         return consistencySvc.getLatestReport();
     }
 
+    @RequestMapping(value = "/admin/topo/metrics", method = RequestMethod.GET)
+    @ResponseBody
+    public TopoMetricsReport metrics() throws StartupException {
+        this.startupCheck();
+        TopoMetrics metrics = topoMetricsService.latest();
+        if (metrics == null) {
+            throw new NoSuchElementException("topology metrics not computed yet");
+        }
+
+        CompactTopo compact = metrics.getCompact();
+        Map<String, Double> eccentricities = new TreeMap<>();
+        Map<String, Map<String, Double>> hops = new TreeMap<>();
+        Map<String, Map<String, Double>> metricDistances = new TreeMap<>();
+        for (int a = 0; a < compact.getVertexCount(); a++) {
+            if (!compact.getDevices()[a]) {
+                continue;
+            }
+            String aUrn = compact.getUrns()[a];
+            eccentricities.put(aUrn, metrics.getEccentricities()[a]);
+            hops.put(aUrn, new TreeMap<>());
+            metricDistances.put(aUrn, new TreeMap<>());
+            for (int z = 0; z < compact.getVertexCount(); z++) {
+                if (compact.getDevices()[z] && z != a) {
+                    String zUrn = compact.getUrns()[z];
+                    hops.get(aUrn).put(zUrn, metrics.getHops()[a][z]);
+                    metricDistances.get(aUrn).put(zUrn, metrics.getMetricDistances()[a][z]);
+                }
+            }
+        }
+
+        return TopoMetricsReport.builder()
+                .version(metrics.getVersion().getId())
+                .computed(metrics.getComputed())
+                .diameter(metrics.getDiameter())
+                .eccentricities(eccentricities)
+                .hops(hops)
+                .metricDistances(metricDistances)
+                .build();
+    }
+
     @RequestMapping(value = "/api/topo/locations", method = RequestMethod.GET)
     @ResponseBody
     public Map<String, Location> locations() throws ConsistencyException, StartupException  {
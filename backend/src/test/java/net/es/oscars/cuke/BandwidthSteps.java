@@ -6,8 +6,13 @@ import cucumber.api.java.en.Then;
 import lombok.extern.slf4j.Slf4j;
 import net.es.oscars.ctg.UnitTests;
 import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.beans.PeriodVlan;
 import net.es.oscars.resv.enums.BwDirection;
 import net.es.oscars.resv.svc.ResvLibrary;
+import net.es.oscars.topo.beans.IntRange;
+import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.web.beans.Interval;
+import net.es.oscars.web.beans.PortTimelineSegment;
 import org.junit.experimental.categories.Category;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -66,5 +71,50 @@ public class BandwidthSteps extends CucumberSteps {
         assert ResvLibrary.overallAvailBandwidth(baselineBw, periodBws) == bw;
     }
 
+    @Given("^I set these timed vlan reservations$")
+    public void i_set_these_timed_vlan_reservations(DataTable table) throws Throwable {
+        world.periodVlans = new HashMap<>();
+        for (List<String> row : table.raw()) {
+            PeriodVlan pv = PeriodVlan.builder()
+                    .vlanId(Integer.parseInt(row.get(1)))
+                    .beginning(Instant.ofEpochSecond(Integer.parseInt(row.get(2))))
+                    .ending(Instant.ofEpochSecond(Integer.parseInt(row.get(3))))
+                    .build();
+            world.periodVlans.computeIfAbsent(row.get(0), k -> new ArrayList<>()).add(pv);
+        }
+    }
+
+    @Then("^the \"([^\"]*)\" timeline for \"([^\"]*)\" with vlans \"([^\"]*)\" between (\\d+) and (\\d+) is$")
+    public void the_timeline_is(BwDirection dir, String urn, String vlanExpr, int b, int e, DataTable table)
+            throws Throwable {
+        Integer baselineBw = world.bwBaseline.get(dir).get(urn);
+        TopoUrn port = TopoUrn.builder()
+                .urn(urn)
+                .reservableIngressBw(dir.equals(BwDirection.INGRESS) ? baselineBw : 0)
+                .reservableEgressBw(dir.equals(BwDirection.EGRESS) ? baselineBw : 0)
+                .reservableVlans(IntRange.fromExpression(vlanExpr))
+                .build();
+        Interval window = Interval.builder()
+                .beginning(Instant.ofEpochSecond(b))
+                .ending(Instant.ofEpochSecond(e))
+                .build();
+        List<PeriodBandwidth> pbws = world.bwMaps.get(dir).get(urn);
+        List<PortTimelineSegment> segments = ResvLibrary.portTimeline(port, window,
+                dir.equals(BwDirection.INGRESS) ? pbws : null,
+                dir.equals(BwDirection.EGRESS) ? pbws : null,
+                world.periodVlans.get(urn));
+
+        List<List<String>> rows = table.raw();
+        assert segments.size() == rows.size();
+        for (int i = 0; i < rows.size(); i++) {
+            PortTimelineSegment segment = segments.get(i);
+            List<String> row = rows.get(i);
+            Integer bw = dir.equals(BwDirection.INGRESS) ? segment.getIngressBandwidth() : segment.getEgressBandwidth();
+            assert segment.getBeginning().equals(Instant.ofEpochSecond(Integer.parseInt(row.get(0))));
+            assert segment.getEnding().equals(Instant.ofEpochSecond(Integer.parseInt(row.get(1))));
+            assert bw.equals(Integer.parseInt(row.get(2)));
+            assert segment.getFreeVlans().equals(Integer.parseInt(row.get(3)));
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package net.es.oscars.cuke;
 
 import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.beans.PeriodVlan;
 import net.es.oscars.resv.ent.Design;
 import net.es.oscars.resv.ent.EroHop;
 import net.es.oscars.resv.ent.Vlan;
@@ -23,6 +24,7 @@ public class CucumberWorld {
     Map<BwDirection, Map<String, Integer>> bwBaseline = new HashMap<>();
 
     List<Vlan> reservedVlans;
+    Map<String, List<PeriodVlan>> periodVlans = new HashMap<>();
     Map<String, TopoUrn> topoBaseline ;
     Design design;
     Map<EroDirection, List<EroHop>> pipeEros;
@@ -1,30 +1,108 @@
 package net.es.oscars.cuke;
 
+import cucumber.api.java.en.Then;
 import cucumber.api.java.en.When;
 import lombok.extern.slf4j.Slf4j;
+import net.es.oscars.app.exc.PCEException;
 import net.es.oscars.ctg.UnitTests;
+import net.es.oscars.pce.AllPathsPCE;
+import net.es.oscars.pce.BandwidthAwarePCE;
+import net.es.oscars.pce.BandwidthContext;
+import net.es.oscars.pce.CompactPaths;
+import net.es.oscars.pce.DijkstraPCE;
+import net.es.oscars.pce.Disjointness;
+import net.es.oscars.pce.KShortestPathIterator;
+import net.es.oscars.pce.PathCache;
+import net.es.oscars.pce.PathEvaluation;
+import net.es.oscars.pce.PathWarmer;
+import net.es.oscars.pce.PceBudget;
+import net.es.oscars.pce.PceService;
+import net.es.oscars.pce.SchedulePCE;
+import net.es.oscars.pce.ShortestPathAlgorithm;
 import net.es.oscars.pce.PceLibrary;
+import net.es.oscars.pce.db.HotPairRepository;
+import net.es.oscars.pce.ent.HotPair;
+import net.es.oscars.resv.beans.PeriodBandwidth;
+import net.es.oscars.resv.ent.EroHop;
+import net.es.oscars.resv.ent.VlanJunction;
+import net.es.oscars.resv.ent.VlanPipe;
+import net.es.oscars.resv.enums.BwDirection;
+import net.es.oscars.resv.svc.ResvLibrary;
+import net.es.oscars.topo.beans.CompactTopo;
 import net.es.oscars.topo.beans.TopoAdjcy;
+import net.es.oscars.topo.beans.TopoMetrics;
+import net.es.oscars.topo.beans.TopoSnapshot;
 import net.es.oscars.topo.beans.TopoUrn;
+import net.es.oscars.topo.enums.UrnType;
+import net.es.oscars.topo.svc.TopoMetricsService;
 import net.es.oscars.topo.svc.TopoService;
+import net.es.oscars.web.beans.*;
 import org.jgrapht.GraphPath;
 import org.jgrapht.alg.shortestpath.AllDirectedPaths;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.alg.shortestpath.GraphMeasurer;
+import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.junit.experimental.categories.Category;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 @Category({UnitTests.class})
 public class FancyPCESteps extends CucumberSteps {
     @Autowired
     private TopoService topoService;
+    @Autowired
+    private AllPathsPCE allPathsPCE;
+    @Autowired
+    private BandwidthAwarePCE bandwidthAwarePCE;
+    @Autowired
+    private DijkstraPCE dijkstraPCE;
+    @Autowired
+    private PathCache pathCache;
+    @Autowired
+    private TopoMetricsService topoMetricsService;
+    @Autowired
+    private PceService pceService;
+    @Autowired
+    private SchedulePCE schedulePCE;
+    @Autowired
+    private PathWarmer pathWarmer;
+    @Autowired
+    private HotPairRepository hotPairRepo;
+
+    @Value("#{new Double('${pce.long-path-ratio}')}")
+    private Double longPathRatio;
+    @Value("${pce.long-path-detour:9}")
+    private Integer longPathDetour;
+    @Value("${pce.short-path-detour:15}")
+    private Integer shortPathDetour;
+
+    private List<PcePath> perPathBaseline;
+    private List<PcePath> withContext;
+    private List<List<GraphPath<TopoUrn, TopoAdjcy>>> concurrentLookups;
+    private long cacheLoads;
+    private PceBatchResponse batchResponse;
+    private List<PceResponse> oneByOne;
+    private PceResponse protectedResponse;
+    private MultipointPceResponse tree;
+    private List<String> treeDevices;
+    private PceResponse enumerated;
+    private PceResponse bandwidthAware;
+
+    private List<Double> lazyCosts;
+    private List<Double> exhaustiveCosts;
 
     @When("^I ask for all paths from \"([^\"]*)\" to \"([^\"]*)\" with a relaxation radius of (\\d+)$")
     public void i_ask_for_all_paths_from_to_with_maximum_length_of(String a, String z, int radius) throws Throwable {
@@ -67,4 +145,1126 @@ public class FancyPCESteps extends CucumberSteps {
     }
 
 
-}
\ No newline at end of file
+    @When("^I ask for the (\\d+) least-cost paths from \"([^\"]*)\" to \"([^\"]*)\" with a relaxation radius of (\\d+)$")
+    public void i_ask_for_the_least_cost_paths(int k, String a, String z, int radius) throws Throwable {
+        List<TopoAdjcy> topoAdjcies = topoService.getTopoAdjcies();
+        TopoUrn src = topoService.getTopoUrnMap().get(a);
+        TopoUrn dst = topoService.getTopoUrnMap().get(z);
+
+        Map<TopoAdjcy, Double> costs = new HashMap<>();
+        for (TopoAdjcy adjcy : topoAdjcies) {
+            double cost = 0;
+            for (Long metric : adjcy.getMetrics().values()) {
+                if (metric > cost) {
+                    cost = metric.doubleValue();
+                }
+            }
+            costs.put(adjcy, cost);
+        }
+
+        DirectedWeightedMultigraph<TopoUrn, TopoAdjcy> graph = PceLibrary.makeGraph(topoAdjcies, costs);
+        int length = radius + new DijkstraShortestPath<>(graph).getPath(src, dst).getLength();
+
+        Instant start = Instant.now();
+        KShortestPathIterator<TopoUrn, TopoAdjcy> lazy = new KShortestPathIterator<>(graph, src, dst, length, 100000);
+        lazyCosts = new ArrayList<>();
+        while (lazy.hasNext() && lazyCosts.size() < k) {
+            lazyCosts.add(lazy.next().getWeight());
+        }
+        Instant end = Instant.now();
+        log.info(lazyCosts.size() + " least-cost paths between " + a + " and " + z + " found in " + Duration.between(start, end));
+
+        start = Instant.now();
+        exhaustiveCosts = new ArrayList<>();
+        for (GraphPath<TopoUrn, TopoAdjcy> path : new AllDirectedPaths<>(graph).getAllPaths(src, dst, true, length)) {
+            // AllDirectedPaths weighs its paths by edge count
+            double cost = 0;
+            for (TopoAdjcy adjcy : path.getEdgeList()) {
+                cost += costs.get(adjcy);
+            }
+            exhaustiveCosts.add(cost);
+        }
+        Collections.sort(exhaustiveCosts);
+        end = Instant.now();
+        log.info(exhaustiveCosts.size() + " paths between " + a + " and " + z + " enumerated in " + Duration.between(start, end));
+    }
+
+    @Then("^least-cost paths match the exhaustive enumeration on (\\d+) random graphs with zero-cost links$")
+    public void least_cost_paths_with_zero_cost_links(int graphs) throws Throwable {
+        Random random = new Random(11);
+        for (int g = 0; g < graphs; g++) {
+            DirectedWeightedMultigraph<Integer, DefaultWeightedEdge> graph =
+                    new DirectedWeightedMultigraph<>(DefaultWeightedEdge.class);
+            for (int v = 0; v < 8; v++) {
+                graph.addVertex(v);
+            }
+            for (int i = 0; i < 24; i++) {
+                int u = random.nextInt(8);
+                int w = random.nextInt(8);
+                if (u != w) {
+                    // mostly zero-cost, so zero-cost cycles are common
+                    graph.setEdgeWeight(graph.addEdge(u, w), random.nextInt(4) < 3 ? 0 : random.nextInt(3) + 1);
+                }
+            }
+            int length = 5;
+            List<Double> lazy = new ArrayList<>();
+            KShortestPathIterator<Integer, DefaultWeightedEdge> paths = new KShortestPathIterator<>(graph, 0, 7, length, 100000);
+            while (paths.hasNext()) {
+                GraphPath<Integer, DefaultWeightedEdge> path = paths.next();
+                assert new HashSet<>(path.getVertexList()).size() == path.getVertexList().size();
+                assert path.getLength() <= length;
+                lazy.add(path.getWeight());
+            }
+            List<Double> exhaustive = new ArrayList<>();
+            for (GraphPath<Integer, DefaultWeightedEdge> path : new AllDirectedPaths<>(graph).getAllPaths(0, 7, true, length)) {
+                double cost = 0;
+                for (DefaultWeightedEdge e : path.getEdgeList()) {
+                    cost += graph.getEdgeWeight(e);
+                }
+                exhaustive.add(cost);
+            }
+            Collections.sort(exhaustive);
+            assert lazy.equals(exhaustive);
+        }
+    }
+
+    @Then("^the least-cost paths match the exhaustive enumeration$")
+    public void the_least_cost_paths_match_the_exhaustive_enumeration() throws Throwable {
+        assert !lazyCosts.isEmpty();
+        assert lazyCosts.size() <= exhaustiveCosts.size();
+        for (int i = 0; i < lazyCosts.size(); i++) {
+            assert lazyCosts.get(i).equals(exhaustiveCosts.get(i));
+        }
+    }
+
+    @When("^I compare the PCE engines from \"([^\"]*)\" to \"([^\"]*)\" with az: (\\d+) and za: (\\d+) on a randomly loaded network$")
+    public void i_compare_the_pce_engines(String a, String z, int azBw, int zaBw) throws Throwable {
+        Map<String, TopoUrn> baseline = topoService.getTopoUrnMap();
+        Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, baseline, new HashMap<>());
+        Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
+
+        // load every port to a random fraction of its capacity, same way on every run
+        Random random = new Random(42);
+        for (String urn : new TreeSet<>(availIngressBw.keySet())) {
+            availIngressBw.put(urn, availIngressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+            availEgressBw.put(urn, availEgressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+        }
+
+        VlanPipe vp = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(a).deviceUrn(a).build())
+                .z(VlanJunction.builder().refId(z).deviceUrn(z).build())
+                .protect(false)
+                .azBandwidth(azBw)
+                .zaBandwidth(zaBw).build();
+
+        Instant start = Instant.now();
+        enumerated = allPathsPCE.calculatePaths(vp, availIngressBw, availEgressBw, new ArrayList<>(), new HashSet<>());
+        Instant end = Instant.now();
+        log.info("all-paths PCE: " + enumerated.getEvaluated() + " paths evaluated in " + Duration.between(start, end));
+
+        start = Instant.now();
+        bandwidthAware = bandwidthAwarePCE.calculatePaths(vp, availIngressBw, availEgressBw, new HashSet<>());
+        end = Instant.now();
+        log.info("bandwidth-aware PCE: " + bandwidthAware.getEvaluated() + " paths evaluated in " + Duration.between(start, end));
+    }
+
+    @Then("^the bandwidth-aware PCE answers are at least as good$")
+    public void the_bandwidth_aware_pce_answers_are_at_least_as_good() throws Throwable {
+        // the enumerating engine only looks within a detour radius, so it can never do better
+        assert bandwidthAware.getWidestAZ().getAzAvailable() >= enumerated.getWidestAZ().getAzAvailable();
+        assert bandwidthAware.getWidestZA().getZaAvailable() >= enumerated.getWidestZA().getZaAvailable();
+        PcePath bawSum = bandwidthAware.getWidestSum();
+        PcePath enumSum = enumerated.getWidestSum();
+        assert bawSum.getAzAvailable() + bawSum.getZaAvailable() >= enumSum.getAzAvailable() + enumSum.getZaAvailable();
+        if (enumerated.getFits() != null) {
+            assert bandwidthAware.getFits() != null;
+            assert bandwidthAware.getFits().getCost() <= enumerated.getFits().getCost();
+        }
+    }
+
+    @When("^I ask for constrained paths from \"([^\"]*)\" to \"([^\"]*)\" through the middle of the shortest path, avoiding its first link$")
+    public void i_ask_for_constrained_paths(String a, String z) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, baseline, new HashMap<>());
+        Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
+        Random random = new Random(42);
+        for (String urn : new TreeSet<>(availIngressBw.keySet())) {
+            availIngressBw.put(urn, availIngressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+            availEgressBw.put(urn, availEgressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+        }
+        VlanPipe vp = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(a).deviceUrn(a).build())
+                .z(VlanJunction.builder().refId(z).deviceUrn(z).build())
+                .protect(false)
+                .azBandwidth(5000)
+                .zaBandwidth(5000).build();
+
+        TopoUrn src = baseline.get(a);
+        TopoUrn dst = baseline.get(z);
+        List<EroHop> shortest = dijkstraPCE.shortestPath(snapshot, src, dst).getAzEro();
+        List<String> include = Collections.singletonList(shortest.get(3 * (shortest.size() / 6)).getUrn());
+        Set<String> exclude = new HashSet<>(Arrays.asList(shortest.get(1).getUrn(), shortest.get(2).getUrn()));
+
+        pathCache.invalidate();
+        Instant start = Instant.now();
+        PceResponse unconstrained = allPathsPCE.calculatePaths(vp, availIngressBw, availEgressBw, new ArrayList<>(), new HashSet<>());
+        Duration unconstrainedTime = Duration.between(start, Instant.now());
+
+        pathCache.invalidate();
+        start = Instant.now();
+        PceResponse constrained = allPathsPCE.calculatePaths(vp, availIngressBw, availEgressBw, include, exclude);
+        Duration constrainedTime = Duration.between(start, Instant.now());
+        log.info("through " + include + " avoiding " + exclude + ": " + constrained.getEvaluated() + " paths in " +
+                constrainedTime + "; unconstrained " + unconstrained.getEvaluated() + " paths in " + unconstrainedTime);
+
+        // reference: filter every path of the same maximum length, as AllPathsPCE used to
+        int shortestLength = shortest.size();
+        double diameter = topoMetricsService.metrics(snapshot).getDiameter();
+        int maxLength = shortestLength + (shortestLength / diameter > longPathRatio ? longPathDetour : shortPathDetour);
+        BandwidthContext bandwidths = BandwidthContext.of(snapshot, availIngressBw, availEgressBw);
+        PathEvaluation expected = new PathEvaluation(5000, 5000);
+        for (GraphPath<TopoUrn, TopoAdjcy> path : pathCache.paths(snapshot, src, dst, maxLength)) {
+            List<EroHop> azEro = PceLibrary.toEro(path);
+            if (azEro == null) {
+                continue;
+            }
+            List<String> urns = new ArrayList<>();
+            azEro.forEach(h -> urns.add(h.getUrn()));
+            if (!urns.contains(include.get(0)) || urns.stream().anyMatch(exclude::contains)) {
+                continue;
+            }
+            List<EroHop> zaEro = new ArrayList<>(azEro);
+            Collections.reverse(zaEro);
+            PcePath pcePath = PcePath.builder().azEro(azEro).zaEro(zaEro).build();
+            bandwidths.pathBandwidths(pcePath);
+            PceLibrary.pathCost(pcePath, path, snapshot.getMetricCosts());
+            expected.consider(pcePath);
+        }
+
+        assert constrained.getConsidered() == expected.getEvaluated();
+        assert constrained.getConsidered() > 0;
+        assert constrained.getConsidered() < unconstrained.getConsidered();
+        assert constrained.getWidestAZ().getAzAvailable().equals(expected.getWidestAZ().getAzAvailable());
+        assert constrained.getWidestZA().getZaAvailable().equals(expected.getWidestZA().getZaAvailable());
+        assert constrained.getWidestSum().getAzAvailable() + constrained.getWidestSum().getZaAvailable() ==
+                expected.getWidestSum().getAzAvailable() + expected.getWidestSum().getZaAvailable();
+        assert (constrained.getFits() == null) == (expected.getFits() == null);
+        if (expected.getFits() != null) {
+            assert constrained.getFits().getCost() == expected.getFits().getCost();
+        }
+        for (PcePath path : Arrays.asList(constrained.getWidestAZ(), constrained.getWidestZA(), constrained.getWidestSum())) {
+            List<String> urns = new ArrayList<>();
+            path.getAzEro().forEach(h -> urns.add(h.getUrn()));
+            assert urns.contains(include.get(0));
+            assert urns.stream().noneMatch(exclude::contains);
+        }
+    }
+
+    @When("^I ask for paths from \"([^\"]*)\" to \"([^\"]*)\" with a budget of (\\d+) ms and (\\d+) paths, the result is (partial|complete)$")
+    public void i_ask_for_paths_with_a_budget(String a, String z, long millis, int paths, String outcome) throws Throwable {
+        Map<String, TopoUrn> baseline = topoService.getTopoUrnMap();
+        Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, baseline, new HashMap<>());
+        Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
+        Random random = new Random(42);
+        for (String urn : new TreeSet<>(availIngressBw.keySet())) {
+            availIngressBw.put(urn, availIngressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+            availEgressBw.put(urn, availEgressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+        }
+        VlanPipe vp = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(a).deviceUrn(a).build())
+                .z(VlanJunction.builder().refId(z).deviceUrn(z).build())
+                .protect(false)
+                .azBandwidth(5000)
+                .zaBandwidth(5000).build();
+
+        pathCache.invalidate();
+        Instant start = Instant.now();
+        PceResponse budgeted = allPathsPCE.calculatePaths(vp, availIngressBw, availEgressBw,
+                new ArrayList<>(), new HashSet<>(), PceBudget.of(millis, paths));
+        Duration budgetedTime = Duration.between(start, Instant.now());
+        // the budget doesn't change the engine, so the enumeration is cached all the same
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        TopoUrn src = baseline.get(a);
+        TopoUrn dst = baseline.get(z);
+        assert pathCache.cached(snapshot, src, dst, allPathsPCE.maxLength(snapshot, src, dst)) != null;
+        start = Instant.now();
+        PceResponse unlimited = allPathsPCE.calculatePaths(vp, availIngressBw, availEgressBw,
+                new ArrayList<>(), new HashSet<>(), PceBudget.unlimited());
+        Duration unlimitedTime = Duration.between(start, Instant.now());
+        log.info("budget of " + millis + " ms / " + paths + " paths: " + budgeted.getEvaluated() + " paths in " +
+                budgetedTime + ", partial " + budgeted.getPartial() + "; unlimited " + unlimited.getEvaluated() +
+                " paths in " + unlimitedTime);
+
+        assert !unlimited.getPartial();
+        assert budgeted.getWidestAZ() != null && budgeted.getWidestZA() != null && budgeted.getWidestSum() != null;
+        assert budgeted.getWidestAZ().getAzAvailable() <= unlimited.getWidestAZ().getAzAvailable();
+        assert budgeted.getWidestZA().getZaAvailable() <= unlimited.getWidestZA().getZaAvailable();
+        if (outcome.equals("partial")) {
+            assert budgeted.getPartial();
+            if (paths > 0) {
+                // plus the shortest and least-hops paths
+                assert budgeted.getConsidered() <= paths + 2;
+            }
+        } else {
+            // the same paths are found
+            assert !budgeted.getPartial();
+            assert budgeted.getConsidered().equals(unlimited.getConsidered());
+            assert budgeted.getWidestAZ().getAzAvailable().equals(unlimited.getWidestAZ().getAzAvailable());
+            assert budgeted.getWidestZA().getZaAvailable().equals(unlimited.getWidestZA().getZaAvailable());
+            assert budgeted.getFits().getCost() == unlimited.getFits().getCost();
+        }
+    }
+
+    @When("^I ask the bandwidth-aware PCE for paths from \"([^\"]*)\" to \"([^\"]*)\" with a budget of (\\d+) ms and (\\d+) paths, the result is (partial|complete)$")
+    public void i_ask_the_bandwidth_aware_pce_with_a_budget(String a, String z, long millis, int paths, String outcome) throws Throwable {
+        Map<String, TopoUrn> baseline = topoService.getTopoUrnMap();
+        Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, baseline, new HashMap<>());
+        Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
+        VlanPipe vp = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(a).deviceUrn(a).build())
+                .z(VlanJunction.builder().refId(z).deviceUrn(z).build())
+                .protect(false)
+                .azBandwidth(5000)
+                .zaBandwidth(5000).build();
+
+        PceStatsSummary before = pceService.stats();
+        PceResponse budgeted = bandwidthAwarePCE.calculatePaths(vp, availIngressBw, availEgressBw,
+                new HashSet<>(), PceBudget.of(millis, paths));
+        PceResponse unlimited = bandwidthAwarePCE.calculatePaths(vp, availIngressBw, availEgressBw, new HashSet<>());
+        PceStatsSummary after = pceService.stats();
+        log.info("bandwidth-aware, budget of " + millis + " ms / " + paths + " paths: " + budgeted.getConsidered() +
+                " paths considered, partial " + budgeted.getPartial() + "; unlimited " + unlimited.getConsidered());
+
+        // explained and counted like every other engine
+        assert after.getRequests() == before.getRequests() + 2;
+        PceExplanation explanation = budgeted.getExplanation();
+        double sum = 0;
+        for (PcePhase phase : PcePhase.values()) {
+            assert explanation.getPhaseMillis().get(phase) >= 0;
+            sum += explanation.getPhaseMillis().get(phase);
+        }
+        assert Math.abs(sum - explanation.getTotalMillis()) < 0.001;
+        assert explanation.getCacheHit() == null;
+
+        assert !unlimited.getPartial();
+        assert budgeted.getWidestAZ() != null && budgeted.getWidestZA() != null && budgeted.getWidestSum() != null;
+        assert budgeted.getWidestAZ().getAzAvailable() <= unlimited.getWidestAZ().getAzAvailable();
+        assert budgeted.getWidestZA().getZaAvailable() <= unlimited.getWidestZA().getZaAvailable();
+        if (outcome.equals("partial")) {
+            assert budgeted.getPartial();
+            // plus the shortest and least-hops paths
+            assert budgeted.getConsidered() <= paths + 2;
+        } else {
+            assert !budgeted.getPartial();
+            assert budgeted.getConsidered().equals(unlimited.getConsidered());
+            assert budgeted.getWidestAZ().getAzAvailable().equals(unlimited.getWidestAZ().getAzAvailable());
+            assert budgeted.getWidestZA().getZaAvailable().equals(unlimited.getWidestZA().getZaAvailable());
+            assert budgeted.getFits().getCost() == unlimited.getFits().getCost();
+        }
+    }
+
+    @Then("^the snapshot shortest path from \"([^\"]*)\" to \"([^\"]*)\" is cheapest and its least-hops path is shortest$")
+    public void the_snapshot_shortest_and_least_hops_paths(String a, String z) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        assert snapshot != null;
+        assert snapshot.getVersion().getId().equals(topoService.getCurrent().getId());
+        TopoUrn src = snapshot.getTopoUrnMap().get(a);
+        TopoUrn dst = snapshot.getTopoUrnMap().get(z);
+
+        PcePath shortest = dijkstraPCE.shortestPath(snapshot, src, dst);
+        PcePath leastHops = dijkstraPCE.leastHopsPath(snapshot, src, dst);
+        double leastHopsCost = 0;
+        for (int i = 0; i < leastHops.getAzEro().size() - 1; i++) {
+            String from = leastHops.getAzEro().get(i).getUrn();
+            String to = leastHops.getAzEro().get(i + 1).getUrn();
+            double cheapest = Double.MAX_VALUE;
+            for (TopoAdjcy adjcy : snapshot.getTopoAdjcies()) {
+                if (adjcy.getA().getUrn().equals(from) && adjcy.getZ().getUrn().equals(to)) {
+                    cheapest = Math.min(cheapest, snapshot.getMetricCosts().get(adjcy));
+                }
+            }
+            leastHopsCost += cheapest;
+        }
+        log.info("shortest: " + shortest.getCost() + " / " + shortest.getAzEro().size() + " hops, least hops: "
+                + leastHopsCost + " / " + leastHops.getAzEro().size() + " hops");
+        assert shortest.getCost() <= leastHopsCost;
+        assert leastHops.getAzEro().size() <= shortest.getAzEro().size();
+        assert leastHops.getCost() == leastHops.getAzEro().size() - 1;
+    }
+
+    @Then("^the compact graph searches agree with jgrapht for all device pairs$")
+    public void the_compact_graph_searches_agree_with_jgrapht() throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        CompactTopo topo = snapshot.getCompact();
+        Map<String, Integer> avail = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, snapshot.getTopoUrnMap(), new HashMap<>());
+        Random random = new Random(7);
+        for (String urn : new TreeSet<>(avail.keySet())) {
+            avail.put(urn, random.nextInt(100) * 1000);
+        }
+        int[] perVertex = topo.perVertex(avail);
+        int[] capacity = CompactPaths.capacities(topo, perVertex, perVertex, true);
+
+        List<String> devices = new ArrayList<>();
+        for (int v = 0; v < topo.getVertexCount(); v++) {
+            if (topo.getDevices()[v]) {
+                devices.add(topo.getUrns()[v]);
+            }
+        }
+        Instant start = Instant.now();
+        DijkstraShortestPath<TopoUrn, TopoAdjcy> byMetric = new DijkstraShortestPath<>(snapshot.getByMetricGraph());
+        DijkstraShortestPath<TopoUrn, TopoAdjcy> byHops = new DijkstraShortestPath<>(snapshot.getByHopsGraph());
+        int pairs = 0;
+        for (String a : devices) {
+            for (String z : devices) {
+                if (a.equals(z)) {
+                    continue;
+                }
+                pairs++;
+                int s = topo.indexOf(a);
+                int d = topo.indexOf(z);
+                TopoUrn src = snapshot.getTopoUrnMap().get(a);
+                TopoUrn dst = snapshot.getTopoUrnMap().get(z);
+
+                int[] path = CompactPaths.shortestPath(topo, s, d, topo.getMetrics(), null, null);
+                double expected = byMetric.getPathWeight(src, dst);
+                if (path == null) {
+                    assert expected == Double.POSITIVE_INFINITY;
+                    continue;
+                }
+                assert CompactPaths.cost(path, topo.getMetrics()) == expected;
+                int[] hops = CompactPaths.shortestPath(topo, s, d, null, null, null);
+                assert hops.length == byHops.getPathWeight(src, dst);
+
+                // the widest path is usable at its width, and nothing is usable above it
+                int width = CompactPaths.widest(topo, s, d, capacity, null, null);
+                assert CompactPaths.shortestPath(topo, s, d, null, null, below(capacity, width)) != null;
+                if (width < Integer.MAX_VALUE) {
+                    assert CompactPaths.shortestPath(topo, s, d, null, null, below(capacity, width + 1)) == null;
+                }
+            }
+        }
+        log.info("compact searches checked for " + pairs + " device pairs in " + Duration.between(start, Instant.now()));
+    }
+
+    private boolean[] below(int[] capacity, int minimum) {
+        boolean[] mask = new boolean[capacity.length];
+        for (int e = 0; e < capacity.length; e++) {
+            mask[e] = capacity[e] < minimum;
+        }
+        return mask;
+    }
+
+    @When("^I benchmark path bandwidths from \"([^\"]*)\" to \"([^\"]*)\" with a relaxation radius of (\\d+)$")
+    public void i_benchmark_path_bandwidths(String a, String z, int radius) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, baseline, new HashMap<>());
+        Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, baseline, new HashMap<>());
+        Random random = new Random(42);
+        for (String urn : new TreeSet<>(availIngressBw.keySet())) {
+            availIngressBw.put(urn, availIngressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+            availEgressBw.put(urn, availEgressBw.get(urn) * (random.nextInt(10) + 1) / 10);
+        }
+
+        TopoUrn src = baseline.get(a);
+        TopoUrn dst = baseline.get(z);
+        int length = radius + new DijkstraShortestPath<>(snapshot.getByHopsGraph()).getPath(src, dst).getLength();
+        List<PcePath> paths = new ArrayList<>();
+        for (GraphPath<TopoUrn, TopoAdjcy> path : new AllDirectedPaths<>(snapshot.getByHopsGraph()).getAllPaths(src, dst, true, length)) {
+            if (PceLibrary.toEro(path) != null) {
+                paths.add(PcePath.builder().azEro(PceLibrary.toEro(path)).zaEro(reversed(PceLibrary.toEro(path))).build());
+            }
+        }
+
+        // the old way: recompute network-wide baseline maps for every path
+        perPathBaseline = new ArrayList<>();
+        Instant start = Instant.now();
+        for (PcePath path : paths) {
+            PcePath copy = PcePath.builder().azEro(path.getAzEro()).zaEro(path.getZaEro()).build();
+            PceLibrary.pathBandwidths(copy, baseline, availIngressBw, availEgressBw);
+            perPathBaseline.add(copy);
+        }
+        Duration perPath = Duration.between(start, Instant.now());
+
+        withContext = new ArrayList<>();
+        start = Instant.now();
+        BandwidthContext context = BandwidthContext.of(snapshot, availIngressBw, availEgressBw);
+        for (PcePath path : paths) {
+            PcePath copy = PcePath.builder().azEro(path.getAzEro()).zaEro(path.getZaEro()).build();
+            context.pathBandwidths(copy);
+            withContext.add(copy);
+        }
+        Duration once = Duration.between(start, Instant.now());
+
+        log.info("path bandwidths for " + paths.size() + " paths: per-path baseline " + perPath +
+                ", request context " + once + " (" + (perPath.toNanos() / Math.max(1, once.toNanos())) + "x)");
+    }
+
+    @Then("^both path bandwidth evaluations agree$")
+    public void both_path_bandwidth_evaluations_agree() throws Throwable {
+        assert !withContext.isEmpty();
+        assert perPathBaseline.size() == withContext.size();
+        for (int i = 0; i < withContext.size(); i++) {
+            PcePath expected = perPathBaseline.get(i);
+            PcePath actual = withContext.get(i);
+            assert expected.getAzAvailable().equals(actual.getAzAvailable());
+            assert expected.getZaAvailable().equals(actual.getZaAvailable());
+            assert expected.getAzBaseline().equals(actual.getAzBaseline());
+            assert expected.getZaBaseline().equals(actual.getZaBaseline());
+        }
+    }
+
+    @When("^(\\d+) callers look up the paths from \"([^\"]*)\" to \"([^\"]*)\" with max length (\\d+) at once$")
+    public void callers_look_up_the_paths_at_once(int callers, String a, String z, int maxLength) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        TopoUrn src = snapshot.getTopoUrnMap().get(a);
+        TopoUrn dst = snapshot.getTopoUrnMap().get(z);
+        long loads = pathCache.stats().loadCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<GraphPath<TopoUrn, TopoAdjcy>>>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return pathCache.paths(snapshot, src, dst, maxLength);
+            }));
+        }
+        start.countDown();
+        concurrentLookups = new ArrayList<>();
+        for (Future<List<GraphPath<TopoUrn, TopoAdjcy>>> future : futures) {
+            concurrentLookups.add(future.get());
+        }
+        executor.shutdown();
+
+        // callers that wait for an in-flight load count as misses, so count the loads instead
+        cacheLoads = pathCache.stats().loadCount() - loads;
+        log.info(callers + " concurrent lookups: " + cacheLoads + " loads; " + pathCache.stats());
+    }
+
+    @Then("^the paths were computed once and shared by all callers$")
+    public void the_paths_were_computed_once_and_shared() throws Throwable {
+        assert cacheLoads == 1;
+        assert !concurrentLookups.get(0).isEmpty();
+        for (List<GraphPath<TopoUrn, TopoAdjcy>> paths : concurrentLookups) {
+            assert paths == concurrentLookups.get(0);
+        }
+        assert pathCache.size() == 1;
+    }
+
+    @When("^the topology version is bumped$")
+    public void the_topology_version_is_bumped() throws Throwable {
+        topoService.bumpVersion();
+    }
+
+    @When("^paths from \"([^\"]*)\" to \"([^\"]*)\" are requested (\\d+) times and saved$")
+    public void paths_are_requested_and_saved(String a, String z, int times) throws Throwable {
+        // earlier scenarios may have left requests unsaved
+        pathWarmer.save();
+        long before = hotPairRepo.findBySrcAndDst(a, z).map(HotPair::getRequests).orElse(0L);
+        for (int i = 0; i < times; i++) {
+            pathWarmer.record(a, z);
+        }
+        pathWarmer.save();
+        // saving again adds nothing
+        pathWarmer.save();
+        assert hotPairRepo.findBySrcAndDst(a, z).get().getRequests() == before + times;
+    }
+
+    @Then("^after the topology is reloaded the paths of every hot pair between known devices are cached$")
+    public void the_hot_pairs_are_warmed() throws Throwable {
+        topoService.bumpVersion();
+        topoService.updateInMemoryTopo();
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        assert pathCache.size() == 0;
+
+        Instant start = Instant.now();
+        int warmed = pathWarmer.warm(snapshot).join();
+        log.info("warmed " + warmed + " pairs in " + Duration.between(start, Instant.now()));
+
+        // other scenarios record pairs too
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        int known = 0;
+        for (HotPair hotPair : hotPairRepo.findAll()) {
+            TopoUrn src = baseline.get(hotPair.getSrc());
+            TopoUrn dst = baseline.get(hotPair.getDst());
+            if (src == null || dst == null) {
+                continue;
+            }
+            known++;
+            int maxLength = allPathsPCE.maxLength(snapshot, src, dst);
+            assert pathCache.cached(snapshot, src, dst, maxLength) != null;
+        }
+        assert known >= 2;
+        assert warmed == known;
+        assert pathCache.size() == known;
+    }
+
+    @Then("^there is no enumeration length limit between \"([^\"]*)\" and \"([^\"]*)\"$")
+    public void there_is_no_enumeration_length_limit(String a, String z) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        Map<String, TopoUrn> baseline = snapshot.getTopoUrnMap();
+        try {
+            allPathsPCE.maxLength(snapshot, baseline.get(a), baseline.get(z));
+            assert false;
+        } catch (PCEException ex) {
+            log.info(ex.getMessage());
+        }
+    }
+
+    @When("^I stream paths from \"([^\"]*)\" to \"([^\"]*)\" with az: (\\d+) and za: (\\d+), protected: (true|false)$")
+    public void i_stream_paths(String a, String z, int azBw, int zaBw, boolean protect) throws Throwable {
+        Interval interval = Interval.builder()
+                .beginning(Instant.now().plus(1, ChronoUnit.HOURS))
+                .ending(Instant.now().plus(2, ChronoUnit.HOURS))
+                .build();
+        PceRequest request = PceRequest.builder().interval(interval)
+                .a(a).z(z).azBw(azBw).zaBw(zaBw).protect(protect)
+                .build();
+        pathCache.invalidate();
+
+        List<PceUpdate> updates = Collections.synchronizedList(new ArrayList<>());
+        List<Instant> received = Collections.synchronizedList(new ArrayList<>());
+        Instant start = Instant.now();
+        PceResponse response = pceService.streamPaths(request, update -> {
+            updates.add(update);
+            received.add(Instant.now());
+        }).join();
+        Instant done = Instant.now();
+        log.info(updates.size() + " updates streamed; first after " + Duration.between(start, received.get(0)) +
+                ", complete response after " + Duration.between(start, done));
+
+        // shortest and least-hops come first, before any path is evaluated
+        assert updates.get(0).getType().equals(PceUpdateType.SHORTEST);
+        assert updates.get(1).getType().equals(PceUpdateType.LEAST_HOPS);
+        assert updates.get(0).getEvaluated() == 0 && updates.get(1).getEvaluated() == 0;
+        for (int i = 1; i < updates.size(); i++) {
+            assert updates.get(i).getEvaluated() >= updates.get(i - 1).getEvaluated();
+        }
+
+        // the last update of each kind is what the response has
+        Map<PceUpdateType, PcePath> latest = new HashMap<>();
+        updates.forEach(u -> latest.put(u.getType(), u.getPath()));
+        assert latest.get(PceUpdateType.SHORTEST) == response.getShortest();
+        assert latest.get(PceUpdateType.LEAST_HOPS) == response.getLeastHops();
+        assert latest.get(PceUpdateType.FITS) == response.getFits();
+        assert latest.get(PceUpdateType.WIDEST_SUM) == response.getWidestSum();
+        assert latest.get(PceUpdateType.WIDEST_AZ) == response.getWidestAZ();
+        assert latest.get(PceUpdateType.WIDEST_ZA) == response.getWidestZA();
+        assert latest.get(PceUpdateType.PRIMARY) == response.getPrimary();
+        assert latest.get(PceUpdateType.PROTECT) == response.getProtect();
+        assert !protect || response.getPrimary() != null;
+
+        // and widest paths only ever get wider
+        int widestAZ = -1;
+        for (PceUpdate update : updates) {
+            if (update.getType().equals(PceUpdateType.WIDEST_AZ)) {
+                assert update.getPath().getAzAvailable() >= widestAZ;
+                widestAZ = update.getPath().getAzAvailable();
+            }
+        }
+    }
+
+    @When("^I ask for explained paths from \"([^\"]*)\" to \"([^\"]*)\" with az: (\\d+) and za: (\\d+)$")
+    public void i_ask_for_explained_paths(String a, String z, int azBw, int zaBw) throws Throwable {
+        Interval interval = Interval.builder()
+                .beginning(Instant.now().plus(1, ChronoUnit.HOURS))
+                .ending(Instant.now().plus(2, ChronoUnit.HOURS))
+                .build();
+        PceRequest request = PceRequest.builder().interval(interval)
+                .a(a).z(z).azBw(azBw).zaBw(zaBw)
+                .build();
+        pathCache.invalidate();
+        PceStatsSummary before = pceService.stats();
+
+        // not asked for, not returned
+        assert pceService.calculatePaths(request).getExplanation() == null;
+        request.setExplain(true);
+        // a miss enumerates the paths and caches them for the next request
+        pathCache.invalidate();
+        PceExplanation missed = pceService.calculatePaths(request).getExplanation();
+        assert !missed.getCacheHit();
+
+        PceExplanation hit = pceService.calculatePaths(request).getExplanation();
+        log.info("explanation: " + hit);
+        assert hit.getCacheHit();
+        assert hit.getEvaluated().equals(missed.getEvaluated());
+        assert hit.getEnumerated().equals(missed.getEnumerated());
+        for (PceExplanation explanation : Arrays.asList(missed, hit)) {
+            double sum = 0;
+            for (PcePhase phase : PcePhase.values()) {
+                assert explanation.getPhaseMillis().get(phase) >= 0;
+                sum += explanation.getPhaseMillis().get(phase);
+            }
+            // every phase is charged its own time, and nothing is left out
+            assert Math.abs(sum - explanation.getTotalMillis()) < 0.001;
+        }
+        // a miss pays for the enumeration, a hit only for the lookup
+        assert missed.getPhaseMillis().get(PcePhase.ENUMERATION) > hit.getPhaseMillis().get(PcePhase.ENUMERATION);
+        assert hit.getEvaluated() > 0 && hit.getEnumerated() >= hit.getEvaluated();
+        assert hit.getMaxLength() > hit.getShortestLength();
+        assert hit.getPrunedByConstraints() == 0;
+        assert hit.getRejectedForBandwidth() <= hit.getEvaluated();
+
+        // no path has this much
+        request.setAzBw(Integer.MAX_VALUE);
+        PceExplanation narrow = pceService.calculatePaths(request).getExplanation();
+        assert narrow.getRejectedForBandwidth().equals(narrow.getEvaluated());
+        request.setAzBw(azBw);
+
+        // avoiding the first hop of the shortest path cuts search branches
+        PcePath shortest = pceService.calculatePaths(request).getShortest();
+        request.setExclude(Collections.singleton(shortest.getAzEro().get(1).getUrn()));
+        PceExplanation constrained = pceService.calculatePaths(request).getExplanation();
+        log.info("constrained explanation: " + constrained);
+        assert constrained.getCacheHit() == null;
+        assert constrained.getPrunedByConstraints() > 0;
+
+        PceStatsSummary after = pceService.stats();
+        log.info("stats: " + after);
+        assert after.getRequests() == before.getRequests() + 6;
+        assert after.getCacheHits() == before.getCacheHits() + 3;
+        assert after.getCacheMisses() == before.getCacheMisses() + 2;
+        assert after.getEvaluated() >= before.getEvaluated() + hit.getEvaluated() + narrow.getEvaluated();
+        assert after.getPrunedByConstraints() == before.getPrunedByConstraints() + constrained.getPrunedByConstraints();
+    }
+
+    @Then("^the path cache is empty$")
+    public void the_path_cache_is_empty() throws Throwable {
+        assert pathCache.size() == 0;
+    }
+
+    @Then("^the topology metrics agree with jgrapht$")
+    public void the_topology_metrics_agree_with_jgrapht() throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        TopoMetrics metrics = topoMetricsService.metrics(snapshot);
+        assert metrics.getVersion().getId().equals(snapshot.getVersion().getId());
+
+        GraphMeasurer<TopoUrn, TopoAdjcy> gm = new GraphMeasurer<>(snapshot.getByHopsGraph());
+        assert metrics.getDiameter() == gm.getDiameter();
+        Map<TopoUrn, Double> eccentricities = gm.getVertexEccentricityMap();
+
+        DijkstraShortestPath<TopoUrn, TopoAdjcy> byHops = new DijkstraShortestPath<>(snapshot.getByHopsGraph());
+        DijkstraShortestPath<TopoUrn, TopoAdjcy> byMetric = new DijkstraShortestPath<>(snapshot.getByMetricGraph());
+        int pairs = 0;
+        for (TopoUrn a : snapshot.getTopoUrnMap().values()) {
+            assert metrics.eccentricity(a.getUrn()) == eccentricities.get(a);
+            if (!a.getUrnType().equals(UrnType.DEVICE)) {
+                continue;
+            }
+            for (TopoUrn z : snapshot.getTopoUrnMap().values()) {
+                if (!z.getUrnType().equals(UrnType.DEVICE) || a == z) {
+                    continue;
+                }
+                GraphPath<TopoUrn, TopoAdjcy> hopsPath = byHops.getPath(a, z);
+                GraphPath<TopoUrn, TopoAdjcy> metricPath = byMetric.getPath(a, z);
+                double hops = hopsPath == null ? Double.POSITIVE_INFINITY : hopsPath.getWeight();
+                double metric = metricPath == null ? Double.POSITIVE_INFINITY : metricPath.getWeight();
+                assert metrics.hops(a.getUrn(), z.getUrn()) == hops;
+                assert metrics.metricDistance(a.getUrn(), z.getUrn()) == metric;
+                pairs++;
+            }
+        }
+        log.info("topology metrics: diameter " + metrics.getDiameter() + ", " + pairs + " device pairs checked");
+    }
+
+    @Then("^the ALT searches find the same paths as Dijkstra for all device pairs$")
+    public void the_alt_searches_find_the_same_paths_as_dijkstra() throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        List<TopoUrn> devices = new ArrayList<>();
+        for (TopoUrn urn : snapshot.getTopoUrnMap().values()) {
+            if (urn.getUrnType().equals(UrnType.DEVICE)) {
+                devices.add(urn);
+            }
+        }
+        Duration dijkstra = Duration.ZERO;
+        Duration alt = Duration.ZERO;
+        int pairs = 0;
+        for (TopoUrn a : devices) {
+            for (TopoUrn z : devices) {
+                if (a == z) {
+                    continue;
+                }
+                Instant start = Instant.now();
+                PcePath expected = dijkstraPCE.shortestPath(snapshot, a, z, ShortestPathAlgorithm.DIJKSTRA);
+                PcePath expectedHops = dijkstraPCE.leastHopsPath(snapshot, a, z, ShortestPathAlgorithm.DIJKSTRA);
+                Instant middle = Instant.now();
+                PcePath actual = dijkstraPCE.shortestPath(snapshot, a, z, ShortestPathAlgorithm.ALT);
+                PcePath actualHops = dijkstraPCE.leastHopsPath(snapshot, a, z, ShortestPathAlgorithm.ALT);
+                dijkstra = dijkstra.plus(Duration.between(start, middle));
+                alt = alt.plus(Duration.between(middle, Instant.now()));
+
+                assert expected.equals(actual);
+                assert expectedHops.equals(actualHops);
+                pairs++;
+            }
+        }
+        log.info("ALT vs Dijkstra: " + pairs + " device pairs; dijkstra " + dijkstra + ", alt " + alt);
+    }
+
+    @When("^I ask for paths in one batch and one by one between \"([^\"]*)\" with az: (\\d+) and za: (\\d+)$")
+    public void i_ask_for_paths_in_one_batch_and_one_by_one(String devices, int azBw, int zaBw) throws Throwable {
+        Interval interval = Interval.builder()
+                .beginning(Instant.now().plus(1, ChronoUnit.HOURS))
+                .ending(Instant.now().plus(2, ChronoUnit.HOURS))
+                .build();
+        List<PcePair> pairs = new ArrayList<>();
+        String[] urns = devices.split(",\\s*");
+        for (String a : urns) {
+            for (String z : urns) {
+                pairs.add(PcePair.builder().a(a).z(z).azBw(azBw).zaBw(zaBw).build());
+            }
+        }
+
+        Instant start = Instant.now();
+        batchResponse = pceService.calculatePaths(PceBatchRequest.builder().interval(interval).pairs(pairs).build());
+        Instant middle = Instant.now();
+        oneByOne = new ArrayList<>();
+        for (PcePair pair : pairs) {
+            PceRequest request = PceRequest.builder().interval(interval)
+                    .a(pair.getA()).z(pair.getZ()).azBw(azBw).zaBw(zaBw).build();
+            try {
+                oneByOne.add(pceService.calculatePaths(request));
+            } catch (PCEException ex) {
+                oneByOne.add(null);
+            }
+        }
+        log.info(pairs.size() + " pairs: batch " + Duration.between(start, middle) +
+                ", one by one " + Duration.between(middle, Instant.now()));
+    }
+
+    @Then("^the batch results match the one by one results$")
+    public void the_batch_results_match_the_one_by_one_results() throws Throwable {
+        List<PceBatchResult> results = batchResponse.getResults();
+        assert results.size() == oneByOne.size();
+        for (int i = 0; i < results.size(); i++) {
+            PceBatchResult result = results.get(i);
+            if (oneByOne.get(i) == null) {
+                assert result.getResponse() == null && result.getError() != null;
+            } else {
+                assert result.getError() == null;
+                assert result.getResponse().equals(oneByOne.get(i));
+            }
+        }
+    }
+
+    @When("^I ask for a \"([^\"]*)\" disjoint pair from \"([^\"]*)\" to \"([^\"]*)\" with az: (\\d+) and za: (\\d+)$")
+    public void i_ask_for_a_disjoint_pair(Disjointness disjointness, String a, String z, int azBw, int zaBw) throws Throwable {
+        Interval interval = Interval.builder()
+                .beginning(Instant.now().plus(1, ChronoUnit.HOURS))
+                .ending(Instant.now().plus(2, ChronoUnit.HOURS))
+                .build();
+        PceRequest request = PceRequest.builder().interval(interval)
+                .a(a).z(z).azBw(azBw).zaBw(zaBw)
+                .protect(true).disjointness(disjointness)
+                .build();
+        protectedResponse = pceService.calculatePaths(request);
+    }
+
+    @Then("^the pair is \"([^\"]*)\" disjoint, fits az: (\\d+) and za: (\\d+), and costs no more than two successive shortest paths$")
+    public void the_pair_is_disjoint(Disjointness disjointness, int azBw, int zaBw) throws Throwable {
+        PcePath primary = protectedResponse.getPrimary();
+        PcePath protect = protectedResponse.getProtect();
+        assert primary != null && protect != null;
+
+        List<String> primaryUrns = new ArrayList<>();
+        List<String> protectUrns = new ArrayList<>();
+        primary.getAzEro().forEach(h -> primaryUrns.add(h.getUrn()));
+        protect.getAzEro().forEach(h -> protectUrns.add(h.getUrn()));
+        assert primaryUrns.get(0).equals(protectUrns.get(0));
+        assert primaryUrns.get(primaryUrns.size() - 1).equals(protectUrns.get(protectUrns.size() - 1));
+        assert !primaryUrns.equals(protectUrns);
+
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        CompactTopo topo = snapshot.getCompact();
+        boolean[] vertexMask = new boolean[topo.getVertexCount()];
+        boolean[] edgeMask = new boolean[topo.getEdgeCount()];
+        Set<String> primaryLinks = new HashSet<>();
+        for (int i = 1; i < primaryUrns.size() - 1; i++) {
+            vertexMask[topo.indexOf(primaryUrns.get(i))] = true;
+            if (i % 3 == 1) {
+                primaryLinks.add(primaryUrns.get(i) + " " + primaryUrns.get(i + 1));
+                primaryLinks.add(primaryUrns.get(i + 1) + " " + primaryUrns.get(i));
+            }
+        }
+        for (int i = 1; i < protectUrns.size() - 1; i++) {
+            if (disjointness.equals(Disjointness.NODE)) {
+                assert !vertexMask[topo.indexOf(protectUrns.get(i))];
+            }
+            if (i % 3 == 1) {
+                assert !primaryLinks.contains(protectUrns.get(i) + " " + protectUrns.get(i + 1));
+            }
+        }
+        for (PcePath path : Arrays.asList(primary, protect)) {
+            assert path.getAzAvailable() >= azBw;
+            assert path.getZaAvailable() >= zaBw;
+        }
+
+        // the straightforward approach: the shortest path, then the shortest path avoiding it
+        TopoUrn src = snapshot.getTopoUrnMap().get(primaryUrns.get(0));
+        TopoUrn dst = snapshot.getTopoUrnMap().get(primaryUrns.get(primaryUrns.size() - 1));
+        PcePath first = dijkstraPCE.shortestPath(snapshot, src, dst);
+        vertexMask = new boolean[topo.getVertexCount()];
+        for (int i = 1; i < first.getAzEro().size() - 1; i++) {
+            if (disjointness.equals(Disjointness.NODE)) {
+                vertexMask[topo.indexOf(first.getAzEro().get(i).getUrn())] = true;
+            }
+        }
+        for (int e = 0; e < topo.getEdgeCount(); e++) {
+            String hop = topo.getUrns()[topo.getSources()[e]] + " " + topo.getUrns()[topo.getTargets()[e]];
+            for (int i = 1; i < first.getAzEro().size() - 2; i += 3) {
+                String a = first.getAzEro().get(i).getUrn();
+                String z = first.getAzEro().get(i + 1).getUrn();
+                if (hop.equals(a + " " + z) || hop.equals(z + " " + a)) {
+                    edgeMask[e] = true;
+                }
+            }
+        }
+        int[] second = CompactPaths.shortestPath(topo, topo.indexOf(src.getUrn()), topo.indexOf(dst.getUrn()),
+                topo.getMetrics(), vertexMask, edgeMask);
+        double pairCost = primary.getCost() + protect.getCost();
+        assert pairCost >= 2 * first.getCost();
+        if (second != null) {
+            double twoStep = first.getCost() + CompactPaths.cost(second, topo.getMetrics());
+            log.info(disjointness + "-disjoint pair cost " + pairCost + ", two-step cost " + twoStep);
+            assert pairCost <= twoStep;
+        }
+    }
+
+    @When("^I ask for a multipoint tree connecting (\\d+) devices with bandwidth (\\d+)$")
+    public void i_ask_for_a_multipoint_tree(int count, int bandwidth) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        List<String> devices = new ArrayList<>();
+        for (TopoUrn urn : snapshot.getTopoUrnMap().values()) {
+            if (urn.getUrnType().equals(UrnType.DEVICE)) {
+                devices.add(urn.getUrn());
+            }
+        }
+        Collections.sort(devices);
+        treeDevices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            treeDevices.add(devices.get(i * devices.size() / count));
+        }
+        Interval interval = Interval.builder()
+                .beginning(Instant.now().plus(1, ChronoUnit.HOURS))
+                .ending(Instant.now().plus(2, ChronoUnit.HOURS))
+                .build();
+        Instant start = Instant.now();
+        tree = pceService.calculateTree(MultipointPceRequest.builder()
+                .interval(interval)
+                .devices(treeDevices)
+                .bandwidth(bandwidth)
+                .build());
+        log.info("multipoint tree for " + count + " devices: cost " + tree.getCost() +
+                ", " + tree.getPipes().size() + " pipes, in " + Duration.between(start, Instant.now()));
+    }
+
+    @Then("^the multipoint tree connects every device without reusing a port$")
+    public void the_multipoint_tree_connects_every_device() throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        Set<String> junctions = new HashSet<>();
+        tree.getJunctions().forEach(j -> junctions.add(j.getDeviceUrn()));
+        assert junctions.containsAll(treeDevices);
+        assert tree.getPipes().size() == junctions.size() - 1;
+
+        Map<String, String> parent = new HashMap<>();
+        junctions.forEach(j -> parent.put(j, j));
+        Set<String> ports = new HashSet<>();
+        double cost = 0;
+        for (VlanPipe pipe : tree.getPipes()) {
+            List<EroHop> ero = pipe.getAzERO();
+            assert ero.get(0).getUrn().equals(pipe.getA().getDeviceUrn());
+            assert ero.get(ero.size() - 1).getUrn().equals(pipe.getZ().getDeviceUrn());
+            for (int i = 0; i < ero.size(); i++) {
+                TopoUrn urn = snapshot.getTopoUrnMap().get(ero.get(i).getUrn());
+                assert urn.getUrnType().equals(i % 3 == 0 ? UrnType.DEVICE : UrnType.PORT);
+                if (i % 3 != 0) {
+                    assert ports.add(urn.getUrn());
+                }
+            }
+            for (int i = 0; i + 1 < ero.size(); i++) {
+                TopoUrn a = snapshot.getTopoUrnMap().get(ero.get(i).getUrn());
+                TopoUrn z = snapshot.getTopoUrnMap().get(ero.get(i + 1).getUrn());
+                TopoAdjcy adjcy = snapshot.getByMetricGraph().getEdge(a, z);
+                assert adjcy != null;
+                cost += snapshot.getMetricCosts().get(adjcy);
+            }
+            String a = root(parent, pipe.getA().getDeviceUrn());
+            String z = root(parent, pipe.getZ().getDeviceUrn());
+            assert !a.equals(z);
+            parent.put(a, z);
+        }
+        assert cost == tree.getCost();
+
+        // each step attaches the device nearest the tree, which is never farther than the first device
+        TopoUrn first = snapshot.getTopoUrnMap().get(treeDevices.get(0));
+        double star = 0;
+        for (String device : treeDevices.subList(1, treeDevices.size())) {
+            star += dijkstraPCE.shortestPath(snapshot, first, snapshot.getTopoUrnMap().get(device)).getCost();
+        }
+        log.info("multipoint tree cost " + tree.getCost() + ", star from " + first.getUrn() + " " + star);
+        assert tree.getCost() <= star;
+    }
+
+    @When("^I search for the earliest (\\d+) start times for a (\\d+) hour connection with bandwidth (\\d+) among (\\d+) reservations$")
+    public void i_search_for_the_earliest_start_times(int count, int hours, int bandwidth, int reservations) throws Throwable {
+        TopoSnapshot snapshot = topoService.getSnapshot();
+        Map<String, TopoUrn> urnMap = snapshot.getTopoUrnMap();
+        List<String> devices = new ArrayList<>();
+        List<String> ports = new ArrayList<>();
+        for (TopoUrn urn : urnMap.values()) {
+            if (urn.getUrnType().equals(UrnType.DEVICE)) {
+                devices.add(urn.getUrn());
+            } else if (urn.getUrnType().equals(UrnType.PORT)) {
+                ports.add(urn.getUrn());
+            }
+        }
+        Collections.sort(devices);
+        Collections.sort(ports);
+        TopoUrn src = urnMap.get(devices.get(0));
+        TopoUrn dst = urnMap.get(devices.get(devices.size() / 2));
+
+        // the ports of A start out full; of the other reservations half are on the shortest path, half anywhere
+        List<String> aPorts = new ArrayList<>();
+        for (String port : ports) {
+            if (urnMap.get(port).getPort().getDevice().getUrn().equals(src.getUrn())) {
+                aPorts.add(port);
+            }
+        }
+        List<String> pathPorts = new ArrayList<>();
+        List<EroHop> shortest = dijkstraPCE.shortestPath(snapshot, src, dst).getAzEro();
+        for (int i = 0; i < shortest.size(); i++) {
+            if (i % 3 != 0) {
+                pathPorts.add(shortest.get(i).getUrn());
+            }
+        }
+
+        Random random = new Random(12);
+        Instant windowStart = Instant.now().truncatedTo(ChronoUnit.SECONDS).plus(1, ChronoUnit.DAYS);
+        Interval window = Interval.builder()
+                .beginning(windowStart)
+                .ending(windowStart.plus(7, ChronoUnit.DAYS))
+                .build();
+        Map<String, List<PeriodBandwidth>> reservedIngBws = new HashMap<>();
+        Map<String, List<PeriodBandwidth>> reservedEgBws = new HashMap<>();
+        for (int i = 0; i < reservations; i++) {
+            String port;
+            Instant beginning;
+            int share;
+            if (i < aPorts.size()) {
+                // every port of A starts out full
+                port = aPorts.get(i);
+                beginning = windowStart.minusSeconds(3600);
+                share = 1;
+            } else {
+                port = i % 2 == 0 ? pathPorts.get(random.nextInt(pathPorts.size())) : ports.get(random.nextInt(ports.size()));
+                beginning = windowStart.plusSeconds(random.nextInt(8 * 24 * 3600) - 24 * 3600);
+                share = 2;
+            }
+            Instant ending = beginning.plusSeconds(3600 + random.nextInt(48 * 3600));
+            // distinct figures, so that no two reservations on one port are the same
+            reservedIngBws.computeIfAbsent(port, k -> new ArrayList<>()).add(PeriodBandwidth.builder()
+                    .beginning(beginning).ending(ending)
+                    .bandwidth(urnMap.get(port).getReservableIngressBw() / share + i).build());
+            reservedEgBws.computeIfAbsent(port, k -> new ArrayList<>()).add(PeriodBandwidth.builder()
+                    .beginning(beginning).ending(ending)
+                    .bandwidth(urnMap.get(port).getReservableEgressBw() / share + i).build());
+        }
+
+        VlanPipe pipe = VlanPipe.builder()
+                .a(VlanJunction.builder().refId(src.getUrn()).deviceUrn(src.getUrn()).build())
+                .z(VlanJunction.builder().refId(dst.getUrn()).deviceUrn(dst.getUrn()).build())
+                .azBandwidth(bandwidth)
+                .zaBandwidth(bandwidth)
+                .protect(false)
+                .build();
+        Duration duration = Duration.ofHours(hours);
+
+        Instant ss = Instant.now();
+        PceScheduleResponse response = schedulePCE.earliest(pipe, window, duration, count,
+                reservedIngBws, reservedEgBws, null);
+        Duration sweepTime = Duration.between(ss, Instant.now());
+
+        // reference: probe every candidate start time on its own, the way a user retrying would
+        Instant ps = Instant.now();
+        TreeSet<Instant> starts = new TreeSet<>();
+        starts.add(windowStart);
+        for (List<PeriodBandwidth> pbws : reservedIngBws.values()) {
+            for (PeriodBandwidth pbw : pbws) {
+                Instant start = pbw.getEnding().plusSeconds(1);
+                if (start.isAfter(windowStart) && !start.plus(duration).isAfter(window.getEnding())) {
+                    starts.add(start);
+                }
+            }
+        }
+        CompactTopo topo = snapshot.getCompact();
+        boolean[] sources = new boolean[topo.getVertexCount()];
+        boolean[] targets = new boolean[topo.getVertexCount()];
+        sources[topo.indexOf(src.getUrn())] = true;
+        targets[topo.indexOf(dst.getUrn())] = true;
+        List<Instant> expected = new ArrayList<>();
+        for (Instant start : starts) {
+            Instant end = start.plus(duration);
+            Map<String, Integer> availIngressBw = ResvLibrary.availableBandwidthMap(BwDirection.INGRESS, urnMap,
+                    overlapping(reservedIngBws, start, end));
+            Map<String, Integer> availEgressBw = ResvLibrary.availableBandwidthMap(BwDirection.EGRESS, urnMap,
+                    overlapping(reservedEgBws, start, end));
+            int[] ingress = topo.perVertex(availIngressBw);
+            int[] egress = topo.perVertex(availEgressBw);
+            int[] azCapacity = CompactPaths.capacities(topo, ingress, egress, true);
+            int[] zaCapacity = CompactPaths.capacities(topo, ingress, egress, false);
+            boolean[] pruned = new boolean[topo.getEdgeCount()];
+            for (int e = 0; e < pruned.length; e++) {
+                pruned[e] = azCapacity[e] < bandwidth || zaCapacity[e] < bandwidth;
+            }
+            if (CompactPaths.nearestTarget(topo, sources, targets, topo.getMetrics(), null, pruned) != null) {
+                expected.add(start);
+                if (expected.size() == count) {
+                    break;
+                }
+            }
+        }
+        Duration probeTime = Duration.between(ps, Instant.now());
+
+        List<Instant> found = new ArrayList<>();
+        for (PceScheduleOption option : response.getOptions()) {
+            found.add(option.getInterval().getBeginning());
+            assert option.getInterval().getEnding().equals(option.getInterval().getBeginning().plus(duration));
+            assert option.getPath().getAzAvailable() >= bandwidth;
+            assert option.getPath().getZaAvailable() >= bandwidth;
+        }
+        log.info("earliest start times " + found + " of " + response.getCandidates() + " candidates, " +
+                response.getSearched() + " searched; sweep " + sweepTime + ", probing each " + probeTime);
+        assert !expected.isEmpty();
+        assert !expected.get(0).equals(windowStart);
+        assert found.equals(expected);
+    }
+
+    private Map<String, List<PeriodBandwidth>> overlapping(Map<String, List<PeriodBandwidth>> reserved,
+                                                           Instant beginning, Instant ending) {
+        Map<String, List<PeriodBandwidth>> result = new HashMap<>();
+        reserved.forEach((urn, pbws) -> {
+            for (PeriodBandwidth pbw : pbws) {
+                if (!pbw.getEnding().isBefore(beginning) && !pbw.getBeginning().isAfter(ending)) {
+                    result.computeIfAbsent(urn, k -> new ArrayList<>()).add(pbw);
+                }
+            }
+        });
+        return result;
+    }
+
+    private String root(Map<String, String> parent, String device) {
+        while (!parent.get(device).equals(device)) {
+            device = parent.get(device);
+        }
+        return device;
+    }
+
+    private List<EroHop> reversed(List<EroHop> ero) {
+        List<EroHop> result = new ArrayList<>(ero);
+        Collections.reverse(result);
+        return result;
+    }
+
+}
@@ -8,6 +8,7 @@ import net.es.oscars.ctg.UnitTests;
 import net.es.oscars.resv.ent.Vlan;
 import net.es.oscars.resv.svc.ResvLibrary;
 import net.es.oscars.topo.beans.IntRange;
+import net.es.oscars.topo.beans.IntRangeSet;
 import net.es.oscars.topo.beans.TopoUrn;
 import org.junit.experimental.categories.Category;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,4 +54,60 @@ public class VlanSteps extends CucumberSteps {
 
     }
 
-}
\ No newline at end of file
+    @Then("^the vlans decided for \"([^\"]*)\" requesting \"([^\"]*)\" and \"([^\"]*)\" requesting \"([^\"]*)\" are (\\d+) and (\\d+)$")
+    public void the_vlans_decided_are(String aUrn, String aExpr, String zUrn, String zExpr,
+                                      Integer aVlan, Integer zVlan) throws Throwable {
+        Map<String, Set<IntRange>> availVlanMap = ResvLibrary.availableVlanMap(world.topoBaseline, world.reservedVlans);
+        Map<String, Set<IntRange>> requested = new HashMap<>();
+        requested.put(aUrn + "#A", IntRange.fromExpression(aExpr));
+        requested.put(zUrn + "#Z", IntRange.fromExpression(zExpr));
+        Map<String, Set<IntRange>> available = new HashMap<>();
+        available.put(aUrn, availVlanMap.get(aUrn));
+        available.put(zUrn, availVlanMap.get(zUrn));
+
+        Map<String, Integer> decided = ResvLibrary.decideIdentifier(requested, available);
+        assert decided.get(aUrn + "#A").equals(aVlan);
+        assert decided.get(zUrn + "#Z").equals(zVlan);
+    }
+
+    @Then("^the ranges \"([^\"]*)\" (minus|intersect|union) \"([^\"]*)\" are \"([^\"]*)\"$")
+    public void the_ranges_are(String a, String op, String b, String expected) throws Throwable {
+        IntRangeSet left = IntRangeSet.of(IntRange.fromExpression(a));
+        IntRangeSet right = IntRangeSet.of(IntRange.fromExpression(b));
+        IntRangeSet result;
+        switch (op) {
+            case "minus":
+                result = left.subtract(right);
+                break;
+            case "intersect":
+                result = left.intersect(right);
+                break;
+            default:
+                result = left.union(right);
+        }
+        assert result.toString().equals(expected);
+        assert IntRange.asString(result.toRanges()).equals(expected);
+    }
+
+    @Then("^the least value in all of \"([^\"]*)\", \"([^\"]*)\" and \"([^\"]*)\" is (\\d+|none)$")
+    public void the_least_value_in_all_is(String a, String b, String c, String expected) throws Throwable {
+        Map<String, Set<IntRange>> sets = new HashMap<>();
+        sets.put("a", IntRange.fromExpression(a));
+        sets.put("b", IntRange.fromExpression(b));
+        sets.put("c", IntRange.fromExpression(c));
+        Integer least = IntRange.leastInAll(sets);
+        if (expected.equals("none")) {
+            assert least == null;
+        } else {
+            assert least.equals(Integer.parseInt(expected));
+        }
+    }
+
+    @Then("^the range set \"([^\"]*)\" contains (\\d+) but not (\\d+)$")
+    public void the_range_set_contains(String expr, Integer in, Integer out) throws Throwable {
+        IntRangeSet set = IntRangeSet.of(IntRange.fromExpression(expr));
+        assert set.contains(in);
+        assert !set.contains(out);
+    }
+
+}
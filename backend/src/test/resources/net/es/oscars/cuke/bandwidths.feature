@@ -39,3 +39,33 @@ Feature: bandwidth logic
 
     Then I did not receive an exception
 
+  Scenario: Identical reservations at the same instant, and the availability timeline
+    Given I have initialized the world
+    Given I set this "INGRESS" bandwidth baseline
+      | A:1 | 100 |
+    Given I set these "INGRESS" bandwidth reservations
+#     | urn | bw | beg | end |
+      | A:1 | 10 | 100 | 200 |
+      | A:1 | 10 | 100 | 200 |
+      | A:1 | 30 | 150 | 300 |
+    Given I set these timed vlan reservations
+#     | urn | vlan | beg | end |
+      | A:1 | 101  | 100 | 200 |
+      | A:1 | 102  | 150 | 300 |
+      | A:1 | 101  | 150 | 250 |
+      | A:1 | 500  | 150 | 250 |
+    Then the overall available "INGRESS" bw for "A:1" is 50
+    Then the "INGRESS" timeline for "A:1" with vlans "100:109" between 0 and 400 is
+#     | beg | end | bw  | free vlans |
+      | 0   | 100 | 100 | 10         |
+      | 100 | 150 | 80  | 9          |
+      | 150 | 200 | 50  | 8          |
+      | 200 | 250 | 70  | 8          |
+      | 250 | 300 | 70  | 9          |
+      | 300 | 400 | 100 | 10         |
+    Then the "INGRESS" timeline for "A:1" with vlans "100:109" between 120 and 220 is
+      | 120 | 150 | 80  | 9          |
+      | 150 | 200 | 50  | 8          |
+      | 200 | 220 | 70  | 8          |
+
+    Then I did not receive an exception
@@ -10,4 +10,194 @@ Feature: fancy PCE functionality
     When I merge the new topology
     Given I update the topology URN map after import
     When I ask for all paths from "aofa-cr5" to "chic-cr5" with a relaxation radius of 12
+    Then the snapshot shortest path from "aofa-cr5" to "chic-cr5" is cheapest and its least-hops path is shortest
+    Then the snapshot shortest path from "sunn-cr5" to "newy-cr5" is cheapest and its least-hops path is shortest
+    Then the compact graph searches agree with jgrapht for all device pairs
+    Then I did not receive an exception
+
+  Scenario: Least-cost paths are enumerated lazily in order
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for the 50 least-cost paths from "aofa-cr5" to "chic-cr5" with a relaxation radius of 6
+    Then the least-cost paths match the exhaustive enumeration
+    Then I did not receive an exception
+
+  Scenario: Least-cost paths go around zero-cost cycles
+    Given I have initialized the world
+    Then least-cost paths match the exhaustive enumeration on 300 random graphs with zero-cost links
+    Then I did not receive an exception
+
+  Scenario: Bandwidth-aware searches match path enumeration
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I compare the PCE engines from "aofa-cr5" to "chic-cr5" with az: 5000 and za: 5000 on a randomly loaded network
+    Then the bandwidth-aware PCE answers are at least as good
+    When I compare the PCE engines from "sunn-cr5" to "newy-cr5" with az: 20000 and za: 1000 on a randomly loaded network
+    Then the bandwidth-aware PCE answers are at least as good
+    Then I did not receive an exception
+
+  Scenario: Include and exclude constraints are searched, not filtered
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for constrained paths from "aofa-cr5" to "chic-cr5" through the middle of the shortest path, avoiding its first link
+    When I ask for constrained paths from "sunn-cr5" to "newy-cr5" through the middle of the shortest path, avoiding its first link
+    Then I did not receive an exception
+
+  Scenario: Path requests stop when their budget runs out
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for paths from "sunn-cr5" to "newy-cr5" with a budget of 0 ms and 100 paths, the result is partial
+    When I ask for paths from "sunn-cr5" to "newy-cr5" with a budget of 1 ms and 0 paths, the result is partial
+    When I ask for paths from "sunn-cr5" to "newy-cr5" with a budget of 60000 ms and 0 paths, the result is complete
+    When I ask for paths from "aofa-cr5" to "chic-cr5" with a budget of 60000 ms and 100000 paths, the result is complete
+    When I ask the bandwidth-aware PCE for paths from "sunn-cr5" to "newy-cr5" with a budget of 0 ms and 2 paths, the result is partial
+    When I ask the bandwidth-aware PCE for paths from "sunn-cr5" to "newy-cr5" with a budget of 60000 ms and 1 paths, the result is partial
+    When I ask the bandwidth-aware PCE for paths from "aofa-cr5" to "chic-cr5" with a budget of 60000 ms and 0 paths, the result is complete
+    Then I did not receive an exception
+
+  Scenario: Path bandwidths with a per-request context
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I benchmark path bandwidths from "aofa-cr5" to "chic-cr5" with a relaxation radius of 12
+    Then both path bandwidth evaluations agree
+    Then I did not receive an exception
+
+  Scenario: Concurrent path lookups share one computation until the topology changes
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When 8 callers look up the paths from "aofa-cr5" to "chic-cr5" with max length 24 at once
+    Then the paths were computed once and shared by all callers
+    When the topology version is bumped
+    Then the path cache is empty
+    Then I did not receive an exception
+
+  Scenario: Topology metrics are computed when a topology version is loaded
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/netlab-devices.json" and "config/topo/netlab-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    Then the topology metrics agree with jgrapht
+    Then I did not receive an exception
+
+  Scenario Outline: ALT shortest paths are the same as Dijkstra's
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/<topology>-devices.json" and "config/topo/<topology>-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    Then the ALT searches find the same paths as Dijkstra for all device pairs
+    Then I did not receive an exception
+
+    Examples:
+      | topology |
+      | testbed  |
+      | netlab   |
+      | esnet    |
+
+  Scenario: Batch path requests match single path requests
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for paths in one batch and one by one between "aofa-cr5, chic-cr5, star-cr5, wash-cr5" with az: 1000 and za: 2000
+    Then the batch results match the one by one results
+    Then I did not receive an exception
+
+  Scenario Outline: Disjoint protect path pairs
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for a "<disjointness>" disjoint pair from "<a>" to "<z>" with az: 1000 and za: 2000
+    Then the pair is "<disjointness>" disjoint, fits az: 1000 and za: 2000, and costs no more than two successive shortest paths
+    Then I did not receive an exception
+
+    Examples:
+      | disjointness | a        | z        |
+      | LINK         | sunn-cr5 | newy-cr5 |
+      | NODE         | sunn-cr5 | newy-cr5 |
+      | LINK         | aofa-cr5 | chic-cr5 |
+      | NODE         | aofa-cr5 | chic-cr5 |
+
+  Scenario: Multipoint trees
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for a multipoint tree connecting 3 devices with bandwidth 1000
+    Then the multipoint tree connects every device without reusing a port
+    When I ask for a multipoint tree connecting 12 devices with bandwidth 1000
+    Then the multipoint tree connects every device without reusing a port
+    Then I did not receive an exception
+
+  Scenario: Earliest start times for a connection
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I search for the earliest 3 start times for a 4 hour connection with bandwidth 1000 among 300 reservations
+    When I search for the earliest 1 start times for a 24 hour connection with bandwidth 1000 among 2000 reservations
+    Then I did not receive an exception
+
+  Scenario: Warming the paths of hot pairs after a topology change
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When paths from "sunn-cr5" to "newy-cr5" are requested 3 times and saved
+    When paths from "aofa-cr5" to "chic-cr5" are requested 1 times and saved
+    When paths from "sunn-cr5" to "nowhere-cr5" are requested 2 times and saved
+    Then after the topology is reloaded the paths of every hot pair between known devices are cached
+    Then I did not receive an exception
+
+  Scenario: Unreachable devices have no enumeration length limit
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/test/topo/two_routers.json" and "config/test/topo/adj_none.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    Then there is no enumeration length limit between "A" and "B"
+    Then I did not receive an exception
+
+  Scenario: Streaming candidate paths as they are found
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I stream paths from "sunn-cr5" to "newy-cr5" with az: 1000 and za: 1000, protected: false
+    When I stream paths from "aofa-cr5" to "chic-cr5" with az: 1000 and za: 1000, protected: true
+    Then I did not receive an exception
+
+  Scenario: Explaining where path computation time goes
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/topo/esnet-devices.json" and "config/topo/esnet-adjcies.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I ask for explained paths from "sunn-cr5" to "newy-cr5" with az: 1000 and za: 1000
     Then I did not receive an exception
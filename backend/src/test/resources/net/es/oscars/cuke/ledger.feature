@@ -0,0 +1,50 @@
+@unit
+Feature: reservation ledger
+
+  I want to verify that the in-memory reservation ledger follows the schedules in the database
+
+  Scenario: Reserved bandwidths follow schedule changes
+    Given I have initialized the world
+    When I store 300 random schedules with fixtures and pipes
+    Then the reserved bandwidths agree with the stored schedules for 200 random intervals
+    When I archive, delete and reschedule some of the stored schedules
+    Then the reserved bandwidths agree with the stored schedules for 200 random intervals
+    When the reservation ledger is reloaded
+    Then the reserved bandwidths agree with the stored schedules for 200 random intervals
+    Then the reservation snapshot agrees with per-schedule queries for 100 random intervals
+    When I store 50 random schedules with fixtures and pipes
+    Then the reserved bandwidths agree with the stored schedules for 200 random intervals
+    Then the reservation snapshot agrees with per-schedule queries for 100 random intervals
+    Then I delete the stored schedules
+    Then I did not receive an exception
+
+  Scenario: Availability is cached until reservations change
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/test/topo/two_routers.json" and "config/test/topo/adj_a_b_mpls.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    Then availability is cached until a reservation change is committed
+    Then I delete the stored schedules
+    Then I did not receive an exception
+
+  Scenario: Availability for some ports agrees with whole-network availability
+    Given I have initialized the world
+    Given I clear the topology
+    Given I load topology from "config/test/topo/two_routers.json" and "config/test/topo/adj_a_b_mpls.json"
+    When I merge the new topology
+    Given I update the topology URN map after import
+    When I store 100 random schedules with fixtures and pipes on the topology ports
+    Then availability for some ports agrees with availability for the whole network for 100 random intervals
+    Then I delete the stored schedules
+    Then I did not receive an exception
+
+  Scenario: Resource locks let disjoint reservation changes run in parallel
+    Given I have initialized the world
+    Then resource locks only block overlapping resources until the transaction ends
+    Then I did not receive an exception
+
+  Scenario: The reservation ledger only reads committed reservations
+    Given I have initialized the world
+    Then the reservation ledger never sees uncommitted reservations
+    Then I did not receive an exception
@@ -20,3 +20,42 @@ Feature: vlans logic
 
     Then I did not receive an exception
 
+  Scenario: Deciding VLANs for both ends
+    Given I have initialized the world
+    Given I set this topology baseline
+      | A:1 | 10:50,4000:4094 |
+      | A:2 | 20:30           |
+      | A:3 | 100:101         |
+    Given I set these eternal vlan reservations
+      | A:1 | 20   |
+      | A:1 | 21   |
+      | A:1 | 4094 |
+      | A:2 | 23   |
+      | A:3 | 101  |
+    Then the available vlans for "A:1" are "10:19,22:50,4000:4093"
+    Then the available vlans for "A:3" are "100"
+    Then the vlans decided for "A:1" requesting "10:50" and "A:2" requesting "20:30" are 22 and 22
+    Then the vlans decided for "A:1" requesting "11" and "A:2" requesting "24:30" are 11 and 24
+    Then the vlans decided for "A:1" requesting "4090:4094" and "A:3" requesting "100:200" are 4090 and 100
+
+    Then I did not receive an exception
+
+  Scenario Outline: Range set algebra
+    Given I have initialized the world
+    Then the ranges "<a>" <op> "<b>" are "<result>"
+
+    Examples:
+      | a                   | op        | b              | result                   |
+      | 7000:7999           | minus     | 7000,7500:7501 | 7001:7499,7502:7999      |
+      | 1:10,20:30          | minus     | 5:25           | 1:4,26:30                |
+      | 1:10                | minus     | 1:10           |                          |
+      | 1:10,20:30,40:50    | intersect | 5:45           | 5:10,20:30,40:45         |
+      | 1:10                | intersect | 11:20          |                          |
+      | 1:10,30:40          | union     | 11:20          | 1:20,30:40               |
+      | 2147483000:2147483647 | minus   | 2147483647     | 2147483000:2147483646    |
+
+  Scenario: Least identifier common to all range sets
+    Given I have initialized the world
+    Then the least value in all of "7000:7999", "7500:8999" and "6000:7600" is 7500
+    Then the least value in all of "1:10", "20:30" and "1:30" is none
+    Then the range set "1:10,100:200,5000" contains 150 but not 11